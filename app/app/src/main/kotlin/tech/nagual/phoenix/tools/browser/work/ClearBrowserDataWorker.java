@@ -16,6 +16,7 @@ import java.io.File;
 
 import tech.nagual.phoenix.tools.browser.LogUtils;
 import threads.lite.data.BLOCKS;
+import threads.lite.data.FILES;
 import tech.nagual.phoenix.BuildConfig;
 import tech.nagual.phoenix.tools.browser.core.pages.PAGES;
 import tech.nagual.phoenix.tools.browser.provider.FileProvider;
@@ -117,6 +118,9 @@ public class ClearBrowserDataWorker extends Worker {
 
             // Clear ipfs and pages data
             BLOCKS.getInstance(getApplicationContext()).clear();
+            if (FILES.exists(getApplicationContext())) {
+                FILES.getInstance(getApplicationContext()).clear();
+            }
             PAGES.getInstance(getApplicationContext()).clear();
 
             deleteCache(getApplicationContext());
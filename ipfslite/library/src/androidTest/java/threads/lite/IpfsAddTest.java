@@ -2,6 +2,7 @@ package threads.lite;
 
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertNotNull;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertNotEquals;
@@ -24,12 +25,17 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 import threads.lite.cid.Cid;
 import threads.lite.core.ClosedException;
 import threads.lite.core.TimeoutCloseable;
+import threads.lite.dag.HAMTDirectory;
+import threads.lite.format.Node;
+import threads.lite.format.ProtoNode;
 import threads.lite.utils.Link;
 
 @SuppressWarnings("SpellCheckingInspection")
@@ -99,6 +105,127 @@ public class IpfsAddTest {
 
     }
 
+    @Test
+    public void add_hamt_dir() throws Exception {
+
+        IPFS ipfs = TestEnv.getTestInstance(context);
+        Cid dir = ipfs.createEmptyDir();
+        assertNotNull(dir);
+
+        Cid text = ipfs.storeText("Hallo");
+        assertNotNull(text);
+
+        // the estimated size of the links (name and CID, about 47 bytes per entry) exceeds
+        // IPFS.HAMT_SHARDING_SIZE after about 5600 entries, the directory becomes sharded
+        int entries = 6000;
+        for (int i = 0; i < entries; i++) {
+            dir = ipfs.addLinkToDir(dir, "text-" + i + ".txt", text);
+            assertNotNull(dir);
+        }
+        assertTrue(isHAMTShard(ipfs, dir));
+
+        List<Link> links = ipfs.getLinks(dir, false, new TimeoutCloseable(10));
+        assertNotNull(links);
+        assertEquals(links.size(), entries);
+        assertTrue(ipfs.isDir(dir, new TimeoutCloseable(1)));
+
+        for (int i = 0; i < entries; i += 100) {
+            assertTrue(ipfs.resolve(dir, "text-" + i + ".txt", new TimeoutCloseable(1)));
+        }
+        assertFalse(ipfs.resolve(dir, "text-" + entries + ".txt", new TimeoutCloseable(1)));
+
+        dir = ipfs.rmLinkFromDir(dir, "text-0.txt");
+        assertNotNull(dir);
+        // a sharded directory stays sharded
+        assertTrue(isHAMTShard(ipfs, dir));
+
+        links = ipfs.getLinks(dir, false, new TimeoutCloseable(10));
+        assertNotNull(links);
+        assertEquals(links.size(), entries - 1);
+        assertFalse(ipfs.resolve(dir, "text-0.txt", new TimeoutCloseable(1)));
+    }
+
+    private boolean isHAMTShard(@NonNull IPFS ipfs, @NonNull Cid dir) throws ClosedException {
+        Node node = ipfs.resolveNode(dir, Collections.emptyList(), new TimeoutCloseable(1));
+        assertNotNull(node);
+        return node instanceof ProtoNode && HAMTDirectory.isHAMTShard((ProtoNode) node);
+    }
+
+    @Test
+    public void add_and_collect_garbage() throws Exception {
+
+        IPFS ipfs = TestEnv.getTestInstance(context);
+
+        Cid dir = ipfs.createEmptyDir();
+        assertNotNull(dir);
+        Cid text = ipfs.storeText("Hallo");
+        assertNotNull(text);
+        Cid garbage = ipfs.storeText("Garbage");
+        assertNotNull(garbage);
+
+        Cid oldDir = dir;
+        dir = ipfs.addLinkToDir(dir, "text.txt", text);
+        assertNotNull(dir);
+
+        IPFS.pin(context, dir);
+        try {
+            assertTrue(IPFS.getPins(context).contains(dir));
+
+            long reclaimed = ipfs.collectGarbage(context, () -> false);
+            assertTrue(reclaimed > 0);
+
+            assertTrue(ipfs.getBlockStore().hasBlock(dir));
+            assertTrue(ipfs.getBlockStore().hasBlock(text));
+            assertFalse(ipfs.getBlockStore().hasBlock(garbage));
+            assertFalse(ipfs.getBlockStore().hasBlock(oldDir));
+
+            assertEquals("Hallo", ipfs.getText(text, new TimeoutCloseable(1)));
+        } finally {
+            IPFS.unpin(context, dir);
+        }
+        assertFalse(IPFS.getPins(context).contains(dir));
+    }
+
+    @Test
+    public void collect_garbage_while_adding() throws Exception {
+
+        IPFS ipfs = TestEnv.getTestInstance(context);
+
+        // garbage for a run of some seconds (pause after each batch)
+        for (int i = 0; i < 50 * IPFS.GC_BATCH_SIZE; i++) {
+            assertNotNull(ipfs.storeText("Garbage " + i));
+        }
+        Cid garbage = ipfs.storeText("Garbage");
+        assertNotNull(garbage);
+
+        AtomicLong reclaimed = new AtomicLong(-1);
+        Thread collector = new Thread(() -> {
+            try {
+                reclaimed.set(ipfs.collectGarbage(context, () -> false));
+            } catch (ClosedException closedException) {
+                LogUtils.error(TAG, closedException);
+            }
+        });
+        collector.start();
+        Thread.sleep(5 * IPFS.GC_BATCH_PAUSE);
+
+        // content which is added (again) during the run is kept, even when not pinned
+        assertEquals(garbage, ipfs.storeText("Garbage"));
+        Cid text = ipfs.storeText("Hallo");
+        assertNotNull(text);
+        Cid dir = ipfs.createEmptyDir();
+        assertNotNull(dir);
+        dir = ipfs.addLinkToDir(dir, "text.txt", text);
+        assertNotNull(dir);
+
+        collector.join();
+        assertTrue(reclaimed.get() > 0);
+
+        assertEquals("Garbage", ipfs.getText(garbage, new TimeoutCloseable(1)));
+        assertEquals("Hallo", ipfs.getText(text, new TimeoutCloseable(1)));
+        assertTrue(ipfs.getBlockStore().hasBlock(dir));
+    }
+
     @Test
     public void add_wrap_test() throws Exception {
 
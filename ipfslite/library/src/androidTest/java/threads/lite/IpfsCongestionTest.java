@@ -0,0 +1,266 @@
+package threads.lite;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import net.luminis.quic.QuicClientConnectionImpl;
+import net.luminis.quic.QuicConnection;
+import net.luminis.quic.QuicStream;
+import net.luminis.quic.TransportParameters;
+import net.luminis.quic.Version;
+import net.luminis.quic.cc.CongestionControl;
+import net.luminis.quic.server.ApplicationProtocolConnection;
+import net.luminis.quic.server.ApplicationProtocolConnectionFactory;
+import net.luminis.quic.server.Server;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import threads.lite.host.LiteHost;
+import threads.lite.host.LiteHostCertificate;
+
+@RunWith(AndroidJUnit4.class)
+public class IpfsCongestionTest {
+    private static final String TAG = IpfsCongestionTest.class.getSimpleName();
+    private static final String ALPN = "sink";
+    private static Context context;
+
+    @BeforeClass
+    public static void setup() {
+        context = ApplicationProvider.getApplicationContext();
+    }
+
+    @Test
+    public void test_lossy_link() throws Exception {
+        int port = LiteHost.nextFreePort();
+        Server server = sinkServer(port);
+        server.start();
+
+        int size = 4000000;
+        Map<CongestionControl, Long> millis = new HashMap<>();
+        try {
+            // 50 ms round trip time and 0.1 % loss, each upload gets its own seeded link;
+            // the timing still decides which packets are dropped, a single upload of Cubic
+            // took between 0.2 and 1.1 times of NewReno, the sum of three 0.7 to 0.8 times
+            for (long seed = 1; seed <= 3; seed++) {
+                for (CongestionControl congestionControl :
+                        List.of(CongestionControl.NewReno, CongestionControl.Cubic)) {
+                    LossyLink link = new LossyLink(port, 25, 0.001, 0, 0, seed);
+                    try {
+                        millis.merge(congestionControl,
+                                upload(link, congestionControl, size), Long::sum);
+                    } finally {
+                        link.shutdown();
+                    }
+                }
+            }
+        } finally {
+            server.shutdown();
+        }
+        long reno = Objects.requireNonNull(millis.get(CongestionControl.NewReno));
+        long cubic = Objects.requireNonNull(millis.get(CongestionControl.Cubic));
+        LogUtils.debug(TAG, "Upload 3 x " + size + " bytes NewReno " + reno + " ms Cubic " + cubic + " ms");
+        // the window of Cubic grows back faster after a loss
+        assertTrue(cubic < reno);
+    }
+
+    @Test
+    public void test_random_loss() throws Exception {
+        int port = LiteHost.nextFreePort();
+        Server server = sinkServer(port);
+        server.start();
+
+        int size = 4000000;
+        try {
+            for (int percent = 1; percent <= 5; percent++) {
+                Map<CongestionControl, Long> millis = new HashMap<>();
+                for (CongestionControl congestionControl :
+                        List.of(CongestionControl.NewReno, CongestionControl.Bbr)) {
+                    // 40 ms round trip time, 20 Mbit/s bottleneck with a 40 ms queue and
+                    // random loss, each upload gets its own link with the same seed
+                    LossyLink link = new LossyLink(port, 20, percent / 100.0, 20, 40, percent);
+                    try {
+                        millis.put(congestionControl, upload(link, congestionControl, size));
+                    } finally {
+                        link.shutdown();
+                    }
+                }
+                long reno = Objects.requireNonNull(millis.get(CongestionControl.NewReno));
+                long bbr = Objects.requireNonNull(millis.get(CongestionControl.Bbr));
+                LogUtils.debug(TAG, "Loss " + percent + "% upload " + size + " bytes NewReno " +
+                        throughput(size, reno) + " Mbit/s Bbr " + throughput(size, bbr) + " Mbit/s");
+                // random loss is no congestion signal for Bbr, it keeps the bottleneck rate
+                // (measured 7 to 18 times the throughput of NewReno)
+                assertTrue(throughput(size, bbr) > 2 * throughput(size, reno));
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static double throughput(int size, long millis) {
+        return size * 8.0 / 1000 / Math.max(millis, 1);
+    }
+
+    @NonNull
+    private Server sinkServer(int port) throws Exception {
+        IPFS ipfs = TestEnv.getTestInstance(context);
+        LiteHostCertificate certificate = ipfs.getHost().getSelfSignedCertificate();
+
+        return new Server(port, ALPN,
+                new FileInputStream(certificate.certificate()),
+                new FileInputStream(certificate.privateKey()),
+                List.of(Version.IETF_draft_29), false, new ApplicationProtocolConnectionFactory() {
+            @Override
+            public ApplicationProtocolConnection createConnection(String protocol,
+                                                                  QuicConnection quicConnection) {
+                quicConnection.setPeerInitiatedStreamCallback(IpfsCongestionTest::sink);
+                return new ApplicationProtocolConnection();
+            }
+        });
+    }
+
+    // the received bytes are counted, the count is the answer
+    private static void sink(@NonNull QuicStream stream) {
+        AtomicLong received = new AtomicLong(0);
+        stream.setConsumer(streamData -> {
+            received.addAndGet(streamData.data.length);
+            if (streamData.fin) {
+                try {
+                    stream.getOutputStream().write(String.valueOf(received.get()).getBytes());
+                    stream.getOutputStream().close();
+                } catch (IOException throwable) {
+                    LogUtils.error(TAG, throwable);
+                }
+            }
+        });
+    }
+
+    private long upload(@NonNull LossyLink link, @NonNull CongestionControl congestionControl,
+                        int size) throws Exception {
+        QuicClientConnectionImpl conn = QuicClientConnectionImpl.newBuilder()
+                .version(Version.IETF_draft_29)
+                .noServerCertificateCheck()
+                .congestionControl(congestionControl)
+                .host("127.0.0.1")
+                .port(link.getPort())
+                .build();
+        conn.connect(IPFS.CONNECT_TIMEOUT, ALPN, new TransportParameters(
+                60, IPFS.MESSAGE_SIZE_MAX, 10, 10), null);
+        try {
+            QuicStream stream = conn.createStream(true);
+            StringBuilder answer = new StringBuilder();
+            CountDownLatch finished = new CountDownLatch(1);
+            stream.setConsumer(streamData -> {
+                answer.append(new String(streamData.data));
+                if (streamData.fin) {
+                    finished.countDown();
+                }
+            });
+
+            byte[] data = new byte[size];
+            new Random().nextBytes(data);
+            long start = System.currentTimeMillis();
+            stream.getOutputStream().write(data);
+            stream.getOutputStream().close();
+
+            assertTrue(finished.await(120, TimeUnit.SECONDS));
+            assertEquals(String.valueOf(size), answer.toString());
+            return System.currentTimeMillis() - start;
+        } finally {
+            conn.close();
+        }
+    }
+
+    // relays the datagrams between a client and the server with a delay and random loss
+    // (seeded); with a rate (Mbit/s), each direction is a bottleneck with a queue (tail drop)
+    private static class LossyLink {
+        private final DatagramSocket socket;
+        private final ScheduledExecutorService delay = Executors.newSingleThreadScheduledExecutor();
+        private final Thread thread;
+        private final long[] queueEnd = new long[2]; // nanos, per direction
+        private volatile SocketAddress client;
+
+        LossyLink(int serverPort, int delayMillis, double loss,
+                  double rate, int queueMillis, long seed) throws IOException {
+            socket = new DatagramSocket();
+            SocketAddress server = new InetSocketAddress(InetAddress.getLoopbackAddress(), serverPort);
+            thread = new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        DatagramPacket packet = new DatagramPacket(new byte[1500], 1500);
+                        socket.receive(packet);
+                        boolean fromServer = packet.getSocketAddress().equals(server);
+                        if (!fromServer) {
+                            client = packet.getSocketAddress();
+                        }
+                        if (random.nextDouble() < loss) {
+                            continue;
+                        }
+                        byte[] data = Arrays.copyOf(packet.getData(), packet.getLength());
+                        SocketAddress target = fromServer ? client : server;
+                        long wait = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+                        if (rate > 0) {
+                            int direction = fromServer ? 1 : 0;
+                            long now = System.nanoTime();
+                            long start = Math.max(now, queueEnd[direction]);
+                            if (start - now > TimeUnit.MILLISECONDS.toNanos(queueMillis)) {
+                                continue;
+                            }
+                            queueEnd[direction] = start + (long) (data.length * 8 * 1000 / rate);
+                            wait += queueEnd[direction] - now;
+                        }
+                        delay.schedule(() -> {
+                            try {
+                                socket.send(new DatagramPacket(data, data.length, target));
+                            } catch (IOException ignore) {
+                                // link is closed
+                            }
+                        }, wait, TimeUnit.NANOSECONDS);
+                    }
+                } catch (IOException ignore) {
+                    // link is closed
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return socket.getLocalPort();
+        }
+
+        void shutdown() {
+            thread.interrupt();
+            socket.close();
+            delay.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package threads.lite;
+
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import threads.lite.cid.Cid;
+import threads.lite.core.Progress;
+import threads.lite.dag.Adder;
+import threads.lite.utils.Reader;
+import threads.lite.utils.Stream;
+import threads.lite.utils.WriterStream;
+
+// the CIDs are the CIDs of go-ipfs for the same data (ipfs add --trickle=true|false, CIDv0,
+// 256 KiB chunks), the data is the pattern (byte) (position % 251)
+@SuppressWarnings("SpellCheckingInspection")
+@RunWith(AndroidJUnit4.class)
+public class IpfsLayoutTest {
+
+    private static final String TAG = IpfsLayoutTest.class.getSimpleName();
+    private static Context context;
+
+    @BeforeClass
+    public static void setup() {
+        context = ApplicationProvider.getApplicationContext();
+    }
+
+    @Test
+    public void trickle_cids() throws Exception {
+
+        IPFS ipfs = TestEnv.getTestInstance(context);
+
+        assertEquals("QmbFMke1KXqnYyBBWxB74N4c5SBnJMVAiMNRcGu6x1AwQH",
+                store(ipfs, 0).String());
+        assertEquals("QmR8CNjv8fMAZwRaevqLDYPuzXQfCKnK8rpKGM3GJvANrP",
+                store(ipfs, 1000).String());
+        assertEquals("QmRoi1tcaRPwt8h8ekGmsmb8gEttSwiQZQTsWX3EpNFUzk",
+                store(ipfs, 2L * IPFS.CHUNK_SIZE).String());
+    }
+
+    @Test
+    public void trickle_multi_level_cid() throws Exception {
+
+        IPFS ipfs = TestEnv.getTestInstance(context);
+
+        // more than one layer of leaves (174 links per node), the trickle layout
+        // adds the remaining leaves as sub-tree of depth 1
+        long size = 200L * IPFS.CHUNK_SIZE + 1000;
+        Cid cid = store(ipfs, size);
+        assertEquals("QmUXEBEuq4YNpLQi5qcQFRw7nGVSr81iqwPM5YNjMsPsS2", cid.String());
+
+        PatternOutputStream outputStream = new PatternOutputStream();
+        ipfs.storeToOutputStream(outputStream, cid, () -> false);
+        assertEquals(size, outputStream.position);
+    }
+
+    @Test
+    public void balanced_cids() throws Exception {
+
+        IPFS ipfs = TestEnv.getTestInstance(context);
+
+        assertEquals("QmbFMke1KXqnYyBBWxB74N4c5SBnJMVAiMNRcGu6x1AwQH",
+                storeBalanced(ipfs, 0).String());
+        // single chunk, the leaf is the root
+        assertEquals("QmPeaZux8qE8eZibqtC1v6h1pBFvVBz2YkSAdwU8VBXJNR",
+                storeBalanced(ipfs, 1000).String());
+        // chunk boundaries
+        assertEquals("QmeqfRyS3vkku7n6krqC3DgGMex3x2sCpSeKMDmrG13QQq",
+                storeBalanced(ipfs, IPFS.CHUNK_SIZE).String());
+        assertEquals("QmSCGtTgpNCGUNUPuDjVbJ5skLQm9QtTF2BVBXrWHSzDX2",
+                storeBalanced(ipfs, IPFS.CHUNK_SIZE + 1).String());
+        assertEquals("QmYa4uM9PwW3qnqLdVztMge7qG7ceJCHDDiymDL9coihmC",
+                storeBalanced(ipfs, 2L * IPFS.CHUNK_SIZE).String());
+    }
+
+    @Test
+    public void balanced_read_and_seek() throws Exception {
+
+        IPFS ipfs = TestEnv.getTestInstance(context);
+
+        // more than 174 chunks, the tree has a depth of two
+        long size = 175L * IPFS.CHUNK_SIZE + 1000;
+        Cid cid = storeBalanced(ipfs, size);
+        assertEquals("QmNgR4CznHXCjwZry1gRm8Fj2ze52WfsMeCQcK6nQQmvXi", cid.String());
+
+        PatternOutputStream outputStream = new PatternOutputStream();
+        ipfs.storeToOutputStream(outputStream, cid, () -> false);
+        assertEquals(size, outputStream.position);
+
+        Reader reader = ipfs.getReader(cid, () -> false);
+        assertEquals(size, reader.getSize());
+
+        Random random = new Random();
+        for (int i = 0; i < 100; i++) {
+            long offset = (long) (random.nextDouble() * size);
+            reader.seek(offset);
+            ByteBuffer buffer = reader.loadNextBuffer();
+            assertNotNull(buffer);
+            assertTrue(buffer.hasRemaining());
+            for (long position = offset; buffer.hasRemaining(); position++) {
+                assertEquals((byte) (position % 251), buffer.get());
+            }
+        }
+
+        reader.seek(size - 1);
+        ByteBuffer buffer = reader.loadNextBuffer();
+        assertNotNull(buffer);
+        assertEquals(1, buffer.remaining());
+        assertNull(reader.loadNextBuffer());
+    }
+
+    @NonNull
+    private static Cid storeBalanced(@NonNull IPFS ipfs, long size) {
+        Adder adder = Stream.getFileAdder(ipfs.getBlockStore());
+        adder.balanced = true;
+        Cid cid = adder.addReader(new WriterStream(new PatternInputStream(size),
+                new Progress() {
+                    @Override
+                    public boolean isClosed() {
+                        return false;
+                    }
+
+                    @Override
+                    public void setProgress(int progress) {
+                    }
+
+                    @Override
+                    public boolean doProgress() {
+                        return false;
+                    }
+                }, size)).getCid();
+        LogUtils.debug(TAG, "Size " + size + " " + cid.String());
+        return cid;
+    }
+
+    @NonNull
+    private static Cid store(@NonNull IPFS ipfs, long size) {
+        Cid cid = ipfs.storeInputStream(new PatternInputStream(size));
+        assertNotNull(cid);
+        LogUtils.debug(TAG, "Size " + size + " " + cid.String());
+        return cid;
+    }
+
+    static class PatternInputStream extends InputStream {
+        private final long size;
+        private long position = 0L;
+
+        PatternInputStream(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            if (position >= size) {
+                return -1;
+            }
+            return (int) (position++ % 251);
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) {
+            if (position >= size) {
+                return -1;
+            }
+            int read = (int) Math.min(length, size - position);
+            for (int i = 0; i < read; i++) {
+                buffer[offset + i] = (byte) (position++ % 251);
+            }
+            return read;
+        }
+    }
+
+    // verifies that the written data is the pattern
+    static class PatternOutputStream extends OutputStream {
+        long position = 0L;
+
+        @Override
+        public void write(int b) {
+            assertEquals((byte) (position++ % 251), (byte) b);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import static junit.framework.TestCase.assertNotNull;
 import static junit.framework.TestCase.assertTrue;
 
 import android.content.Context;
+import android.util.Base64;
 
 import androidx.annotation.NonNull;
 import androidx.test.core.app.ApplicationProvider;
@@ -16,15 +17,31 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import threads.lite.cid.Cid;
+import threads.lite.cid.Multihash;
 import threads.lite.core.Progress;
+import threads.lite.utils.Chunker;
+import threads.lite.utils.DataHandler;
+import threads.lite.utils.ReaderHandler;
+import threads.lite.utils.Splitter;
+import threads.lite.utils.WriterStream;
 
 @RunWith(AndroidJUnit4.class)
 public class IpfsPerformance {
@@ -291,5 +308,221 @@ public class IpfsPerformance {
 
     }
 
+    @NonNull
+    private List<byte[]> chunks(@NonNull Chunker chunker, @NonNull byte[] data) {
+        WriterStream writerStream = new WriterStream(new ByteArrayInputStream(data),
+                new Progress() {
+                    @Override
+                    public boolean isClosed() {
+                        return false;
+                    }
+
+                    @Override
+                    public void setProgress(int progress) {
+                    }
+
+                    @Override
+                    public boolean doProgress() {
+                        return false;
+                    }
+                }, data.length);
+        Splitter splitter = chunker.createSplitter(writerStream);
+        List<byte[]> chunks = new ArrayList<>();
+        while (!splitter.done()) {
+            byte[] chunk = splitter.nextBytes();
+            if (chunk != null) {
+                chunks.add(chunk);
+            }
+        }
+        return chunks;
+    }
+
+    @Test
+    public void test_chunker_throughput() {
+
+        int size = 64 * 1024 * 1024;
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+
+        for (Chunker chunker : Arrays.asList(Chunker.createDefaultChunker(),
+                Chunker.createBuzHashChunker())) {
+            long now = System.nanoTime();
+            List<byte[]> chunks = chunks(chunker, data);
+            long time = System.nanoTime() - now;
+
+            long total = 0;
+            for (byte[] chunk : chunks) {
+                assertTrue(chunk.length <= chunker.getMaxSize());
+                total += chunk.length;
+            }
+            assertEquals(total, size);
+
+            LogUtils.debug(TAG, "Chunker content-defined " + chunker.isContentDefined() +
+                    " chunks " + chunks.size() + " throughput " +
+                    ((size / (1024.0 * 1024.0)) / (time / 1000000000.0)) + "[MB/s]");
+        }
+    }
+
+    @Test
+    public void test_chunker_dedup() {
+
+        byte[] data = new byte[16 * 1024 * 1024];
+        new Random(7).nextBytes(data);
+
+        // one byte inserted near the start
+        byte[] edited = new byte[data.length + 1];
+        System.arraycopy(data, 0, edited, 0, 1000);
+        edited[1000] = 42;
+        System.arraycopy(data, 1000, edited, 1001, data.length - 1000);
+
+        Chunker chunker = Chunker.createBuzHashChunker();
+        Set<String> original = new HashSet<>();
+        for (byte[] chunk : chunks(chunker, data)) {
+            original.add(Base64.encodeToString(chunk, Base64.NO_WRAP));
+        }
+        List<byte[]> chunks = chunks(chunker, edited);
+        int shared = 0;
+        for (byte[] chunk : chunks) {
+            if (original.contains(Base64.encodeToString(chunk, Base64.NO_WRAP))) {
+                shared++;
+            }
+        }
+        LogUtils.debug(TAG, "Chunks " + chunks.size() + " shared " + shared);
+        // only the chunks around the edit change
+        assertTrue(shared >= chunks.size() - 2);
+    }
+
+    // stream of a token and frames, split into chunks of about the size of quic packets
+    private List<byte[]> frameChunks(@NonNull List<byte[]> frames, int chunkSize) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(DataHandler.writeToken(IPFS.STREAM_PROTOCOL, IPFS.BITSWAP_PROTOCOL));
+        for (byte[] frame : frames) {
+            stream.write(DataHandler.encode(frame));
+        }
+        byte[] data = stream.toByteArray();
+        List<byte[]> chunks = new ArrayList<>();
+        for (int offset = 0; offset < data.length; offset += chunkSize) {
+            chunks.add(Arrays.copyOfRange(data, offset, Math.min(offset + chunkSize, data.length)));
+        }
+        return chunks;
+    }
+
+    @Test
+    public void test_frame_decoder_throughput() throws Exception {
+        // large frames in quic packets, many small frames in large chunks
+        // (small frames have a single byte length prefix, the legacy decoder fails when
+        // a chunk ends within a length prefix)
+        frameDecoderThroughput(16, 1 << 18, 1200);
+        frameDecoderThroughput(20000, 100, 1 << 16);
+    }
+
+    private void frameDecoderThroughput(int count, int frameSize, int chunkSize) throws Exception {
+
+        Random random = new Random(3);
+        List<byte[]> frames = new ArrayList<>();
+        long size = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] frame = new byte[frameSize + random.nextInt(frameSize / 4)];
+            random.nextBytes(frame);
+            frames.add(frame);
+            size += frame.length;
+        }
+        List<byte[]> chunks = frameChunks(frames, chunkSize);
+
+        List<String> tokens = new ArrayList<>();
+        List<byte[]> received = new ArrayList<>();
+        ReaderHandler reader = new ReaderHandler();
+        long now = System.nanoTime();
+        for (byte[] chunk : chunks) {
+            reader.load(chunk, tokens::add, received::add);
+        }
+        long time = System.nanoTime() - now;
+
+        assertEquals(tokens, Arrays.asList(IPFS.STREAM_PROTOCOL, IPFS.BITSWAP_PROTOCOL));
+        assertEquals(received.size(), frames.size());
+        for (int i = 0; i < frames.size(); i++) {
+            assertTrue(Arrays.equals(received.get(i), frames.get(i)));
+        }
+
+        LegacyReaderHandler legacy = new LegacyReaderHandler();
+        List<byte[]> legacyReceived = new ArrayList<>();
+        long legacyNow = System.nanoTime();
+        for (byte[] chunk : chunks) {
+            legacy.load(chunk, (token) -> {
+            }, legacyReceived::add);
+        }
+        long legacyTime = System.nanoTime() - legacyNow;
+        assertEquals(legacyReceived.size(), frames.size());
+
+        LogUtils.debug(TAG, "Frames " + count + " size " + frameSize + " chunk " + chunkSize +
+                " throughput " + ((size / (1024.0 * 1024.0)) / (time / 1000000000.0)) +
+                "[MB/s] legacy " + ((size / (1024.0 * 1024.0)) / (legacyTime / 1000000000.0)) +
+                "[MB/s]");
+    }
+
+    // previous decoder, which copies all buffered bytes for every chunk (baseline)
+    private static class LegacyReaderHandler {
+        private final ByteArrayOutputStream temp = new ByteArrayOutputStream();
+        private int expectedLength = 0;
+
+        private static int copy(InputStream source, OutputStream sink, int length) throws IOException {
+            int nread = 0;
+            byte[] buf = new byte[length];
+            int n;
+            while ((n = source.read(buf)) > 0) {
+                sink.write(buf, 0, n);
+                nread += n;
+                if (nread == length) {
+                    break;
+                }
+            }
+            return nread;
+        }
+
+        private static int copy(InputStream source, OutputStream sink) throws IOException {
+            int nread = 0;
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = source.read(buf)) > 0) {
+                sink.write(buf, 0, n);
+                nread += n;
+            }
+            return nread;
+        }
+
+        private void iteration(@NonNull Consumer<String> tokenConsumer,
+                               @NonNull Consumer<byte[]> dataConsumer) throws IOException {
+            if (temp.size() < expectedLength) {
+                return;
+            }
+            try (InputStream inputStream = new ByteArrayInputStream(temp.toByteArray())) {
+                expectedLength = (int) Multihash.readVarint(inputStream);
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                int read = copy(inputStream, outputStream, expectedLength);
+                if (read == expectedLength) {
+                    byte[] tokenData = outputStream.toByteArray();
+                    if (tokenData[0] == '/' && tokenData[read - 1] == '\n') {
+                        tokenConsumer.accept(new String(tokenData, 0, read - 1));
+                    } else {
+                        dataConsumer.accept(tokenData);
+                    }
+                    expectedLength = 0;
+                    temp.reset();
+                    int copied = copy(inputStream, temp);
+                    if (copied == 0) {
+                        temp.reset();
+                    } else {
+                        iteration(tokenConsumer, dataConsumer);
+                    }
+                }
+            }
+        }
+
+        void load(@NonNull byte[] data, @NonNull Consumer<String> tokenConsumer,
+                  @NonNull Consumer<byte[]> dataConsumer) throws IOException {
+            temp.write(data);
+            iteration(tokenConsumer, dataConsumer);
+        }
+    }
 
 }
@@ -2,6 +2,9 @@ package threads.lite;
 
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
 
 import android.content.Context;
 
@@ -12,11 +15,18 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import threads.lite.cid.Cid;
+import threads.lite.cid.Multihash;
+import threads.lite.utils.DataHandler;
 import threads.lite.utils.Link;
+import threads.lite.utils.ReaderHandler;
 
 @RunWith(AndroidJUnit4.class)
 public class IpfsStreamTest {
@@ -54,4 +64,93 @@ public class IpfsStreamTest {
 
 
     }
+
+    @Test
+    public void reader_split_prefix() throws IOException {
+        // one byte (token), two bytes and three bytes length prefixes
+        byte[] small = randomBytes(300);
+        byte[] large = randomBytes(20000);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(DataHandler.writeToken(IPFS.STREAM_PROTOCOL));
+        stream.write(DataHandler.encode(small));
+        stream.write(DataHandler.encode(large));
+        byte[] data = stream.toByteArray();
+
+        // byte by byte, every prefix is split across chunks
+        List<String> tokens = new ArrayList<>();
+        List<byte[]> frames = new ArrayList<>();
+        ReaderHandler reader = new ReaderHandler();
+        for (byte b : data) {
+            reader.load(new byte[]{b}, tokens::add, frames::add);
+        }
+        assertEquals(List.of(IPFS.STREAM_PROTOCOL), tokens);
+        assertEquals(2, frames.size());
+        assertArrayEquals(small, frames.get(0));
+        assertArrayEquals(large, frames.get(1));
+
+        // two chunks, split at every position of the token, the small frame and the
+        // prefix of the large frame
+        for (int split = 0; split <= 400; split++) {
+            tokens.clear();
+            frames.clear();
+            reader = new ReaderHandler();
+            reader.load(Arrays.copyOfRange(data, 0, split), tokens::add, frames::add);
+            reader.load(Arrays.copyOfRange(data, split, data.length), tokens::add, frames::add);
+            assertEquals(List.of(IPFS.STREAM_PROTOCOL), tokens);
+            assertEquals(2, frames.size());
+            assertArrayEquals(small, frames.get(0));
+            assertArrayEquals(large, frames.get(1));
+        }
+    }
+
+    @Test
+    public void reader_empty_frame() throws IOException {
+        byte[] data = randomBytes(10);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(DataHandler.encode(new byte[0]));
+        stream.write(DataHandler.encode(data));
+        stream.write(DataHandler.encode(new byte[0]));
+
+        List<byte[]> frames = new ArrayList<>();
+        ReaderHandler reader = new ReaderHandler();
+        reader.load(stream.toByteArray(), token -> fail(), frames::add);
+        assertEquals(3, frames.size());
+        assertEquals(0, frames.get(0).length);
+        assertArrayEquals(data, frames.get(1));
+        assertEquals(0, frames.get(2).length);
+    }
+
+    @Test
+    public void reader_oversized_frame() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        Multihash.putUvarint(stream, IPFS.MESSAGE_SIZE_MAX + 1L);
+        byte[] prefix = stream.toByteArray();
+
+        // rejected as soon as the prefix is read, before any frame data arrives
+        List<byte[]> frames = new ArrayList<>();
+        ReaderHandler reader = new ReaderHandler();
+        try {
+            for (byte b : prefix) {
+                reader.load(new byte[]{b}, token -> fail(), frames::add);
+            }
+            fail();
+        } catch (IOException expected) {
+            assertTrue(frames.isEmpty());
+        }
+
+        // the largest frame is still accepted
+        stream.reset();
+        Multihash.putUvarint(stream, IPFS.MESSAGE_SIZE_MAX);
+        stream.write(new byte[IPFS.MESSAGE_SIZE_MAX]);
+        reader = new ReaderHandler();
+        reader.load(stream.toByteArray(), token -> fail(), frames::add);
+        assertEquals(1, frames.size());
+        assertEquals(IPFS.MESSAGE_SIZE_MAX, frames.get(0).length);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random().nextBytes(data);
+        return data;
+    }
 }
@@ -0,0 +1,177 @@
+package net.luminis.quic;
+
+import net.luminis.quic.cid.ConnectionIdRegistrar;
+import net.luminis.quic.cid.ConnectionIdRegistry;
+import net.luminis.quic.concurrent.DaemonThreadFactory;
+import net.luminis.quic.log.Logger;
+import net.luminis.quic.log.NullLogger;
+import net.luminis.quic.server.ConnectionSource;
+import net.luminis.tls.util.ByteUtils;
+
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import threads.lite.LogUtils;
+
+/**
+ * Local endpoint for outgoing (client) connections: all connections created with this endpoint share one UDP socket
+ * and one receiver thread, instead of a socket and a set of threads per connection.
+ *
+ * Received datagrams are dispatched to the connection by the destination connection ID (all connection IDs of the
+ * connections have the same length, so short header packets can be demultiplexed as well). The packets of a
+ * connection are processed in order on a shared pool; the timers and the send runs of all connections run on a shared
+ * scheduler.
+ */
+public class ClientEndpoint implements ConnectionIdRegistrar {
+    private static final String TAG = ClientEndpoint.class.getSimpleName();
+    private static final int MINIMUM_LONG_HEADER_LENGTH = 1 + 4 + 1;
+
+    private final Logger log;
+    private final DatagramSocket socket;
+    private final Receiver receiver;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService processor;
+    private final int connectionIdLength = ConnectionIdRegistry.DEFAULT_CID_LENGTH;
+    private final Map<ConnectionSource, QuicClientConnectionImpl> connections = new ConcurrentHashMap<>();
+
+    public ClientEndpoint(int schedulerThreads) throws SocketException {
+        this(schedulerThreads, new NullLogger());
+    }
+
+    public ClientEndpoint(int schedulerThreads, Logger log) throws SocketException {
+        this.log = log;
+        socket = new DatagramSocket();
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(schedulerThreads,
+                new DaemonThreadFactory("endpoint-scheduler"));
+        // Timers are cancelled and rescheduled all the time, don't let the cancelled ones pile up
+        executor.setRemoveOnCancelPolicy(true);
+        scheduler = executor;
+        // Threads are only created for the connections that are processing packets at the same time
+        processor = Executors.newCachedThreadPool(new DaemonThreadFactory("endpoint-processor"));
+
+        receiver = new Receiver(socket, this::process, log, this::abortConnections);
+    }
+
+    public void start() {
+        receiver.start();
+    }
+
+    public void shutdown() {
+        receiver.shutdown();
+        socket.close();
+        scheduler.shutdown();
+        processor.shutdown();
+    }
+
+    public DatagramSocket getSocket() {
+        return socket;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    public ExecutorService getProcessor() {
+        return processor;
+    }
+
+    public int getConnectionIdLength() {
+        return connectionIdLength;
+    }
+
+    public int numConnections() {
+        return new HashSet<>(connections.values()).size();
+    }
+
+    void register(QuicClientConnectionImpl connection, byte[] connectionId) {
+        connections.put(new ConnectionSource(connectionId), connection);
+    }
+
+    void deregister(QuicClientConnectionImpl connection) {
+        connections.values().removeIf(registered -> registered == connection);
+    }
+
+    @Override
+    public void registerAdditionalConnectionId(byte[] currentConnectionId, byte[] newConnectionId) {
+        QuicClientConnectionImpl connection = connections.get(new ConnectionSource(currentConnectionId));
+        if (connection != null) {
+            connections.put(new ConnectionSource(newConnectionId), connection);
+        }
+        else {
+            log.error("Cannot add additional cid to non-existing connection " + ByteUtils.bytesToHex(currentConnectionId));
+        }
+    }
+
+    @Override
+    public void deregisterConnectionId(byte[] connectionId) {
+        connections.remove(new ConnectionSource(connectionId));
+    }
+
+    private void process(RawPacket rawPacket) {
+        try {
+            byte[] dcid = destinationConnectionId(rawPacket.getData());
+            if (dcid != null) {
+                QuicClientConnectionImpl connection = connections.get(new ConnectionSource(dcid));
+                if (connection != null) {
+                    connection.datagramReceived(rawPacket);
+                }
+                else {
+                    log.debug("Discarding packet addressing non existent connection " + ByteUtils.bytesToHex(dcid));
+                }
+            }
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
+    }
+
+    private byte[] destinationConnectionId(ByteBuffer data) {
+        try {
+            int flags = data.get();
+            if ((flags & 0b1000_0000) == 0b1000_0000) {
+                // https://www.rfc-editor.org/rfc/rfc9000.html#name-long-header-packets
+                // Long header: flags, version (4 bytes), dcid length, dcid
+                if (data.limit() < MINIMUM_LONG_HEADER_LENGTH) {
+                    return null;
+                }
+                data.position(5);
+                int dcidLength = data.get() & 0xff;
+                if (dcidLength != connectionIdLength || data.remaining() < dcidLength) {
+                    return null;
+                }
+                byte[] dcid = new byte[dcidLength];
+                data.get(dcid);
+                return dcid;
+            }
+            else {
+                // https://www.rfc-editor.org/rfc/rfc9000.html#name-short-header-packets
+                // Short header: flags, dcid (length is known by the endpoint)
+                if (data.remaining() < connectionIdLength) {
+                    return null;
+                }
+                byte[] dcid = new byte[connectionIdLength];
+                data.get(dcid);
+                return dcid;
+            }
+        }
+        finally {
+            data.rewind();
+        }
+    }
+
+    private void abortConnections(Throwable error) {
+        Set<QuicClientConnectionImpl> current = new HashSet<>(connections.values());
+        for (QuicClientConnectionImpl connection : current) {
+            connection.abortConnection(error);
+        }
+    }
+}
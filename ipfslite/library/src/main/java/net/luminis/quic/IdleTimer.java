@@ -22,13 +22,14 @@ import net.luminis.quic.log.Logger;
 import net.luminis.quic.packet.QuicPacket;
 
 import java.time.Instant;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.IntSupplier;
 
 public class IdleTimer {
 
-    private final Timer timer;
+    private volatile ScheduledFuture<?> timerTask;
     private final int timerResolution;
     private long timeout;
     private final QuicConnectionImpl connection;
@@ -48,7 +49,6 @@ public class IdleTimer {
         this.log = logger;
         this.timerResolution = timerResolution;
 
-        timer = new Timer(true);
         lastAction = Instant.now();
     }
 
@@ -56,12 +56,13 @@ public class IdleTimer {
         if (! enabled) {
             enabled = true;
             timeout = idleTimeoutInMillis;
-            timer.scheduleAtFixedRate(new TimerTask() {
-                @Override
-                public void run() {
-                    checkIdle();
-                }
-            }, timerResolution, timerResolution);
+            try {
+                // Runs on the (possibly shared) scheduler of the connection, so no timer thread per connection
+                timerTask = connection.getScheduler().scheduleAtFixedRate(this::checkIdle, timerResolution, timerResolution, TimeUnit.MILLISECONDS);
+            }
+            catch (RejectedExecutionException rejected) {
+                // Can happen when already terminated; don't bother
+            }
         }
         else {
             log.error("idle timeout was set already; can't be set twice on same connection");
@@ -81,7 +82,7 @@ public class IdleTimer {
                 // To avoid excessively small idle timeout periods, endpoints MUST increase the idle timeout period
                 // to be at least three times the current Probe Timeout (PTO)
                 if (lastAction.plusMillis(3 * currentPto).isBefore(now)) {
-                    timer.cancel();
+                    cancel();
                     connection.silentlyCloseConnection(timeout + currentPto);
                 }
             }}
@@ -108,7 +109,14 @@ public class IdleTimer {
 
     public void shutdown() {
         if (enabled) {
-            timer.cancel();
+            cancel();
+        }
+    }
+
+    private void cancel() {
+        ScheduledFuture<?> task = timerTask;
+        if (task != null) {
+            task.cancel(false);
         }
     }
 }
@@ -24,6 +24,7 @@ import net.luminis.quic.send.Sender;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 
@@ -38,17 +39,27 @@ public class KeepAliveActor {
     private final int peerIdleTimeout;
     private final Sender sender;
     private final Instant started;
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownScheduler;
     private final int pingInterval;
     private volatile ScheduledFuture<?> scheduledTask;
 
     public KeepAliveActor(Version quicVersion, int keepAliveTime, int peerIdleTimeout, Sender sender) {
+        this(quicVersion, keepAliveTime, peerIdleTimeout, sender, null);
+    }
+
+    /**
+     * @param scheduler  scheduler of the connection for the pings; when null, an own scheduler is created
+     */
+    public KeepAliveActor(Version quicVersion, int keepAliveTime, int peerIdleTimeout, Sender sender, ScheduledExecutorService scheduler) {
         this.quicVersion = quicVersion;
         this.keepAliveTime = keepAliveTime;
         this.peerIdleTimeout = peerIdleTimeout;
         this.sender = sender;
         started = Instant.now();
         pingInterval = peerIdleTimeout / 2;
+        ownScheduler = scheduler == null;
+        this.scheduler = ownScheduler? Executors.newScheduledThreadPool(1): scheduler;
 
         scheduleNextPing();
     }
@@ -63,11 +74,22 @@ public class KeepAliveActor {
     private void scheduleNextPing() {
         Instant now = Instant.now();
         if (Duration.between(started, now).compareTo(Duration.of(keepAliveTime - pingInterval, SECONDS)) < 0) {
-            scheduledTask = scheduler.schedule(() -> ping(), pingInterval, java.util.concurrent.TimeUnit.SECONDS);
+            try {
+                scheduledTask = scheduler.schedule(() -> ping(), pingInterval, java.util.concurrent.TimeUnit.SECONDS);
+            }
+            catch (RejectedExecutionException rejected) {
+                // Can happen when already shut down; don't bother
+            }
         }
     }
 
     public void shutdown() {
-        scheduler.shutdown();
+        ScheduledFuture<?> task = scheduledTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+        if (ownScheduler) {
+            scheduler.shutdown();
+        }
     }
 }
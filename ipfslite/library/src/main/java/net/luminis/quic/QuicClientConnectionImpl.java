@@ -19,6 +19,7 @@
 package net.luminis.quic;
 
 import net.luminis.quic.cid.ConnectionIdInfo;
+import net.luminis.quic.cc.CongestionControl;
 import net.luminis.quic.cid.ConnectionIdManager;
 import net.luminis.quic.frame.*;
 import net.luminis.quic.log.Logger;
@@ -47,6 +48,7 @@ import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -63,6 +65,8 @@ import static net.luminis.tls.util.ByteUtils.bytesToHex;
 
 import androidx.annotation.NonNull;
 
+import com.google.common.util.concurrent.MoreExecutors;
+
 import threads.lite.LogUtils;
 import threads.lite.cid.Multiaddr;
 
@@ -81,6 +85,9 @@ public class QuicClientConnectionImpl extends QuicConnectionImpl implements Quic
     private final InetAddress serverAddress;
     private final SenderImpl sender;
     private final Receiver receiver;
+    private final ClientEndpoint endpoint;
+    private final Executor processor;
+    private int receivedPacketCounter = 0;
     private final StreamManager streamManager;
     private final X509Certificate clientCertificate;
     private final PrivateKey clientCertificateKey;
@@ -103,8 +110,9 @@ public class QuicClientConnectionImpl extends QuicConnectionImpl implements Quic
     private QuicClientConnectionImpl(String host, int port, QuicSessionTicket sessionTicket, Version quicVersion, Logger log,
                                      String proxyHost, Path secretsFile, Integer initialRtt, Integer cidLength,
                                      List<TlsConstants.CipherSuite> cipherSuites,
-                                     X509Certificate clientCertificate, PrivateKey clientCertificateKey) throws UnknownHostException, SocketException {
-        super(quicVersion, Role.Client, secretsFile, log);
+                                     X509Certificate clientCertificate, PrivateKey clientCertificateKey,
+                                     ClientEndpoint endpoint, CongestionControl congestionControl) throws UnknownHostException, SocketException {
+        super(quicVersion, Role.Client, secretsFile, endpoint != null? endpoint.getScheduler(): null, log);
         log.info("Creating connection with " + host + ":" + port + " with " + quicVersion);
         this.host = host;
         this.port = port;
@@ -114,42 +122,33 @@ public class QuicClientConnectionImpl extends QuicConnectionImpl implements Quic
         this.clientCertificate = clientCertificate;
         this.clientCertificateKey = clientCertificateKey;
 
-        socket = new DatagramSocket();
+        this.endpoint = endpoint;
+        if (endpoint != null) {
+            // Socket, receiver and threads are shared with the other connections of the endpoint
+            socket = endpoint.getSocket();
+            processor = MoreExecutors.newSequentialExecutor(endpoint.getProcessor());
+            cidLength = endpoint.getConnectionIdLength();
+        }
+        else {
+            socket = new DatagramSocket();
+            processor = null;
+        }
 
         idleTimer = new IdleTimer(this, log);
         sender = new SenderImpl(quicVersion, getMaxPacketSize(), socket, new InetSocketAddress(serverAddress, port),
-                        this, initialRtt, log);
+                        this, initialRtt, congestionControl, endpoint != null? endpoint.getScheduler(): null, log);
         sender.enableAllLevels();
         idleTimer.setPtoSupplier(sender::getPto);
         ackGenerator = sender.getGlobalAckGenerator();
         registerProcessor(ackGenerator);
 
-        receiver = new Receiver(socket, new Consumer<RawPacket>() {
-            int receivedPacketCounter = 0;
-            @Override
-            public void accept(RawPacket rawPacket) {
-                try {
-                    if (rawPacket != null) {
-                        Duration processDelay = Duration.between(rawPacket.getTimeReceived(), Instant.now());
-                        log.raw("Start processing packet " + ++receivedPacketCounter + " (" + rawPacket.getLength() + " bytes)", rawPacket.getData(), 0, rawPacket.getLength());
-                        log.debug("Processing delay for packet #" + receivedPacketCounter + ": " + processDelay.toMillis() + " ms");
-
-                        parseAndProcessPackets(receivedPacketCounter, rawPacket.getTimeReceived(), rawPacket.getData(), null);
-                        // sender.datagramProcessed(receiver.hasMore());
-                    }
-
-                } catch (Exception error) {
-                    log.error("Terminating receiver loop because of error", error);
-                    abortConnection(error);
-                }
-            }
-        }, log, this::abortConnection);
+        receiver = endpoint != null? null: new Receiver(socket, this::processDatagram, log, this::abortConnection);
         streamManager = new StreamManager(this, Role.Client, log, 10, 10);
 
         BiConsumer<Integer, String> closeWithErrorFunction = (error, reason) -> {
             immediateCloseWithError(EncryptionLevel.App, error, reason);
         };
-        connectionIdManager = new ConnectionIdManager(cidLength, 2, sender, closeWithErrorFunction, log);
+        connectionIdManager = new ConnectionIdManager(cidLength, 2, endpoint, sender, closeWithErrorFunction, log);
 
         connectionState = Status.Created;
         tlsEngine = new TlsClientEngine(new ClientMessageSender() {
@@ -233,7 +232,12 @@ public class QuicClientConnectionImpl extends QuicConnectionImpl implements Quic
         log.info(String.format("Original destination connection id: %s (scid: %s)", bytesToHex(connectionIdManager.getOriginalDestinationConnectionId()), bytesToHex(connectionIdManager.getInitialConnectionId())));
         generateInitialKeys();
 
-        receiver.start();
+        if (endpoint != null) {
+            endpoint.register(this, connectionIdManager.getInitialConnectionId());
+        }
+        else {
+            receiver.start();
+        }
         sender.start(connectionSecrets);
 
         startHandshake(applicationProtocol, !earlyData.isEmpty());
@@ -311,7 +315,7 @@ public class QuicClientConnectionImpl extends QuicConnectionImpl implements Quic
             throw new IllegalStateException("keep alive can only be set when connected");
         }
 
-        keepAliveActor = new KeepAliveActor(quicVersion, seconds, (int) peerTransportParams.getMaxIdleTimeout(), sender);
+        keepAliveActor = new KeepAliveActor(quicVersion, seconds, (int) peerTransportParams.getMaxIdleTimeout(), sender, getScheduler());
     }
 
     public void ping() {
@@ -325,6 +329,30 @@ public class QuicClientConnectionImpl extends QuicConnectionImpl implements Quic
     }
 
 
+    /**
+     * Processes a datagram received by the endpoint of this connection; the datagrams are processed in order, but not
+     * on the receiver thread of the endpoint.
+     */
+    void datagramReceived(RawPacket rawPacket) {
+        processor.execute(() -> processDatagram(rawPacket));
+    }
+
+    private void processDatagram(RawPacket rawPacket) {
+        try {
+            if (rawPacket != null) {
+                Duration processDelay = Duration.between(rawPacket.getTimeReceived(), Instant.now());
+                log.raw("Start processing packet " + ++receivedPacketCounter + " (" + rawPacket.getLength() + " bytes)", rawPacket.getData(), 0, rawPacket.getLength());
+                log.debug("Processing delay for packet #" + receivedPacketCounter + ": " + processDelay.toMillis() + " ms");
+
+                parseAndProcessPackets(receivedPacketCounter, rawPacket.getTimeReceived(), rawPacket.getData(), null);
+                // sender.datagramProcessed(receiver.hasMore());
+            }
+        } catch (Exception error) {
+            log.error("Terminating receiver loop because of error", error);
+            abortConnection(error);
+        }
+    }
+
     private void generateInitialKeys() {
         connectionSecrets.computeInitialKeys(connectionIdManager.getCurrentPeerConnectionId());
     }
@@ -579,11 +607,20 @@ public class QuicClientConnectionImpl extends QuicConnectionImpl implements Quic
     protected void terminate() {
         super.terminate();
         handshakeFinishedCondition.countDown();
-        receiver.shutdown();
-        socket.close();
+        if (endpoint != null) {
+            endpoint.deregister(this);
+        }
+        else {
+            receiver.shutdown();
+            socket.close();
+        }
     }
 
     public void changeAddress() {
+        if (endpoint != null) {
+            log.error("Changing local address is not supported for a connection of a shared endpoint");
+            return;
+        }
         try {
             DatagramSocket newSocket = new DatagramSocket();
             sender.changeAddress(newSocket);
@@ -962,6 +999,10 @@ public class QuicClientConnectionImpl extends QuicConnectionImpl implements Quic
         Builder clientCertificate(X509Certificate certificate);
 
         Builder clientCertificateKey(PrivateKey privateKey);
+
+        Builder endpoint(ClientEndpoint endpoint);
+
+        Builder congestionControl(CongestionControl congestionControl);
     }
 
     private static class BuilderImpl implements Builder {
@@ -979,6 +1020,8 @@ public class QuicClientConnectionImpl extends QuicConnectionImpl implements Quic
         private Integer quantumReadinessTest;
         private X509Certificate clientCertificate;
         private PrivateKey clientCertificateKey;
+        private ClientEndpoint endpoint;
+        private CongestionControl congestionControl = CongestionControl.NewReno;
 
         @Override
         public QuicClientConnectionImpl build() throws SocketException, UnknownHostException {
@@ -997,7 +1040,7 @@ public class QuicClientConnectionImpl extends QuicConnectionImpl implements Quic
 
             QuicClientConnectionImpl quicConnection =
                     new QuicClientConnectionImpl(host, port, sessionTicket, quicVersion, log, proxyHost, secretsFile,
-                            initialRtt, connectionIdLength, cipherSuites, clientCertificate, clientCertificateKey);
+                            initialRtt, connectionIdLength, cipherSuites, clientCertificate, clientCertificateKey, endpoint, congestionControl);
 
             if (omitCertificateCheck) {
                 quicConnection.trustAll();
@@ -1107,6 +1150,18 @@ public class QuicClientConnectionImpl extends QuicConnectionImpl implements Quic
             this.clientCertificateKey = privateKey;
             return this;
         }
+
+        @Override
+        public Builder endpoint(ClientEndpoint endpoint) {
+            this.endpoint = endpoint;
+            return this;
+        }
+
+        @Override
+        public Builder congestionControl(CongestionControl congestionControl) {
+            this.congestionControl = congestionControl;
+            return this;
+        }
     }
 
 
@@ -95,9 +95,18 @@ public abstract class QuicConnectionImpl implements QuicConnection, FrameProcess
 
     private RateLimiter closeFramesSendRateLimiter;
     private final ScheduledExecutorService scheduler;
+    private final boolean ownScheduler;
 
 
     protected QuicConnectionImpl(Version quicVersion, Role role, Path secretsFile, Logger log) {
+        this(quicVersion, role, secretsFile, null, log);
+    }
+
+    /**
+     * @param scheduler  scheduler for the timers of this connection, shared with other connections; when null, the
+     *                   connection creates (and shuts down) its own scheduler
+     */
+    protected QuicConnectionImpl(Version quicVersion, Role role, Path secretsFile, ScheduledExecutorService scheduler, Logger log) {
         this.quicVersion = quicVersion;
         this.role = role;
         this.log = log;
@@ -111,7 +120,15 @@ public abstract class QuicConnectionImpl implements QuicConnection, FrameProcess
 
         connectionState = Status.Created;
         closeFramesSendRateLimiter = new ProgressivelyIncreasingRateLimiter();
-        scheduler = Executors.newScheduledThreadPool(1, new DaemonThreadFactory("scheduler"));
+        ownScheduler = scheduler == null;
+        this.scheduler = ownScheduler? Executors.newScheduledThreadPool(1, new DaemonThreadFactory("scheduler")): scheduler;
+    }
+
+    /**
+     * Returns the scheduler that runs the timers (idle timeout, loss detection, keep alive) of this connection.
+     */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
     }
 
     protected Status getStatus(){
@@ -665,7 +682,9 @@ public abstract class QuicConnectionImpl implements QuicConnection, FrameProcess
         idleTimer.shutdown();
         getSender().shutdown();
         connectionState = Status.Closed;
-        scheduler.shutdown();
+        if (ownScheduler) {
+            scheduler.shutdown();
+        }
     }
 
     protected int quicError(TlsProtocolException tlsError) {
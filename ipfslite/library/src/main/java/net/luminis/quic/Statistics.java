@@ -28,6 +28,14 @@ public class Statistics {
         senderStatistics = statistics;
     }
 
+    public int smoothedRtt() {
+        return senderStatistics.smoothedRtt();
+    }
+
+    public int latestRtt() {
+        return senderStatistics.latestRtt();
+    }
+
     @Override
     public String toString() {
         return "datagrams sent: " + senderStatistics.datagramsSent() +
@@ -36,7 +44,10 @@ public class Statistics {
                 "\npackets lost: " + senderStatistics.lostPackets() +
                 "\nsmoothed RTT: " + senderStatistics.smoothedRtt() +
                 "\nRTT var: " + senderStatistics.rttVar() +
-                "\nlatest RTT: " + senderStatistics.latestRtt()
+                "\nlatest RTT: " + senderStatistics.latestRtt() +
+                "\npacing rate: " + senderStatistics.pacingRate() +
+                "\npacing delays: " + senderStatistics.pacingDelays() +
+                "\npacing delay time: " + senderStatistics.pacingDelayTime()
                 ;
 
     }
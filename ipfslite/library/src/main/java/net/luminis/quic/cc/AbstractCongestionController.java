@@ -21,6 +21,7 @@ package net.luminis.quic.cc;
 import net.luminis.quic.log.Logger;
 import net.luminis.quic.packet.PacketInfo;
 import net.luminis.quic.packet.QuicPacket;
+import net.luminis.quic.recovery.RateSample;
 
 import java.util.List;
 
@@ -69,6 +70,11 @@ public class AbstractCongestionController implements CongestionController {
         }
     }
 
+    @Override
+    public void registerRateSample(RateSample rateSample) {
+        // Loss based congestion controllers don't use the delivery rate
+    }
+
     @Override
     public synchronized void registerLost(List<? extends PacketInfo> lostPackets) {
         long lostBytes = lostPackets.stream()
@@ -116,6 +122,11 @@ public class AbstractCongestionController implements CongestionController {
         return congestionWindow - bytesInFlight;
     }
 
+    @Override
+    public long getPacingRate() {
+        return 0;
+    }
+
     public void reset() {
         log.debug("Resetting congestion controller.");
         bytesInFlight = 0;
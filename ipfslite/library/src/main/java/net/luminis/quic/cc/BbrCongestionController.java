@@ -0,0 +1,352 @@
+package net.luminis.quic.cc;
+
+import net.luminis.quic.log.Logger;
+import net.luminis.quic.packet.PacketInfo;
+import net.luminis.quic.recovery.RateSample;
+import net.luminis.quic.recovery.RttEstimator;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Random;
+
+// https://datatracker.ietf.org/doc/html/draft-cardwell-iccrg-bbr-congestion-control-02
+// "BBR Congestion Control"; BBR builds a model of the path, the bottleneck bandwidth (maximum of the recent delivery
+// rate samples) and the minimum round trip time, and derives the pacing rate and the congestion window from that
+// model, instead of halving the window on every loss. Random loss (as on wireless links) hardly lowers the sending
+// rate; as in BBRv2, only a loss rate above a threshold bounds the data in flight, and never below the estimated
+// bandwidth-delay product.
+public class BbrCongestionController extends AbstractCongestionController implements CongestionController {
+
+    public enum Mode {
+        Startup,
+        Drain,
+        ProbeBw,
+        ProbeRtt
+    };
+
+    private static final double STARTUP_PACING_GAIN = 2.77;  // 4 * ln(2)
+    private static final double STARTUP_CWND_GAIN = 2;
+    private static final double DRAIN_PACING_GAIN = 1 / STARTUP_PACING_GAIN;
+    private static final double CWND_GAIN = 2;
+    private static final double[] PROBE_BW_PACING_GAINS = { 1.25, 0.75, 1, 1, 1, 1, 1, 1 };
+    private static final double LOSS_THRESH = 0.02;
+    private static final double BETA = 0.7;
+    private static final double PROBE_RTT_CWND_GAIN = 0.5;
+    private static final double FULL_BW_GROWTH = 1.25;
+    private static final int FULL_BW_ROUNDS = 3;
+    private static final int MAX_BW_FILTER_ROUNDS = 10;
+    private static final Duration MIN_RTT_FILTER_LENGTH = Duration.ofSeconds(10);
+    private static final Duration PROBE_RTT_DURATION = Duration.ofMillis(200);
+    private static final long NOT_SET = Long.MAX_VALUE;
+
+    protected int kMaxDatagramSize = 1200;           // TODO: 1200 is the minimum, actual value can be larger
+    protected int kMinimumWindow = 4 * kMaxDatagramSize;
+
+    private final RttEstimator rttEstimator;
+    private final Random random = new Random();
+    private Mode mode = Mode.Startup;
+    private double pacingGain = STARTUP_PACING_GAIN;
+    private double cwndGain = STARTUP_CWND_GAIN;
+    private volatile long pacingRate;
+
+    // Model (bandwidth in bytes per second, times in microseconds)
+    private final ArrayDeque<long[]> maxBwFilter = new ArrayDeque<>();  // { round, bandwidth }, decreasing bandwidth
+    private long maxBw;
+    private long minRtt = NOT_SET;
+    private Instant minRttStamp = Instant.now();
+
+    // Round counting
+    private long nextRoundDelivered;
+    private long roundCount;
+    private boolean roundStart;
+    private long delivered;
+
+    // Startup
+    private boolean filledPipe;
+    private long fullBw;
+    private int fullBwCount;
+
+    // ProbeBw
+    private int cycleIndex;
+    private Instant cycleStamp;
+
+    // ProbeRtt
+    private long priorCwnd;
+    private Instant probeRttDoneStamp;
+    private boolean probeRttRoundDone;
+
+    // Loss response (BBRv2)
+    private long ackedInRound;
+    private long lostInRound;
+    private long inflightHi = NOT_SET;
+
+    public BbrCongestionController(Logger logger, CongestionControlEventListener eventListener, RttEstimator rttEstimator) {
+        super(logger, eventListener);
+        this.rttEstimator = rttEstimator;
+        setPacingRate();
+    }
+
+    @Override
+    public synchronized void registerRateSample(RateSample rateSample) {
+        Instant now = Instant.now();
+        delivered = rateSample.getDelivered();
+        updateRound(rateSample);
+        updateMinRtt(rateSample, now);
+        updateMaxBw(rateSample);
+        if (roundStart && !rateSample.isAppLimited()) {
+            checkFullPipe();
+        }
+
+        if (mode == Mode.Startup && filledPipe) {
+            enterMode(Mode.Drain, DRAIN_PACING_GAIN, STARTUP_CWND_GAIN);
+        }
+        if (mode == Mode.Drain && bytesInFlight <= bdp(1)) {
+            enterProbeBw(now);
+        }
+        if (mode == Mode.ProbeBw) {
+            updateCycle(now);
+        }
+        if (mode == Mode.ProbeRtt) {
+            handleProbeRtt(now);
+        }
+        setPacingRate();
+    }
+
+    @Override
+    public synchronized void registerAcked(List<? extends PacketInfo> acknowlegdedPackets) {
+        super.registerAcked(acknowlegdedPackets);
+
+        long acked = acknowlegdedPackets.stream().mapToLong(packetInfo -> packetInfo.packet().getSize()).sum();
+        ackedInRound += acked;
+
+        // Once the pipe is filled, the window grows with the delivered bytes up to the target; before that (startup),
+        // it grows like in slow start while it is below the target.
+        long target = targetCwnd();
+        if (filledPipe) {
+            congestionWindow = Long.min(congestionWindow + acked, target);
+        }
+        else if (congestionWindow < target || delivered < initialWindowSize) {
+            congestionWindow += acked;
+        }
+        congestionWindow = Long.max(congestionWindow, kMinimumWindow);
+        if (mode == Mode.ProbeRtt) {
+            congestionWindow = Long.min(congestionWindow, probeRttCwnd());
+        }
+    }
+
+    @Override
+    public synchronized void registerLost(List<? extends PacketInfo> lostPackets) {
+        super.registerLost(lostPackets);
+        // No window reduction per loss: losses only count for the loss rate of the round
+        lostInRound += lostPackets.stream().mapToLong(packetInfo -> packetInfo.packet().getSize()).sum();
+    }
+
+    /**
+     * @return  the rate (in bytes per second) at which the sender should pace the packets
+     */
+    @Override
+    public long getPacingRate() {
+        return pacingRate;
+    }
+
+    public synchronized Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return  the estimated bottleneck bandwidth in bytes per second
+     */
+    public synchronized long getBottleneckBandwidth() {
+        return maxBw;
+    }
+
+    /**
+     * @return  the minimum round trip time in microseconds, Long.MAX_VALUE when there is no sample yet
+     */
+    public synchronized long getMinRtt() {
+        return minRtt;
+    }
+
+    private void updateRound(RateSample rateSample) {
+        // A round ends when a packet is acknowledged that was sent after the start of the round.
+        roundStart = false;
+        if (rateSample.getPriorDelivered() >= nextRoundDelivered) {
+            nextRoundDelivered = rateSample.getDelivered();
+            roundCount++;
+            roundStart = true;
+            probeRttRoundDone = true;
+            checkLossRate();
+        }
+    }
+
+    private void checkLossRate() {
+        long total = ackedInRound + lostInRound;
+        if (total > 0 && lostInRound > LOSS_THRESH * total) {
+            // High loss rate: bound the data in flight, but not below the bandwidth-delay product, so random loss
+            // does not reduce the rate below the estimated bandwidth.
+            inflightHi = Long.max(bdp(1), (long) (BETA * Long.min(inflightHi, congestionWindow)));
+            if (mode == Mode.ProbeBw && pacingGain > 1) {
+                // Probing for more bandwidth failed; stop probing
+                advanceCycle(Instant.now());
+            }
+            log.cc("BBR: loss rate " + (100 * lostInRound / total) + "%, inflight limited to " + inflightHi);
+        }
+        else if (total > 0 && mode == Mode.ProbeBw && pacingGain > 1) {
+            // Probing for more bandwidth without high loss: the path can take more
+            inflightHi = NOT_SET;
+        }
+        ackedInRound = 0;
+        lostInRound = 0;
+    }
+
+    private void updateMinRtt(RateSample rateSample, Instant now) {
+        boolean filterExpired = now.isAfter(minRttStamp.plus(MIN_RTT_FILTER_LENGTH));
+        if (rateSample.getRtt() > 0 && (rateSample.getRtt() <= minRtt || filterExpired)) {
+            minRtt = rateSample.getRtt();
+            minRttStamp = now;
+        }
+        if (filterExpired && mode != Mode.ProbeRtt) {
+            // Keep the cwnd small to drain the queue, so the min RTT can be measured
+            priorCwnd = congestionWindow;
+            probeRttDoneStamp = null;
+            enterMode(Mode.ProbeRtt, 1, 1);
+        }
+    }
+
+    private void updateMaxBw(RateSample rateSample) {
+        // A sample with an interval shorter than the min rtt is discarded, it probably suffers from ack compression
+        if (rateSample.getDeliveryRate() <= 0 || minRtt == NOT_SET || rateSample.getInterval() < minRtt) {
+            return;
+        }
+        // An app-limited sample only counts when it is higher than the current estimate
+        if (rateSample.isAppLimited() && rateSample.getDeliveryRate() < maxBw) {
+            return;
+        }
+        // Windowed max filter over the last rounds; entries with a lower bandwidth than a later one are useless
+        while (!maxBwFilter.isEmpty() && maxBwFilter.peekLast()[1] <= rateSample.getDeliveryRate()) {
+            maxBwFilter.pollLast();
+        }
+        maxBwFilter.addLast(new long[] { roundCount, rateSample.getDeliveryRate() });
+        while (maxBwFilter.peekFirst()[0] <= roundCount - MAX_BW_FILTER_ROUNDS) {
+            maxBwFilter.pollFirst();
+        }
+        maxBw = maxBwFilter.peekFirst()[1];
+    }
+
+    private void checkFullPipe() {
+        // The pipe is full when the bandwidth grew less than 25% for three rounds in a row.
+        // Unlike BBRv2, startup does not end on a high loss rate: with a few percent of random loss, it would leave
+        // startup long before the pipe is full.
+        if (filledPipe) {
+            return;
+        }
+        if (maxBw >= fullBw * FULL_BW_GROWTH) {
+            fullBw = maxBw;
+            fullBwCount = 0;
+            return;
+        }
+        if (++fullBwCount >= FULL_BW_ROUNDS) {
+            filledPipe = true;
+            log.cc("BBR: pipe filled at " + maxBw + " B/s, min rtt " + minRtt + " us");
+        }
+    }
+
+    private void enterProbeBw(Instant now) {
+        enterMode(Mode.ProbeBw, 1, CWND_GAIN);
+        // Start in a random phase, but not in the draining one, so flows sharing the bottleneck don't synchronize
+        cycleIndex = (2 + random.nextInt(PROBE_BW_PACING_GAINS.length - 1)) % PROBE_BW_PACING_GAINS.length;
+        cycleStamp = now;
+        pacingGain = PROBE_BW_PACING_GAINS[cycleIndex];
+    }
+
+    private void updateCycle(Instant now) {
+        boolean fullLength = Duration.between(cycleStamp, now).toNanos() / 1000 > minRtt;
+        if (pacingGain > 1) {
+            if (fullLength && (lostInRound > 0 || bytesInFlight >= bdp(pacingGain))) {
+                advanceCycle(now);
+            }
+        }
+        else if (pacingGain < 1) {
+            if (fullLength || bytesInFlight <= bdp(1)) {
+                advanceCycle(now);
+            }
+        }
+        else if (fullLength) {
+            advanceCycle(now);
+        }
+    }
+
+    private void advanceCycle(Instant now) {
+        cycleIndex = (cycleIndex + 1) % PROBE_BW_PACING_GAINS.length;
+        cycleStamp = now;
+        pacingGain = PROBE_BW_PACING_GAINS[cycleIndex];
+    }
+
+    private void handleProbeRtt(Instant now) {
+        // Wait until the inflight drops to the probe window, then keep it there for at least 200 ms and one round.
+        if (probeRttDoneStamp == null) {
+            if (bytesInFlight <= probeRttCwnd()) {
+                probeRttDoneStamp = now.plus(PROBE_RTT_DURATION);
+                probeRttRoundDone = false;
+                nextRoundDelivered = delivered;
+            }
+        }
+        else if (probeRttRoundDone && now.isAfter(probeRttDoneStamp)) {
+            minRttStamp = now;
+            congestionWindow = Long.max(congestionWindow, priorCwnd);
+            if (filledPipe) {
+                enterProbeBw(now);
+            }
+            else {
+                enterMode(Mode.Startup, STARTUP_PACING_GAIN, STARTUP_CWND_GAIN);
+            }
+        }
+    }
+
+    private void enterMode(Mode newMode, double pacingGain, double cwndGain) {
+        log.cc("BBR: " + mode + " -> " + newMode + " (bw " + maxBw + " B/s, min rtt " + minRtt + " us, cwnd " + congestionWindow + ")");
+        mode = newMode;
+        this.pacingGain = pacingGain;
+        this.cwndGain = cwndGain;
+    }
+
+    private long targetCwnd() {
+        // Some extra room for the quantization and the aggregation of acks
+        long target = bdp(cwndGain) + 3 * kMaxDatagramSize;
+        if (inflightHi != NOT_SET) {
+            // Bounded after a high loss rate, but always leave room to probe for more bandwidth
+            target = Long.min(target, Long.max(inflightHi, bdp(Double.max(pacingGain, 1))));
+        }
+        return Long.max(target, kMinimumWindow);
+    }
+
+    private long probeRttCwnd() {
+        return Long.max(bdp(PROBE_RTT_CWND_GAIN), kMinimumWindow);
+    }
+
+    private long bdp(double gain) {
+        if (maxBw == 0 || minRtt == NOT_SET) {
+            // No model yet; relative to the initial window
+            return (long) (gain * initialWindowSize);
+        }
+        return (long) (gain * maxBw * minRtt / 1_000_000);
+    }
+
+    private void setPacingRate() {
+        long rate;
+        if (maxBw == 0) {
+            // Initial window per smoothed rtt (milliseconds), with the gain
+            long srtt = Long.max(rttEstimator.getSmoothedRtt(), 1);
+            rate = (long) (pacingGain * initialWindowSize * 1000 / srtt);
+        }
+        else {
+            rate = (long) (pacingGain * maxBw);
+        }
+        // Until the pipe is filled, the pacing rate is only increased
+        if (filledPipe || rate > pacingRate) {
+            pacingRate = rate;
+        }
+    }
+}
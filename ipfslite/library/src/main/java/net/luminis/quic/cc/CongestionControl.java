@@ -0,0 +1,10 @@
+package net.luminis.quic.cc;
+
+/**
+ * Congestion control algorithm of a connection.
+ */
+public enum CongestionControl {
+    NewReno,
+    Cubic,
+    Bbr
+}
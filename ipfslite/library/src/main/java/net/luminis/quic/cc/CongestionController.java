@@ -20,6 +20,7 @@ package net.luminis.quic.cc;
 
 import net.luminis.quic.packet.PacketInfo;
 import net.luminis.quic.packet.QuicPacket;
+import net.luminis.quic.recovery.RateSample;
 
 import java.util.List;
 
@@ -29,6 +30,11 @@ public interface CongestionController {
 
     void registerAcked(List<? extends PacketInfo> acknowlegdedPackets);
 
+    /**
+     * Called with the delivery rate sample of an ack, before the acknowledged packets are registered.
+     */
+    void registerRateSample(RateSample rateSample);
+
     void registerLost(List<? extends PacketInfo> lostPackets);
 
     boolean canSend(int bytes);
@@ -42,4 +48,10 @@ public interface CongestionController {
     void discard(List<? extends PacketInfo> packetStatusStream);
 
     long remainingCwnd();
+
+    /**
+     * @return  the rate (in bytes per second) at which packets should be paced, 0 when the congestion controller has
+     *          no pacing rate (and the sender derives one from the congestion window)
+     */
+    long getPacingRate();
 }
@@ -0,0 +1,264 @@
+package net.luminis.quic.cc;
+
+import net.luminis.quic.PnSpace;
+import net.luminis.quic.log.Logger;
+import net.luminis.quic.packet.PacketInfo;
+import net.luminis.quic.packet.QuicPacket;
+import net.luminis.quic.recovery.RttEstimator;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+// https://www.rfc-editor.org/rfc/rfc9438.html
+// "CUBIC: A New Congestion Control for High-Speed Networks"; the window grows with a cubic function of the time since
+// the last congestion event, so it recovers to the previous maximum much faster than NewReno on high BDP paths.
+// https://www.rfc-editor.org/rfc/rfc9406.html
+// HyStart++ leaves slow start (via conservative slow start) when the round-trip time starts increasing, before the
+// queue overflows.
+public class CubicCongestionController extends AbstractCongestionController implements CongestionController {
+
+    public enum Mode {
+        SlowStart,
+        ConservativeSlowStart,
+        CongestionAvoidance
+    };
+
+    // https://www.rfc-editor.org/rfc/rfc9438.html#section-5
+    // "Parameter C SHOULD be set to 0.4."; "beta_cubic SHOULD be set to 0.7"
+    private static final double C = 0.4;
+    private static final double BETA = 0.7;
+    // https://www.rfc-editor.org/rfc/rfc9438.html#section-4.3
+    private static final double ALPHA = 3 * (1 - BETA) / (1 + BETA);
+
+    // https://www.rfc-editor.org/rfc/rfc9406.html#section-4.3 (times in microseconds)
+    private static final long MIN_RTT_THRESH = 4_000;
+    private static final long MAX_RTT_THRESH = 16_000;
+    private static final int MIN_RTT_DIVISOR = 8;
+    private static final int N_RTT_SAMPLE = 8;
+    private static final int CSS_GROWTH_DIVISOR = 4;
+    private static final int CSS_ROUNDS = 5;
+    private static final int L = 8;  // Not paced
+    private static final long NOT_SET = Long.MAX_VALUE;
+
+    protected int kMinimumWindow = 2 * 1200;
+    protected int kMaxDatagramSize = 1200;           // TODO: 1200 is the minimum, actual value can be larger
+
+    private final RttEstimator rttEstimator;
+    private long slowStartThreshold = Long.MAX_VALUE;
+    private Instant congestionRecoveryStartTime = Instant.MIN;
+
+    // Cubic state (windows in bytes, times in seconds)
+    private Instant epochStart;
+    private double windowMax;
+    private double k;
+    private double windowEstimate;
+
+    // HyStart++ state
+    private boolean hyStart = true;
+    private boolean conservativeSlowStart;
+    private int cssRounds;
+    private long largestSent = -1;
+    private long windowEnd = -1;
+    private long lastRoundMinRtt = NOT_SET;
+    private long currentRoundMinRtt = NOT_SET;
+    private long cssBaselineMinRtt = NOT_SET;
+    private int rttSampleCount;
+
+    public CubicCongestionController(Logger logger, CongestionControlEventListener eventListener, RttEstimator rttEstimator) {
+        super(logger, eventListener);
+        this.rttEstimator = rttEstimator;
+    }
+
+    @Override
+    public synchronized void registerInFlight(QuicPacket sentPacket) {
+        super.registerInFlight(sentPacket);
+        if (sentPacket.getPnSpace() == PnSpace.App) {
+            largestSent = Long.max(largestSent, sentPacket.getPacketNumber());
+        }
+    }
+
+    @Override
+    public synchronized void registerAcked(List<? extends PacketInfo> acknowlegdedPackets) {
+        int epsilon = 3;
+        boolean cwndLimited = congestionWindow - bytesInFlight <= epsilon;
+
+        long bytesInFlightBefore = this.bytesInFlight;
+        super.registerAcked(acknowlegdedPackets);
+
+        Instant now = Instant.now();
+        if (hyStart) {
+            hyStartAcked(acknowlegdedPackets, now);
+        }
+
+        // https://tools.ietf.org/html/draft-ietf-quic-recovery-33#section-7.8
+        // "When bytes in flight is smaller than the congestion window (...), the congestion window is under-utilized.
+        //  When this occurs, the congestion window SHOULD NOT be increased in either slow start or congestion avoidance."
+        if (cwndLimited) {
+            long previousCwnd = congestionWindow;
+            long slowStartAcked = 0;
+            for (PacketInfo ackedPacket: acknowlegdedPackets) {
+                // https://tools.ietf.org/html/draft-ietf-quic-recovery-23#section-6.4
+                // "QUIC defines the end of recovery as a packet sent after the start of recovery being acknowledged"
+                if (ackedPacket.timeSent().isAfter(congestionRecoveryStartTime)) {
+                    if (congestionWindow < slowStartThreshold) {
+                        slowStartAcked += ackedPacket.packet().getSize();
+                    }
+                    else {
+                        congestionAvoidance(ackedPacket.packet().getSize(), now);
+                    }
+                }
+            }
+            if (slowStartAcked > 0) {
+                // https://www.rfc-editor.org/rfc/rfc9406.html#section-4.2
+                // "cwnd = cwnd + min(SMSS * L, bytes_acked)", a quarter of it in conservative slow start
+                long increase = Long.min(slowStartAcked, L * kMaxDatagramSize);
+                congestionWindow += conservativeSlowStart? increase / CSS_GROWTH_DIVISOR: increase;
+            }
+            if (congestionWindow != previousCwnd) {
+                log.cc("Cwnd(+): " + congestionWindow + " (" + getMode() + "); inflight: " + bytesInFlightBefore);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void registerLost(List<? extends PacketInfo> lostPackets) {
+        super.registerLost(lostPackets);
+
+        if (! lostPackets.isEmpty()) {
+            PacketInfo largest = lostPackets.stream().max((p1, p2) -> p1.packet().getPacketNumber().compareTo(p2.packet().getPacketNumber())).get();
+            fireCongestionEvent(largest.timeSent());
+        }
+    }
+
+    private void hyStartAcked(List<? extends PacketInfo> acknowlegdedPackets, Instant now) {
+        // The rtt sample is taken from the most recently sent packet that is acknowledged now
+        PacketInfo latest = null;
+        long largestAcked = -1;
+        for (PacketInfo ackedPacket: acknowlegdedPackets) {
+            if (ackedPacket.packet().getPnSpace() == PnSpace.App) {
+                largestAcked = Long.max(largestAcked, ackedPacket.packet().getPacketNumber());
+                if (latest == null || ackedPacket.timeSent().isAfter(latest.timeSent())) {
+                    latest = ackedPacket;
+                }
+            }
+        }
+        if (latest == null) {
+            return;
+        }
+
+        // https://www.rfc-editor.org/rfc/rfc9406.html#section-4.2
+        // "A round ends when the sender receives an acknowledgment for the packet that was sent at the beginning of it"
+        if (largestAcked >= windowEnd) {
+            windowEnd = largestSent;
+            lastRoundMinRtt = currentRoundMinRtt;
+            currentRoundMinRtt = NOT_SET;
+            rttSampleCount = 0;
+            if (conservativeSlowStart && ++cssRounds >= CSS_ROUNDS) {
+                // "If CSS_ROUNDS rounds are complete, enter congestion avoidance by setting the ssthresh to the current cwnd."
+                slowStartThreshold = congestionWindow;
+                exitHyStart();
+                log.cc("HyStart++: congestion avoidance at cwnd " + congestionWindow);
+                return;
+            }
+        }
+
+        long rttSample = Duration.between(latest.timeSent(), now).toNanos() / 1000;
+        currentRoundMinRtt = Long.min(currentRoundMinRtt, rttSample);
+        rttSampleCount++;
+
+        if (rttSampleCount >= N_RTT_SAMPLE && currentRoundMinRtt != NOT_SET && lastRoundMinRtt != NOT_SET) {
+            if (! conservativeSlowStart) {
+                long rttThresh = Long.max(MIN_RTT_THRESH, Long.min(lastRoundMinRtt / MIN_RTT_DIVISOR, MAX_RTT_THRESH));
+                if (currentRoundMinRtt >= lastRoundMinRtt + rttThresh) {
+                    // "If the increase of the RTT is larger than the threshold, exit slow start and enter CSS"
+                    cssBaselineMinRtt = currentRoundMinRtt;
+                    conservativeSlowStart = true;
+                    cssRounds = 0;
+                    log.cc("HyStart++: conservative slow start at cwnd " + congestionWindow);
+                }
+            }
+            else if (currentRoundMinRtt < cssBaselineMinRtt) {
+                // "If the RTT decreases below the baseline, the slow start exit was spurious; resume slow start"
+                cssBaselineMinRtt = NOT_SET;
+                conservativeSlowStart = false;
+                log.cc("HyStart++: back to slow start at cwnd " + congestionWindow);
+            }
+        }
+    }
+
+    private void exitHyStart() {
+        hyStart = false;
+        conservativeSlowStart = false;
+    }
+
+    // https://www.rfc-editor.org/rfc/rfc9438.html#section-4.2
+    private void congestionAvoidance(int ackedBytes, Instant now) {
+        double segment = kMaxDatagramSize;
+        if (epochStart == null) {
+            // Start of a congestion avoidance epoch; also without a congestion event when leaving slow start
+            epochStart = now;
+            if (congestionWindow < windowMax) {
+                k = Math.cbrt((windowMax - congestionWindow) / segment / C);
+            }
+            else {
+                k = 0;
+                windowMax = congestionWindow;
+            }
+            windowEstimate = congestionWindow;
+        }
+
+        double t = Duration.between(epochStart, now).toNanos() / 1e9;
+        double rtt = rttEstimator.getSmoothedRtt() / 1000.0;
+
+        // https://www.rfc-editor.org/rfc/rfc9438.html#section-4.3
+        // Reno-friendly region: estimate of the window of a Reno flow with the same loss
+        windowEstimate += ALPHA * segment * ackedBytes / congestionWindow;
+
+        if (cubicWindow(t) < windowEstimate) {
+            congestionWindow = Long.max(congestionWindow, (long) windowEstimate);
+        }
+        else {
+            // https://www.rfc-editor.org/rfc/rfc9438.html#section-4.4
+            // "target = W_cubic(t + RTT)", limited to [cwnd, 1.5 * cwnd]
+            double target = Double.min(Double.max(cubicWindow(t + rtt), congestionWindow), 1.5 * congestionWindow);
+            congestionWindow += (long) ((target - congestionWindow) * ackedBytes / congestionWindow);
+        }
+    }
+
+    // https://www.rfc-editor.org/rfc/rfc9438.html#section-4.2
+    // "W_cubic(t) = C * (t - K)^3 + W_max" (C in segments per second^3)
+    private double cubicWindow(double t) {
+        return C * Math.pow(t - k, 3) * kMaxDatagramSize + windowMax;
+    }
+
+    private void fireCongestionEvent(Instant timeSent) {
+        if (timeSent.isAfter(congestionRecoveryStartTime)) {
+            congestionRecoveryStartTime = Instant.now();
+            exitHyStart();
+            epochStart = null;
+
+            // https://www.rfc-editor.org/rfc/rfc9438.html#section-4.7
+            // Fast convergence: release bandwidth when the window did not reach the previous maximum.
+            if (congestionWindow < windowMax) {
+                windowMax = congestionWindow * (1 + BETA) / 2;
+            }
+            else {
+                windowMax = congestionWindow;
+            }
+            // https://www.rfc-editor.org/rfc/rfc9438.html#section-4.6
+            congestionWindow = Long.max((long) (congestionWindow * BETA), kMinimumWindow);
+            log.cc("Cwnd(-): " + congestionWindow + "; inflight: " + bytesInFlight);
+            slowStartThreshold = congestionWindow;
+        }
+    }
+
+    public synchronized Mode getMode() {
+        if (congestionWindow < slowStartThreshold) {
+            return conservativeSlowStart? Mode.ConservativeSlowStart: Mode.SlowStart;
+        }
+        else {
+            return Mode.CongestionAvoidance;
+        }
+    }
+}
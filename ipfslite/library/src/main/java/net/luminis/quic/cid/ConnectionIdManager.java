@@ -24,8 +24,6 @@ import net.luminis.quic.frame.QuicFrame;
 import net.luminis.quic.frame.RetireConnectionIdFrame;
 import net.luminis.quic.log.Logger;
 import net.luminis.quic.send.Sender;
-import net.luminis.quic.server.ServerConnectionProxy;
-import net.luminis.quic.server.ServerConnectionRegistry;
 
 import java.security.SecureRandom;
 import java.util.Arrays;
@@ -44,7 +42,7 @@ public class ConnectionIdManager {
     public static final int MAX_CIDS_PER_CONNECTION = 6;
 
     private final int connectionIdLength;
-    private final ServerConnectionRegistry connectionRegistry;
+    private final ConnectionIdRegistrar connectionRegistry;
     private final Sender sender;
     private final BiConsumer<Integer, String> closeConnectionCallback;
     private final SourceConnectionIdRegistry cidRegistry;
@@ -72,7 +70,7 @@ public class ConnectionIdManager {
      * @param log  logger
      */
     public ConnectionIdManager(byte[] initialClientCid, byte[] originalDestinationConnectionId, int connectionIdLength,
-                               int maxPeerCids, ServerConnectionRegistry connectionRegistry, Sender sender,
+                               int maxPeerCids, ConnectionIdRegistrar connectionRegistry, Sender sender,
                                BiConsumer<Integer, String> closeConnectionCallback, Logger log) {
         this.originalDestinationConnectionId = originalDestinationConnectionId;
         this.connectionIdLength = connectionIdLength;
@@ -103,6 +101,21 @@ public class ConnectionIdManager {
      * @param log  logger
      */
     public ConnectionIdManager(Integer connectionIdLength, int maxPeerCids, Sender sender, BiConsumer<Integer, String> closeConnectionCallback, Logger log) {
+        this(connectionIdLength, maxPeerCids, null, sender, closeConnectionCallback, log);
+    }
+
+    /**
+     * Creates a connection ID manager for client role.
+     * @param connectionIdLength  the length of the connection ID's generated for this endpoint (server)
+     * @param maxPeerCids  the maximum number of peer connection IDs this endpoint is willing to store
+     * @param connectionRegistry  the registry of a shared (client) endpoint for associating new connection IDs with the
+     *                            connection, or null when the connection has its own socket
+     * @param sender  the sender to send messages to the peer
+     * @param closeConnectionCallback  callback for closing the connection with a transport error code
+     * @param log  logger
+     */
+    public ConnectionIdManager(Integer connectionIdLength, int maxPeerCids, ConnectionIdRegistrar connectionRegistry,
+                               Sender sender, BiConsumer<Integer, String> closeConnectionCallback, Logger log) {
         this.maxPeerCids = maxPeerCids;
         this.sender = sender;
         cidRegistry = new SourceConnectionIdRegistry(connectionIdLength, log);
@@ -119,13 +132,7 @@ public class ConnectionIdManager {
         peerCidRegistry = new DestinationConnectionIdRegistry(originalDestinationConnectionId, log);
         initialPeerConnectionId = originalDestinationConnectionId;
 
-        connectionRegistry = new ServerConnectionRegistry() {   // TODO
-            @Override
-            public void registerConnection(ServerConnectionProxy connection, byte[] connectionId) {}
-
-            @Override
-            public void deregisterConnection(ServerConnectionProxy connection, byte[] connectionId) {}
-
+        this.connectionRegistry = connectionRegistry != null? connectionRegistry: new ConnectionIdRegistrar() {
             @Override
             public void registerAdditionalConnectionId(byte[] currentConnectionId, byte[] newConnectionId) {}
 
@@ -0,0 +1,12 @@
+package net.luminis.quic.cid;
+
+/**
+ * Associates the connection IDs of a connection with the connection, at the endpoint which receives the datagrams
+ * (server, or a shared client endpoint), so that packets addressed to a new connection ID reach the connection.
+ */
+public interface ConnectionIdRegistrar {
+
+    void registerAdditionalConnectionId(byte[] currentConnectionId, byte[] newConnectionId);
+
+    void deregisterConnectionId(byte[] connectionId);
+}
@@ -0,0 +1,89 @@
+package net.luminis.quic.recovery;
+
+import net.luminis.quic.cc.CongestionController;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+// https://datatracker.ietf.org/doc/html/draft-cheng-iccrg-delivery-rate-estimation-02
+// "Delivery Rate Estimation"; each packet sent remembers how much data was delivered (acknowledged) at that moment.
+// When the packet is acknowledged, the data delivered in between, divided by the elapsed time, is a sample of the
+// delivery rate. Shared by the loss detectors of all packet number spaces, as the rate is a property of the path.
+public class DeliveryRateEstimator {
+
+    private final CongestionController congestionController;
+    private long delivered;
+    private Instant deliveredTime;
+    private Instant firstSentTime;
+    private long appLimitedUntil;
+
+    public DeliveryRateEstimator(CongestionController congestionController) {
+        this.congestionController = congestionController;
+        deliveredTime = Instant.now();
+        firstSentTime = deliveredTime;
+    }
+
+    /**
+     * Records the delivery state in the packet; must be called before the packet is registered as in flight with
+     * the congestion controller.
+     */
+    synchronized void packetSent(PacketStatus packet) {
+        // Without packets in flight, the delivery rate interval starts now
+        if (congestionController.getBytesInFlight() == 0) {
+            firstSentTime = packet.timeSent();
+            deliveredTime = packet.timeSent();
+        }
+        packet.setDeliveryState(delivered, deliveredTime, firstSentTime, appLimitedUntil > 0);
+    }
+
+    /**
+     * @return  the rate sample for the in flight packets that are acknowledged, or null when there are none
+     */
+    synchronized RateSample packetsAcked(List<PacketStatus> ackedPackets, Instant timeReceived) {
+        PacketStatus newest = null;
+        for (PacketStatus packet: ackedPackets) {
+            delivered += packet.packet().getSize();
+            deliveredTime = timeReceived;
+            // The sample is taken from the most recently sent packet
+            if (newest == null || packet.delivered() > newest.delivered()
+                    || (packet.delivered() == newest.delivered() && packet.timeSent().isAfter(newest.timeSent()))) {
+                newest = packet;
+            }
+        }
+        // The app-limited period ends when the data in flight at its start is delivered
+        if (appLimitedUntil > 0 && delivered > appLimitedUntil) {
+            appLimitedUntil = 0;
+        }
+        if (newest == null) {
+            return null;
+        }
+        firstSentTime = newest.timeSent();
+
+        // Use the longer of the send and the ack interval, so ack compression doesn't lead to overestimation
+        long sendElapsed = micros(newest.firstSentTime(), newest.timeSent());
+        long ackElapsed = micros(newest.deliveredTime(), deliveredTime);
+        long interval = Long.max(sendElapsed, ackElapsed);
+        long deliveredBytes = delivered - newest.delivered();
+        long deliveryRate = interval > 0? deliveredBytes * 1_000_000 / interval: 0;
+        long rtt = micros(newest.timeSent(), timeReceived);
+        return new RateSample(deliveryRate, deliveredBytes, interval, rtt, newest.delivered(), delivered, newest.appLimited());
+    }
+
+    /**
+     * Marks the sender as application limited: there is nothing to send while the congestion window would allow it.
+     * The packets sent until the current flight is delivered produce app-limited samples.
+     */
+    public synchronized void applicationLimited() {
+        // Not 0, as that means not app-limited
+        appLimitedUntil = Long.max(delivered + congestionController.getBytesInFlight(), 1);
+    }
+
+    public synchronized long getDelivered() {
+        return delivered;
+    }
+
+    private static long micros(Instant from, Instant to) {
+        return Duration.between(from, to).toNanos() / 1000;
+    }
+}
@@ -38,6 +38,7 @@ public class LossDetector {
     private final RecoveryManager recoveryManager;
     private final RttEstimator rttEstimater;
     private final CongestionController congestionController;
+    private final DeliveryRateEstimator deliveryRateEstimator;
     private final Runnable postProcessLostCallback;
     private float kTimeThreshold = 9f/8f;
     private int kPacketThreshold = 3;
@@ -51,9 +52,14 @@ public class LossDetector {
 
 
     public LossDetector(RecoveryManager recoveryManager, RttEstimator rttEstimator, CongestionController congestionController, Runnable postProcessLostCallback) {
+        this(recoveryManager, rttEstimator, congestionController, new DeliveryRateEstimator(congestionController), postProcessLostCallback);
+    }
+
+    public LossDetector(RecoveryManager recoveryManager, RttEstimator rttEstimator, CongestionController congestionController, DeliveryRateEstimator deliveryRateEstimator, Runnable postProcessLostCallback) {
         this.recoveryManager = recoveryManager;
         this.rttEstimater = rttEstimator;
         this.congestionController = congestionController;
+        this.deliveryRateEstimator = deliveryRateEstimator;
         this.postProcessLostCallback = postProcessLostCallback;
 
         ackElicitingInFlight = new AtomicInteger();
@@ -65,7 +71,9 @@ public class LossDetector {
             return;
         }
 
+        PacketStatus packetStatus = new PacketStatus(sent, packet, lostPacketCallback);
         if (packet.isInflightPacket()) {  // Redundant: caller checked
+            deliveryRateEstimator.packetSent(packetStatus);
             congestionController.registerInFlight(packet);
         }
 
@@ -75,7 +83,7 @@ public class LossDetector {
         }
 
         // This method is synchronized, because during a reset operation, no new packets must be logged as sent.
-        packetSentLog.put(packet.getPacketNumber(), new PacketStatus(sent, packet, lostPacketCallback));
+        packetSentLog.put(packet.getPacketNumber(), packetStatus);
     }
 
     public void onAckReceived(AckFrame ackFrame, Instant timeReceived) {
@@ -98,7 +106,13 @@ public class LossDetector {
         assert ackedAckEliciting <= ackElicitingInFlight.get();
         ackElicitingInFlight.getAndAdd(-1 * ackedAckEliciting);
 
-        congestionController.registerAcked(filterInFlight(newlyAcked));
+        List<PacketStatus> ackedInFlight = filterInFlight(newlyAcked);
+        RateSample rateSample = deliveryRateEstimator.packetsAcked(ackedInFlight, timeReceived);
+        if (rateSample != null) {
+            // The model is updated before the window is adapted to the acked packets
+            congestionController.registerRateSample(rateSample);
+        }
+        congestionController.registerAcked(ackedInFlight);
 
         detectLostPackets();
 
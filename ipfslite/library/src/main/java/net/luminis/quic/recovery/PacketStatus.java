@@ -29,6 +29,11 @@ class PacketStatus extends PacketInfo {
 
     private boolean lost;
     private boolean acked;
+    // Delivery rate estimation state when the packet was sent, see DeliveryRateEstimator
+    private long delivered;
+    private Instant deliveredTime;
+    private Instant firstSentTime;
+    private boolean appLimited;
 
     public PacketStatus(Instant sent, QuicPacket packet, Consumer<QuicPacket> lostPacketCallback) {
         super(sent, packet, lostPacketCallback);
@@ -62,6 +67,29 @@ class PacketStatus extends PacketInfo {
         }
     }
 
+    void setDeliveryState(long delivered, Instant deliveredTime, Instant firstSentTime, boolean appLimited) {
+        this.delivered = delivered;
+        this.deliveredTime = deliveredTime;
+        this.firstSentTime = firstSentTime;
+        this.appLimited = appLimited;
+    }
+
+    long delivered() {
+        return delivered;
+    }
+
+    Instant deliveredTime() {
+        return deliveredTime;
+    }
+
+    Instant firstSentTime() {
+        return firstSentTime;
+    }
+
+    boolean appLimited() {
+        return appLimited;
+    }
+
     public String status() {
         if (acked) {
             return "Acked";
@@ -0,0 +1,82 @@
+package net.luminis.quic.recovery;
+
+/**
+ * Delivery rate sample, taken when an ack acknowledges packets in flight; see {@link DeliveryRateEstimator}.
+ * Times are in microseconds, the delivery rate in bytes per second.
+ */
+public class RateSample {
+
+    private final long deliveryRate;
+    private final long deliveredBytes;
+    private final long interval;
+    private final long rtt;
+    private final long priorDelivered;
+    private final long delivered;
+    private final boolean appLimited;
+
+    public RateSample(long deliveryRate, long deliveredBytes, long interval, long rtt, long priorDelivered, long delivered, boolean appLimited) {
+        this.deliveryRate = deliveryRate;
+        this.deliveredBytes = deliveredBytes;
+        this.interval = interval;
+        this.rtt = rtt;
+        this.priorDelivered = priorDelivered;
+        this.delivered = delivered;
+        this.appLimited = appLimited;
+    }
+
+    /**
+     * @return  the delivery rate in bytes per second, 0 when the sampling interval is too small
+     */
+    public long getDeliveryRate() {
+        return deliveryRate;
+    }
+
+    /**
+     * @return  the bytes delivered in the sampling interval
+     */
+    public long getDeliveredBytes() {
+        return deliveredBytes;
+    }
+
+    /**
+     * @return  the sampling interval in microseconds
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return  the round trip time (in microseconds) of the most recently sent packet that is acknowledged
+     */
+    public long getRtt() {
+        return rtt;
+    }
+
+    /**
+     * @return  the total bytes delivered when the most recently sent acknowledged packet was sent
+     */
+    public long getPriorDelivered() {
+        return priorDelivered;
+    }
+
+    /**
+     * @return  the total bytes delivered (including this ack)
+     */
+    public long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * @return  whether the sample was taken while the sender was application limited, in which case the delivery
+     *          rate is lower than what the path can deliver
+     */
+    public boolean isAppLimited() {
+        return appLimited;
+    }
+
+    @Override
+    public String toString() {
+        return "RateSample[" + deliveryRate + " B/s, " + deliveredBytes + " bytes in " + interval + " us, rtt " + rtt + " us"
+                + (appLimited? ", app-limited": "") + "]";
+    }
+}
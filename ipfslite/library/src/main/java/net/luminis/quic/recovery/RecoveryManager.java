@@ -92,9 +92,11 @@ public class RecoveryManager implements FrameProcessor2<AckFrame>, HandshakeStat
     private final Role role;
     private final RttEstimator rttEstimater;
     private final LossDetector[] lossDetectors = new LossDetector[PnSpace.values().length];
+    private final DeliveryRateEstimator deliveryRateEstimator;
     private final Sender sender;
     private final Logger log;
     private final ScheduledExecutorService scheduler;
+    private final boolean ownScheduler;
     private int receiverMaxAckDelay;
     private ScheduledFuture<?> lossDetectionFuture;  // Concurrency: guarded by scheduleLock
     private final Object scheduleLock = new Object();
@@ -104,16 +106,26 @@ public class RecoveryManager implements FrameProcessor2<AckFrame>, HandshakeStat
     private volatile boolean hasBeenReset = false;
 
     public RecoveryManager(FrameProcessorRegistry processorRegistry, Role role, RttEstimator rttEstimater, CongestionController congestionController, Sender sender, Logger logger) {
+        this(processorRegistry, role, rttEstimater, congestionController, sender, null, logger);
+    }
+
+    /**
+     * @param scheduler  scheduler for the loss detection timer, owned by the connection; when null, the recovery
+     *                   manager creates (and shuts down) its own scheduler
+     */
+    public RecoveryManager(FrameProcessorRegistry processorRegistry, Role role, RttEstimator rttEstimater, CongestionController congestionController, Sender sender, ScheduledExecutorService scheduler, Logger logger) {
         this.role = role;
         this.rttEstimater = rttEstimater;
+        deliveryRateEstimator = new DeliveryRateEstimator(congestionController);
         for (PnSpace pnSpace: PnSpace.values()) {
-            lossDetectors[pnSpace.ordinal()] = new LossDetector(this, rttEstimater, congestionController, () -> sender.flush());
+            lossDetectors[pnSpace.ordinal()] = new LossDetector(this, rttEstimater, congestionController, deliveryRateEstimator, () -> sender.flush());
         }
         this.sender = sender;
         log = logger;
 
         processorRegistry.registerProcessor(this);
-        scheduler = Executors.newScheduledThreadPool(1, new DaemonThreadFactory("loss-detection"));
+        ownScheduler = scheduler == null;
+        this.scheduler = ownScheduler? Executors.newScheduledThreadPool(1, new DaemonThreadFactory("loss-detection")): scheduler;
         synchronized (scheduleLock) {
             lossDetectionFuture = new NullScheduledFuture();
         }
@@ -374,6 +386,10 @@ public class RecoveryManager implements FrameProcessor2<AckFrame>, HandshakeStat
     void rescheduleLossDetectionTimeout(Instant scheduledTime) {
         try {
             synchronized (scheduleLock) {
+                if (hasBeenReset && !ownScheduler) {
+                    // A shared scheduler is not shut down, so it would not reject the task
+                    return;
+                }
                 // Cancelling the current future and setting the new must be in a sync'd block to ensure the right future is cancelled
                 lossDetectionFuture.cancel(false);
                 timerExpiration = scheduledTime;
@@ -445,6 +461,14 @@ public class RecoveryManager implements FrameProcessor2<AckFrame>, HandshakeStat
         }
     }
 
+    /**
+     * To be called when the sender has nothing to send, while the congestion window is not used up, so delivery rate
+     * samples taken from the packets sent in this period are marked as application limited.
+     */
+    public void applicationLimited() {
+        deliveryRateEstimator.applicationLimited();
+    }
+
     private boolean ackElicitingInFlight() {
         return Stream.of(lossDetectors).anyMatch(detector -> detector.ackElicitingInFlight());
     }
@@ -456,8 +480,12 @@ public class RecoveryManager implements FrameProcessor2<AckFrame>, HandshakeStat
     public void stopRecovery() {
         if (! hasBeenReset) {
             hasBeenReset = true;
-            unschedule();
-            scheduler.shutdown();
+            synchronized (scheduleLock) {
+                unschedule();
+            }
+            if (ownScheduler) {
+                scheduler.shutdown();
+            }
             for (PnSpace pnSpace: PnSpace.values()) {
                 lossDetectors[pnSpace.ordinal()].reset();
             }
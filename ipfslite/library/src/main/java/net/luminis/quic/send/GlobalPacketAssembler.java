@@ -151,6 +151,15 @@ public class GlobalPacketAssembler {
                 .findFirst();
     }
 
+    /**
+     * @return  whether (in-flight) frames are queued for sending, acks and probes not included
+     */
+    public boolean hasRequests() {
+        return Arrays.stream(enabledLevels)
+                .map(level -> sendRequestQueue[level.ordinal()])
+                .anyMatch(q -> q.hasRequests());
+    }
+
     public void stop(PnSpace pnSpace) {
         packetAssembler[pnSpace.relatedEncryptionLevel().ordinal()].stop(assembler -> {
             packetAssembler[pnSpace.relatedEncryptionLevel().ordinal()] = null;
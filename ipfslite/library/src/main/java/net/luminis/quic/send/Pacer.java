@@ -0,0 +1,116 @@
+package net.luminis.quic.send;
+
+import net.luminis.quic.cc.CongestionController;
+import net.luminis.quic.recovery.RttEstimator;
+
+// https://www.rfc-editor.org/rfc/rfc9002.html#section-7.7
+// "A sender SHOULD pace sending of all in-flight packets based on input from the congestion controller."
+// Token bucket: tokens (bytes) are added at the pacing rate and a datagram is only released when there are tokens for
+// a full-sized one, so a large congestion window is not sent in one burst. The rate is the pacing rate of the
+// congestion controller, or derived from the congestion window and the smoothed rtt when the controller has none.
+class Pacer {
+
+    // "Using a value for N that is small, but at least 1 (for example, 1.25) ensures that variations in RTT do not
+    //  result in underutilization of the congestion window."
+    private static final double N = 1.25;
+    // The sender wakes up with a millisecond granularity, the bucket holds (at least) the tokens of two milliseconds
+    private static final long BURST_INTERVAL = 2_000_000;  // nanoseconds
+    private static final int MIN_BURST_PACKETS = 2;
+    private static final int INITIAL_BURST_PACKETS = 10;  // The initial window
+
+    private final CongestionController congestionController;
+    private final RttEstimator rttEstimator;
+    private final int maxPacketSize;
+    private double tokens;
+    private long lastRefill;
+    private long blockedSince;
+    private volatile long rate;
+    private volatile long delays;
+    private volatile long delayTime;
+
+    Pacer(CongestionController congestionController, RttEstimator rttEstimator, int maxPacketSize) {
+        this.congestionController = congestionController;
+        this.rttEstimator = rttEstimator;
+        this.maxPacketSize = maxPacketSize;
+        tokens = INITIAL_BURST_PACKETS * maxPacketSize;
+        lastRefill = System.nanoTime();
+    }
+
+    /**
+     * @return  whether a (full-sized) datagram can be sent now
+     */
+    synchronized boolean canSend() {
+        refill(System.nanoTime());
+        return tokens >= maxPacketSize;
+    }
+
+    /**
+     * Marks that an in-flight datagram is held back, the delay ends when the next one is sent.
+     */
+    synchronized void blocked() {
+        if (blockedSince == 0) {
+            blockedSince = System.nanoTime();
+        }
+    }
+
+    synchronized void datagramSent(int size) {
+        tokens -= size;
+        if (blockedSince != 0) {
+            delays++;
+            delayTime += System.nanoTime() - blockedSince;
+            blockedSince = 0;
+        }
+    }
+
+    /**
+     * @return  the time (in milliseconds) until a datagram can be sent, 0 when it can be sent now
+     */
+    synchronized long timeUntilSend() {
+        refill(System.nanoTime());
+        if (tokens >= maxPacketSize) {
+            return 0;
+        }
+        double nanos = (maxPacketSize - tokens) * 1_000_000_000 / rate;
+        return Long.max((long) Math.ceil(nanos / 1_000_000), 1);
+    }
+
+    /**
+     * @return  the current pacing rate in bytes per second
+     */
+    long getRate() {
+        return rate;
+    }
+
+    /**
+     * @return  how many times a datagram was held back by the pacer
+     */
+    long getDelays() {
+        return delays;
+    }
+
+    /**
+     * @return  the total time (in milliseconds) datagrams were held back by the pacer
+     */
+    long getDelayTime() {
+        return delayTime / 1_000_000;
+    }
+
+    private void refill(long now) {
+        rate = Long.max(pacingRate(), 1);
+        double capacity = Double.max(MIN_BURST_PACKETS * maxPacketSize, (double) rate * BURST_INTERVAL / 1_000_000_000);
+        if (tokens < capacity) {
+            tokens = Double.min(capacity, tokens + (double) rate * (now - lastRefill) / 1_000_000_000);
+        }
+        lastRefill = now;
+    }
+
+    private long pacingRate() {
+        long rate = congestionController.getPacingRate();
+        if (rate > 0) {
+            return rate;
+        }
+        // "rate = N * congestion_window / smoothed_rtt" (smoothed rtt in milliseconds)
+        int smoothedRtt = Integer.max(rttEstimator.getSmoothedRtt(), 1);
+        return (long) (N * congestionController.getWindowSize() * 1000 / smoothedRtt);
+    }
+}
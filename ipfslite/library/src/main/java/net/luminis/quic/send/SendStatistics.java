@@ -27,8 +27,16 @@ public class SendStatistics {
     private final int smoothedRtt;
     private final int rttVar;
     private final int latestRtt;
+    private final long pacingRate;
+    private final long pacingDelays;
+    private final long pacingDelayTime;
 
     public SendStatistics(int datagramsSent, long packetsSent, long bytesSent, long lostPackets, int smoothedRtt, int rttVar, int latestRtt) {
+        this(datagramsSent, packetsSent, bytesSent, lostPackets, smoothedRtt, rttVar, latestRtt, 0, 0, 0);
+    }
+
+    public SendStatistics(int datagramsSent, long packetsSent, long bytesSent, long lostPackets, int smoothedRtt, int rttVar, int latestRtt,
+                          long pacingRate, long pacingDelays, long pacingDelayTime) {
         this.datagramsSent = datagramsSent;
         this.packetsSent = packetsSent;
         this.bytesSent = bytesSent;
@@ -36,6 +44,9 @@ public class SendStatistics {
         this.smoothedRtt = smoothedRtt;
         this.rttVar = rttVar;
         this.latestRtt = latestRtt;
+        this.pacingRate = pacingRate;
+        this.pacingDelays = pacingDelays;
+        this.pacingDelayTime = pacingDelayTime;
     }
 
     public int datagramsSent() {
@@ -65,4 +76,25 @@ public class SendStatistics {
     public int latestRtt() {
         return latestRtt;
     }
+
+    /**
+     * @return  the current pacing rate in bytes per second
+     */
+    public long pacingRate() {
+        return pacingRate;
+    }
+
+    /**
+     * @return  how many times the pacer held back a datagram
+     */
+    public long pacingDelays() {
+        return pacingDelays;
+    }
+
+    /**
+     * @return  the total time (in milliseconds) datagrams were held back by the pacer
+     */
+    public long pacingDelayTime() {
+        return pacingDelayTime;
+    }
 }
@@ -19,8 +19,11 @@
 package net.luminis.quic.send;
 
 import net.luminis.quic.*;
+import net.luminis.quic.cc.BbrCongestionController;
+import net.luminis.quic.cc.CongestionControl;
 import net.luminis.quic.cc.CongestionControlEventListener;
 import net.luminis.quic.cc.CongestionController;
+import net.luminis.quic.cc.CubicCongestionController;
 import net.luminis.quic.cc.NewRenoCongestionController;
 import net.luminis.quic.crypto.ConnectionSecrets;
 import net.luminis.quic.crypto.Keys;
@@ -39,12 +42,18 @@ import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.lang.Long.max;
+import static java.lang.Long.min;
 
 /**
  * Sender implementation that queues frames-to-be-sent and assembles packets "just in time" when conditions allow to
@@ -64,6 +73,11 @@ import static java.lang.Long.max;
  * - probe request
  * - delayed ack timeout
  * - congestion controller becoming unblocked due to timer-induced loss detection
+ * - pacer releasing the next datagram (in-flight datagrams are paced, so a large congestion window is not sent in one burst)
+ *
+ * By default, the sender loop runs on a thread of its own. When an executor is given, there is no sender thread: each
+ * wake up schedules a single send run on the (shared) executor and the next timed wake up is scheduled on it as well,
+ * so a large number of connections does not need a large number of threads. Send runs are serialized.
  */
 public class SenderImpl implements Sender, CongestionControlEventListener {
 
@@ -79,8 +93,13 @@ public class SenderImpl implements Sender, CongestionControlEventListener {
     private final GlobalPacketAssembler packetAssembler;
     private final GlobalAckGenerator globalAckGenerator;
     private final RecoveryManager recoveryManager;
+    private final Pacer pacer;
     private final IdleTimer idleTimer;
     private final Thread senderThread;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean runScheduled = new AtomicBoolean(false);
+    private final Object runLock = new Object();
+    private ScheduledFuture<?> wakeUpTask;  // Concurrency: guarded by runLock
     private final boolean[] discardedSpaces = new boolean[PnSpace.values().length];
     private ConnectionSecrets connectionSecrets;
     private final Object condition = new Object();
@@ -101,6 +120,16 @@ public class SenderImpl implements Sender, CongestionControlEventListener {
 
     public SenderImpl(Version version, int maxPacketSize, DatagramSocket socket, InetSocketAddress peerAddress,
                       QuicConnectionImpl connection, Integer initialRtt, Logger log) {
+        this(version, maxPacketSize, socket, peerAddress, connection, initialRtt, null, null, log);
+    }
+
+    /**
+     * @param congestionControl  the congestion control algorithm; when null, NewReno is used
+     * @param executor  executor for the send runs (shared with other connections); when null, a sender thread is used
+     */
+    public SenderImpl(Version version, int maxPacketSize, DatagramSocket socket, InetSocketAddress peerAddress,
+                      QuicConnectionImpl connection, Integer initialRtt, CongestionControl congestionControl,
+                      ScheduledExecutorService executor, Logger log) {
         this.maxPacketSize = maxPacketSize;
         this.socket = socket;
         this.peerAddress = peerAddress;
@@ -114,21 +143,42 @@ public class SenderImpl implements Sender, CongestionControlEventListener {
         globalAckGenerator = new GlobalAckGenerator(this);
         packetAssembler = new GlobalPacketAssembler(version, sendRequestQueue, globalAckGenerator);
 
-        congestionController = new NewRenoCongestionController(log, this);
         rttEstimater = (initialRtt == null)? new RttEstimator(log): new RttEstimator(log, initialRtt);
+        if (congestionControl == CongestionControl.Cubic) {
+            congestionController = new CubicCongestionController(log, this, rttEstimater);
+        }
+        else if (congestionControl == CongestionControl.Bbr) {
+            congestionController = new BbrCongestionController(log, this, rttEstimater);
+        }
+        else {
+            congestionController = new NewRenoCongestionController(log, this);
+        }
 
-        recoveryManager = new RecoveryManager(connection, connection.getRole(), rttEstimater, congestionController, this, log);
+        recoveryManager = new RecoveryManager(connection, connection.getRole(), rttEstimater, congestionController, this, connection.getScheduler(), log);
+        pacer = new Pacer(congestionController, rttEstimater, maxPacketSize);
         connection.addHandshakeStateListener(recoveryManager);
 
         idleTimer = connection.getIdleTimer();
 
-        senderThread = new Thread(() -> sendLoop(), "sender-loop");
-        senderThread.setDaemon(true);
+        this.executor = executor;
+        if (executor == null) {
+            senderThread = new Thread(() -> sendLoop(), "sender-loop");
+            senderThread.setDaemon(true);
+        }
+        else {
+            senderThread = null;
+        }
     }
 
     public void start(ConnectionSecrets secrets) {
         connectionSecrets = secrets;
-        senderThread.start();
+        if (senderThread != null) {
+            senderThread.start();
+        }
+        else {
+            running = true;
+            wakeUpSenderLoop();
+        }
     }
 
     @Override
@@ -249,7 +299,13 @@ public class SenderImpl implements Sender, CongestionControlEventListener {
         // Stop cannot be called here (again), because it would drop ConnectionCloseFrame still waiting to be sent.
 
         stopping = true;
-        senderThread.interrupt();
+        if (senderThread != null) {
+            senderThread.interrupt();
+        }
+        else {
+            // The last run sends what is still queued (connection close) and ends the runs
+            wakeUpSenderLoop();
+        }
     }
 
     @Override
@@ -300,18 +356,85 @@ public class SenderImpl implements Sender, CongestionControlEventListener {
         }
     }
 
+    private void sendRun() {
+        synchronized (runLock) {
+            // Wake ups from now on must lead to another run
+            runScheduled.set(false);
+            if (! running) {
+                return;
+            }
+            try {
+                // Like the sender loop: determine whether the runs must be ended _before_ composing packets
+                if (stopping) {
+                    running = false;
+                }
+
+                sendIfAny();
+
+                if (wakeUpTask != null) {
+                    wakeUpTask.cancel(false);
+                }
+                if (running) {
+                    wakeUpTask = executor.schedule(this::wakeUpSenderLoop, determineMinimalDelay(), TimeUnit.MILLISECONDS);
+                }
+            }
+            catch (RejectedExecutionException rejected) {
+                // Can happen when the executor is shut down; nothing left to do
+                running = false;
+            }
+            catch (Throwable fatalError) {
+                if (running) {
+                    running = false;
+                    log.error("Sender run aborted with exception", fatalError);
+                    connection.abortConnection(fatalError);
+                }
+                else {
+                    log.warn("Ignoring " + fatalError + " because sender is shutting down.");
+                }
+            }
+        }
+    }
+
     void sendIfAny() throws IOException {
         List<SendItem> items;
         do {
-            items = assemblePacket();
+            // The last run (when stopping) is not paced, it must send what is still queued
+            boolean paced = running && !pacer.canSend();
+            // Only in-flight packets are paced: while the pacer holds back, the packets that are not congestion
+            // controlled (ack-only, probes) are still sent
+            items = assemblePacket(paced ? 0 : (int) congestionController.remainingCwnd());
             if (!items.isEmpty()) {
                 send(items);
             }
+            else if (paced) {
+                if (packetAssembler.hasRequests()) {
+                    pacer.blocked();
+                }
+                // Woken up again by the pacing delay, see determineMinimalDelay()
+                return;
+            }
         }
         while (!items.isEmpty());
+
+        if (congestionController.remainingCwnd() >= maxPacketSize) {
+            // Nothing (more) to send, while the congestion window would allow it
+            recoveryManager.applicationLimited();
+        }
     }
 
     private void wakeUpSenderLoop() {
+        if (executor != null) {
+            // At most one run is pending; before start, the first run is scheduled by start()
+            if (running && runScheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::sendRun);
+                }
+                catch (RejectedExecutionException rejected) {
+                    runScheduled.set(false);
+                }
+            }
+            return;
+        }
         synchronized (condition) {
             signalled = true;
             condition.notify();
@@ -319,6 +442,19 @@ public class SenderImpl implements Sender, CongestionControlEventListener {
     }
 
     private long determineMinimalDelay() {
+        long delay = determineDelayedSendDelay();
+        if (delay > 0 && packetAssembler.hasRequests()) {
+            // Queued in-flight data is sent when the pacer releases the next datagram, unless a delayed send
+            // (ack, loss detection) is due earlier
+            long pacingDelay = pacer.timeUntilSend();
+            if (pacingDelay > 0) {
+                return min(pacingDelay, delay);
+            }
+        }
+        return delay;
+    }
+
+    private long determineDelayedSendDelay() {
         Optional<Instant> nextDelayedSendTime = packetAssembler.nextDelayedSendTime();
         if (nextDelayedSendTime.isPresent()) {
             long delay = max(Duration.between(Instant.now(), nextDelayedSendTime.get()).toMillis(), 0);
@@ -377,6 +513,9 @@ public class SenderImpl implements Sender, CongestionControlEventListener {
         datagramsSent++;
         packetsSent += itemsToSend.size();
         bytesSent += buffer.position();
+        if (itemsToSend.stream().anyMatch(item -> item.getPacket().isInflightPacket())) {
+            pacer.datagramSent(buffer.position());
+        }
 
         itemsToSend.stream()
                 .forEach(item -> {
@@ -388,8 +527,7 @@ public class SenderImpl implements Sender, CongestionControlEventListener {
         log.sent(timeSent, packetsSent);
     }
 
-    private List<SendItem> assemblePacket() {
-        int remainingCwnd = (int) congestionController.remainingCwnd();
+    private List<SendItem> assemblePacket(int remainingCwnd) {
         int currentMaxPacketSize = maxPacketSize;
         if (antiAmplificationLimit >= 0) {
             if (bytesSent < antiAmplificationLimit) {
@@ -422,7 +560,8 @@ public class SenderImpl implements Sender, CongestionControlEventListener {
 
     public SendStatistics getStatistics() {
         return new SendStatistics(datagramsSent, packetsSent, bytesSent, recoveryManager.getLost(),
-                rttEstimater.getSmoothedRtt(), rttEstimater.getRttVar(), rttEstimater.getLatestRtt());
+                rttEstimater.getSmoothedRtt(), rttEstimater.getRttVar(), rttEstimater.getLatestRtt(),
+                pacer.getRate(), pacer.getDelays(), pacer.getDelayTime());
     }
 
     public int getPto() {
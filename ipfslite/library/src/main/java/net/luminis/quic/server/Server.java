@@ -26,6 +26,7 @@ import net.luminis.quic.RawPacket;
 import net.luminis.quic.Receiver;
 import net.luminis.quic.UnknownVersionException;
 import net.luminis.quic.Version;
+import net.luminis.quic.cc.CongestionControl;
 import net.luminis.quic.log.Logger;
 import net.luminis.quic.log.NullLogger;
 import net.luminis.quic.packet.VersionNegotiationPacket;
@@ -77,11 +78,22 @@ public class Server implements ServerConnectionRegistry {
 
     public Server(int port, String protocol, InputStream certificateFile, InputStream certificateKeyFile, List<Version> supportedVersions,
                   boolean requireRetry, ApplicationProtocolConnectionFactory factory) throws Exception {
-        this(new DatagramSocket(port), protocol, certificateFile, certificateKeyFile, supportedVersions, requireRetry, factory);
+        this(new DatagramSocket(port), protocol, certificateFile, certificateKeyFile, supportedVersions, requireRetry, factory,
+                CongestionControl.NewReno);
     }
 
+    public Server(int port, String protocol, InputStream certificateFile, InputStream certificateKeyFile, List<Version> supportedVersions,
+                  boolean requireRetry, ApplicationProtocolConnectionFactory factory, CongestionControl congestionControl) throws Exception {
+        this(new DatagramSocket(port), protocol, certificateFile, certificateKeyFile, supportedVersions, requireRetry, factory,
+                congestionControl);
+    }
+
+    /**
+     * @param congestionControl  the congestion control algorithm of the connections accepted by this server
+     */
     public Server(DatagramSocket socket, String protocol, InputStream certificateFile, InputStream certificateKeyFile,
-                  List<Version> supportedVersions, boolean requireRetry, ApplicationProtocolConnectionFactory factory) throws Exception {
+                  List<Version> supportedVersions, boolean requireRetry, ApplicationProtocolConnectionFactory factory,
+                  CongestionControl congestionControl) throws Exception {
         serverSocket = socket;
         this.supportedVersions = supportedVersions;
         this.requireRetry = requireRetry;
@@ -91,7 +103,7 @@ public class Server implements ServerConnectionRegistry {
         tlsEngineFactory = new TlsServerEngineFactory(certificateFile, certificateKeyFile);
         applicationProtocolRegistry = new ApplicationProtocolRegistry();
         serverConnectionFactory = new ServerConnectionFactory(CONNECTION_ID_LENGTH, serverSocket, tlsEngineFactory,
-                this.requireRetry, applicationProtocolRegistry, initalRtt, this, this::removeConnection, log);
+                this.requireRetry, applicationProtocolRegistry, initalRtt, congestionControl, this, this::removeConnection, log);
 
         supportedVersionIds = supportedVersions.stream().map(version -> version.getId()).collect(Collectors.toList());
         registerApplicationLayerProtocols(protocol, factory);
@@ -19,6 +19,7 @@
 package net.luminis.quic.server;
 
 import net.luminis.quic.Version;
+import net.luminis.quic.cc.CongestionControl;
 import net.luminis.quic.log.Logger;
 import net.luminis.tls.handshake.TlsServerEngineFactory;
 
@@ -35,13 +36,14 @@ public class ServerConnectionFactory {
     private final ApplicationProtocolRegistry applicationProtocolRegistry;
     private final DatagramSocket serverSocket;
     private final int initalRtt;
+    private final CongestionControl congestionControl;
     private final Consumer<ServerConnectionImpl> closeCallback;
     private final boolean requireRetry;
     private final ServerConnectionRegistry connectionRegistry;
 
     public ServerConnectionFactory(int connectionIdLength, DatagramSocket serverSocket, TlsServerEngineFactory tlsServerEngineFactory,
                                    boolean requireRetry, ApplicationProtocolRegistry applicationProtocolRegistry, int initalRtt,
-                                   ServerConnectionRegistry connectionRegistry, Consumer<ServerConnectionImpl> closeCallback, Logger log)
+                                   CongestionControl congestionControl, ServerConnectionRegistry connectionRegistry, Consumer<ServerConnectionImpl> closeCallback, Logger log)
     {
         if (connectionIdLength > 20 || connectionIdLength < 0) {
             // https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-17.2
@@ -57,6 +59,7 @@ public class ServerConnectionFactory {
         this.log = log;
         this.serverSocket = serverSocket;
         this.initalRtt = initalRtt;
+        this.congestionControl = congestionControl;
     }
 
     /**
@@ -69,7 +72,7 @@ public class ServerConnectionFactory {
      */
     public ServerConnectionImpl createNewConnection(Version version, InetSocketAddress clientAddress, byte[] scid, byte[] originalDcid) {
         return new ServerConnectionImpl(version, serverSocket, clientAddress, scid, originalDcid, connectionIdLength,
-                tlsServerEngineFactory, requireRetry, applicationProtocolRegistry, initalRtt, connectionRegistry, closeCallback, log);
+                tlsServerEngineFactory, requireRetry, applicationProtocolRegistry, initalRtt, congestionControl, connectionRegistry, closeCallback, log);
     }
 
 }
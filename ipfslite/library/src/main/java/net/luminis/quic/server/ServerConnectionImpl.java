@@ -19,6 +19,7 @@
 package net.luminis.quic.server;
 
 import net.luminis.quic.*;
+import net.luminis.quic.cc.CongestionControl;
 import net.luminis.quic.cid.ConnectionIdManager;
 import net.luminis.quic.frame.*;
 import net.luminis.quic.log.Logger;
@@ -95,6 +96,7 @@ public class ServerConnectionImpl extends QuicConnectionImpl implements ServerCo
      * @param retryRequired  whether or not a retry is required for address validation
      * @param applicationProtocolRegistry  the registry for application protocols this server supports
      * @param initialRtt  the initial rtt
+     * @param congestionControl  the congestion control algorithm
      * @param connectionRegistry
      * @param closeCallback  callback for notifying interested parties this connection is closed
      * @param log  logger
@@ -102,7 +104,8 @@ public class ServerConnectionImpl extends QuicConnectionImpl implements ServerCo
     protected ServerConnectionImpl(Version quicVersion, DatagramSocket serverSocket, InetSocketAddress initialClientAddress,
                                    byte[] peerCid, byte[] originalDcid, int connectionIdLength, TlsServerEngineFactory tlsServerEngineFactory,
                                    boolean retryRequired, ApplicationProtocolRegistry applicationProtocolRegistry,
-                                   Integer initialRtt, ServerConnectionRegistry connectionRegistry, Consumer<ServerConnectionImpl> closeCallback, Logger log) {
+                                   Integer initialRtt, CongestionControl congestionControl, ServerConnectionRegistry connectionRegistry,
+                                   Consumer<ServerConnectionImpl> closeCallback, Logger log) {
         super(quicVersion, Role.Server, null, log);
         this.initialClientAddress = initialClientAddress;
         this.retryRequired = retryRequired;
@@ -112,7 +115,8 @@ public class ServerConnectionImpl extends QuicConnectionImpl implements ServerCo
         tlsEngine = tlsServerEngineFactory.createServerEngine(new TlsMessageSender(), this);
 
         idleTimer = new IdleTimer(this, log);
-        sender = new SenderImpl(quicVersion, getMaxPacketSize(), serverSocket, initialClientAddress,this, initialRtt, this.log);
+        sender = new SenderImpl(quicVersion, getMaxPacketSize(), serverSocket, initialClientAddress,this, initialRtt,
+                congestionControl, null, this.log);
         if (! retryRequired) {
             sender.setAntiAmplificationLimit(0);
         }
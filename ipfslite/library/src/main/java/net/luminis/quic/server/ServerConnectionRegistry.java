@@ -18,13 +18,11 @@
  */
 package net.luminis.quic.server;
 
-public interface ServerConnectionRegistry {
+import net.luminis.quic.cid.ConnectionIdRegistrar;
+
+public interface ServerConnectionRegistry extends ConnectionIdRegistrar {
 
     void registerConnection(ServerConnectionProxy connection, byte[] connectionId);
 
     void deregisterConnection(ServerConnectionProxy connection, byte[] connectionId);
-
-    void registerAdditionalConnectionId(byte[] currentConnectionId, byte[] newConnectionId);
-
-    void deregisterConnectionId(byte[] connectionId);
 }
@@ -73,6 +73,7 @@ public class QuicStreamImpl implements QuicStream {
 
     private SortedSet<StreamElement> frames = new TreeSet<>();
     private long processedToOffset = 0;
+    private boolean finProcessed;
 
     
     public QuicStreamImpl(int streamId, QuicConnectionImpl connection, FlowControl flowController) {
@@ -108,7 +109,7 @@ public class QuicStreamImpl implements QuicStream {
 
 
     protected synchronized boolean addi(StreamElement frame) {
-        if (frame.getUpToOffset() > processedToOffset) {
+        if (frame.getUpToOffset() > processedToOffset || isPendingFin(frame)) {
             frames.add(frame);
             return true;
         } else {
@@ -132,7 +133,7 @@ public class QuicStreamImpl implements QuicStream {
         while (iterator.hasNext()) {
             StreamFrame nextFrame = (StreamFrame) iterator.next();
             if (nextFrame.getOffset() <= processedToOffset) {
-                if (nextFrame.getUpToOffset() > processedToOffset) {
+                if (nextFrame.getUpToOffset() > processedToOffset || isPendingFin(nextFrame)) {
 
                     StreamData streamData = new StreamData();
                     streamData.data = nextFrame.getStreamData();
@@ -146,6 +147,7 @@ public class QuicStreamImpl implements QuicStream {
                         LogUtils.error(TAG, throwable);
                     }
                     processedToOffset = nextFrame.getUpToOffset();
+                    finProcessed |= streamData.fin;
 
                     iterator.remove();
                 }
@@ -159,6 +161,13 @@ public class QuicStreamImpl implements QuicStream {
 
     }
 
+    // The fin can come in a frame without data (when the stream is closed after the last data is sent), which ends
+    // at the offset that is already processed
+    private boolean isPendingFin(StreamElement frame) {
+        return !finProcessed && frame instanceof StreamFrame && ((StreamFrame) frame).isFinal()
+                && frame.getUpToOffset() == processedToOffset;
+    }
+
     private void updateAllowedFlowControl(int bytesRead) {
         // Slide flow control window forward (with as much bytes as are read)
         receiverFlowControlLimit += bytesRead;
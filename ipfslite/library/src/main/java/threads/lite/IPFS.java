@@ -10,6 +10,7 @@ import com.google.common.primitives.Bytes;
 import com.google.protobuf.ByteString;
 
 import net.luminis.quic.QuicConnection;
+import net.luminis.quic.cc.CongestionControl;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -20,6 +21,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
@@ -33,15 +37,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 
 import identify.pb.IdentifyOuterClass;
@@ -53,10 +59,16 @@ import threads.lite.cid.Protocol;
 import threads.lite.core.Closeable;
 import threads.lite.core.ClosedException;
 import threads.lite.core.Progress;
+import threads.lite.core.Scheduler;
 import threads.lite.crypto.PrivKey;
 import threads.lite.crypto.Rsa;
+import threads.lite.dag.GarbageCollector;
 import threads.lite.data.BLOCKS;
+import threads.lite.data.FILES;
+import threads.lite.data.FilteredStorage;
+import threads.lite.data.Storage;
 import threads.lite.format.BlockStore;
+import threads.lite.format.CachedBlockStore;
 import threads.lite.format.Node;
 import threads.lite.host.DnsResolver;
 import threads.lite.host.LiteHost;
@@ -67,6 +79,7 @@ import threads.lite.ipns.Ipns;
 import threads.lite.push.Push;
 import threads.lite.push.PushService;
 import threads.lite.relay.Reservation;
+import threads.lite.utils.Chunker;
 import threads.lite.utils.Link;
 import threads.lite.utils.LinkCloseable;
 import threads.lite.utils.ProgressStream;
@@ -102,18 +115,57 @@ public class IPFS {
     public static final String APRN = "libp2p";
 
     public static final int DEFAULT_PORT = 6001;
-    public static final int PRELOAD = 25;
-    public static final int PRELOAD_DIST = 5;
+    public static final int READ_AHEAD_MIN = 5; // leaves (minimal read-ahead window)
+    public static final int READ_AHEAD_MEMORY = 1 << 24; // 16 MB (memory budget of read-ahead)
+    public static final int READ_AHEAD_STALL = 5; // 5 ms (wait for a leaf counted as stall)
     public static final int CHUNK_SIZE = 262144;
+    public static final int CHUNK_MIN_SIZE = 1 << 17; // 128 KB (content-defined chunks)
+    public static final int CHUNK_AVG_SIZE = 1 << 18; // 256 KB (content-defined chunks)
+    public static final int CHUNK_MAX_SIZE = 1 << 19; // 512 KB (content-defined chunks)
     public static final int BLOCK_SIZE_LIMIT = 1048576; // 1 MB
+    public static final int HAMT_SHARDING_SIZE = 262144; // 256 KB (links of a flat directory)
+    public static final int IMPORT_BUFFER_SIZE = 1 << 22; // 4 MB (memory budget of import)
+    public static final int IMPORT_PIPELINE_SIZE = 1 << 22; // 4 MB (data in flight of import)
+    public static final int BLOCK_CACHE_SIZE = 1 << 24; // 16 MB (memory budget of block cache)
+    public static final int BLOCK_CACHE_MAX_BLOCK_SIZE = 1 << 16; // 64 KB (larger not cached)
+    public static final int NODE_CACHE_SIZE = 1 << 23; // 8 MB (memory budget of decoded nodes)
+    public static final int GC_BATCH_SIZE = 100; // blocks processed in one batch
+    public static final long GC_BATCH_PAUSE = 50; // 50 ms pause between two batches
     public static final long RESOLVE_MAX_TIME = 30000; // 30 sec
     public static final boolean SEND_DONT_HAVES = false;
-    public static final boolean BITSWAP_ENGINE_ACTIVE = false;
+    public static final boolean BITSWAP_ENGINE_ACTIVE = true;
+    public static final int BITSWAP_ENGINE_QUANTUM = 1 << 18; // 256 KB (bytes per peer and round)
+    public static final int BITSWAP_ENGINE_MAX_IN_FLIGHT = 1 << 21; // 2 MB (per peer)
+    public static final int BITSWAP_ENGINE_MESSAGE_SIZE = 1 << 20; // 1 MB (chunk of a response)
     public static final int TIMEOUT_BOOTSTRAP = 10;
     public static final int MAX_STREAMS = 10000;
     public static final int GRACE_PERIOD = 15;
     public static final int RESOLVE_TIMEOUT = 1000; // 1 sec
     public static final long WANTS_WAIT_TIMEOUT = 500; // 500 ms
+    public static final long BITSWAP_SESSION_TICK = 100; // 100 ms (timeouts of the wantlist)
+    public static final int BITSWAP_SESSION_BATCH = 1000; // max entries of one wantlist message
+    public static final long BITSWAP_WANT_TIMEOUT = 60000; // 60 sec (lifetime of a want)
+    public static final long BLOCKER_CLOSED_CHECK = 50; // 50 ms (closeables of waiting callers)
+    public static final long BITSWAP_COALESCE_WINDOW = 5; // 5 ms (wants merged into one message)
+    public static final int BITSWAP_WANT_HAVE_PEERS = 8; // want-haves to the best peers first
+    public static final double BITSWAP_LEDGER_ALPHA = 0.25; // weight of a new latency sample
+    public static final long BITSWAP_LEDGER_DEFAULT_LATENCY = 250; // 250 ms (peers without history)
+    public static final int BITSWAP_LEDGER_MAX_TIMEOUTS = 5; // timeouts without block (useless peer)
+    public static final int BITSWAP_LEDGER_MAX_INVALID_BLOCKS = 3; // invalid blocks (useless peer)
+    public static final long BITSWAP_LEDGER_PENALTY_TIME = 600000; // 10 min (useless peer ignored)
+    // concurrency limits of the subsystems of the shared network scheduler
+    public static final int SCHEDULER_BITSWAP_LIMIT = 16;
+    public static final int SCHEDULER_SERVE_LIMIT = 16; // responses to the wantlists of peers
+    public static final int SCHEDULER_CONNECT_LIMIT = 6;
+    public static final int SCHEDULER_DIAL_LIMIT = 16;
+    public static final int SCHEDULER_HOLEPUNCH_LIMIT = 8;
+    public static final int SCHEDULER_DHT_LIMIT = 16;
+    public static final int SCHEDULER_LOOKUP_LIMIT = 6;
+    public static final int SCHEDULER_RELAY_LIMIT = 8;
+    public static final int SCHEDULER_PUSH_LIMIT = 2;
+    public static final int SCHEDULER_VERIFY_LIMIT = 4; // parallel hashing of received blocks
+    public static final int SCHEDULER_IMPORT_LIMIT = 4; // parallel hashing of imported leaves
+    public static final int SCHEDULER_STORAGE_LIMIT = 1; // background maintenance of the storage
 
 
     // MessageSizeMax is a soft (recommended) maximum for network messages.
@@ -159,9 +211,15 @@ public class IPFS {
     public static final String SIM_CONNECT_PROTOCOL = "/libp2p/simultaneous-connect";
     public static final int KEEP_ALIVE_TIMEOUT = 60 * 60 * 24 * 30; // 30 days
     public static final int PING_INTERVAL = 10;
+    public static final boolean QUIC_CLIENT_ENDPOINT = true; // one socket for all outgoing connections
+    public static final int QUIC_CLIENT_ENDPOINT_THREADS = 2; // shared timer and sender threads
     private static final String PRIVATE_KEY = "privateKey";
     private static final String PUBLIC_KEY = "publicKey";
     private static final String CONCURRENCY_KEY = "concurrencyKey";
+    private static final String FILE_STORAGE_KEY = "fileStorageKey";
+    private static final String CONGESTION_CONTROL_KEY = "congestionControlKey";
+    private static final String FILE_STORAGE_MIGRATED_KEY = "fileStorageMigratedKey";
+    private static final String PINS_KEY = "pinsKey";
     private static final String TAG = IPFS.class.getSimpleName();
     private static final String PREF_KEY = "liteKey";
     // rough estimates on expected sizes
@@ -184,7 +242,12 @@ public class IPFS {
     private static IPFS INSTANCE = null;
 
     @NonNull
-    private final BlockStore blockstore;
+    private final CachedBlockStore blockstore;
+    // writers of new content hold the read lock, the garbage collector the write lock
+    private final ReentrantReadWriteLock gcLock = new ReentrantReadWriteLock();
+    @NonNull
+    private final GarbageCollector garbageCollector = GarbageCollector.createGarbageCollector(
+            gcLock.writeLock(), GC_BATCH_SIZE, GC_BATCH_PAUSE);
     @NonNull
     private final LiteHost host;
     @NonNull
@@ -193,7 +256,8 @@ public class IPFS {
 
     private IPFS(@NonNull Context context) throws Exception {
 
-        BLOCKS blocks = BLOCKS.getInstance(context);
+        // misses of block lookups are answered from memory
+        Storage storage = FilteredStorage.createFilteredStorage(getStorage(context));
 
         KeyPair keypair = getKeyPair(context);
         privateKey = new Rsa.RsaPrivateKey(keypair.getPrivate(), keypair.getPublic());
@@ -201,10 +265,15 @@ public class IPFS {
                 privateKey, keypair);
 
         int alpha = getConcurrencyValue(context);
+        CongestionControl congestionControl = getCongestionControl(context);
 
-        blockstore = BlockStore.createBlockStore(blocks);
+        // all block services share the cache, hot dag nodes are kept in memory,
+        // the blocks written during a garbage collection are reported to the collector
+        blockstore = CachedBlockStore.createCachedBlockStore(
+                garbageCollector.track(BlockStore.createBlockStore(storage)), BLOCK_CACHE_SIZE,
+                BLOCK_CACHE_MAX_BLOCK_SIZE, NODE_CACHE_SIZE);
         this.host = new LiteHost(selfSignedCertificate, privateKey, blockstore,
-                IPFS.DEFAULT_PORT, alpha);
+                IPFS.DEFAULT_PORT, alpha, congestionControl);
 
     }
 
@@ -230,6 +299,132 @@ public class IPFS {
         editor.apply();
     }
 
+    @NonNull
+    public static CongestionControl getCongestionControl(@NonNull Context context) {
+        Objects.requireNonNull(context);
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        String name = sharedPref.getString(CONGESTION_CONTROL_KEY, CongestionControl.NewReno.name());
+        try {
+            return CongestionControl.valueOf(name);
+        } catch (IllegalArgumentException ignore) {
+            return CongestionControl.NewReno;
+        }
+    }
+
+    /**
+     * Selects the congestion control of the QUIC connections of the host (dialed and
+     * accepted connections), the default is NewReno. The value is evaluated when the
+     * instance is created, so it has to be set before the first {@link #getInstance(Context)} call.
+     *
+     * @param context           Context
+     * @param congestionControl congestion control of the connections
+     */
+    public static void setCongestionControl(@NonNull Context context,
+                                            @NonNull CongestionControl congestionControl) {
+        Objects.requireNonNull(context);
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        SharedPreferences.Editor editor = sharedPref.edit();
+        editor.putString(CONGESTION_CONTROL_KEY, congestionControl.name());
+        editor.apply();
+    }
+
+    public static boolean isFileStorage(@NonNull Context context) {
+        Objects.requireNonNull(context);
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        return sharedPref.getBoolean(FILE_STORAGE_KEY, false);
+    }
+
+    /**
+     * Selects the storage of the blocks (database or file storage). The value is
+     * evaluated when the instance is created, so it has to be set before the
+     * first {@link #getInstance(Context)} call.
+     *
+     * @param context     Context
+     * @param fileStorage true when the blocks should be stored in flat files
+     */
+    public static void setFileStorage(@NonNull Context context, boolean fileStorage) {
+        Objects.requireNonNull(context);
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        boolean changed = fileStorage != sharedPref.getBoolean(FILE_STORAGE_KEY, false);
+        SharedPreferences.Editor editor = sharedPref.edit();
+        editor.putBoolean(FILE_STORAGE_KEY, fileStorage);
+        if (changed) {
+            // blocks stored in the other storage have to be migrated (again)
+            editor.putBoolean(FILE_STORAGE_MIGRATED_KEY, false);
+        }
+        editor.apply();
+    }
+
+    @NonNull
+    public static Set<Cid> getPins(@NonNull Context context) {
+        Objects.requireNonNull(context);
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        Set<Cid> pins = new HashSet<>();
+        for (String pin : sharedPref.getStringSet(PINS_KEY, Collections.emptySet())) {
+            pins.add(Cid.decode(pin));
+        }
+        return pins;
+    }
+
+    private static void setPins(@NonNull Context context, @NonNull Set<Cid> pins) {
+        Set<String> values = new HashSet<>();
+        for (Cid pin : pins) {
+            values.add(pin.String());
+        }
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        SharedPreferences.Editor editor = sharedPref.edit();
+        editor.putStringSet(PINS_KEY, values);
+        editor.apply();
+    }
+
+    /**
+     * Pins the given root, all blocks reachable from a pinned root are kept
+     * by the garbage collection
+     *
+     * @param context Context
+     * @param cid     root which should be kept
+     */
+    public static void pin(@NonNull Context context, @NonNull Cid cid) {
+        Objects.requireNonNull(context);
+        synchronized (PINS_KEY.intern()) {
+            Set<Cid> pins = getPins(context);
+            pins.add(cid);
+            setPins(context, pins);
+        }
+    }
+
+    public static void unpin(@NonNull Context context, @NonNull Cid cid) {
+        Objects.requireNonNull(context);
+        synchronized (PINS_KEY.intern()) {
+            Set<Cid> pins = getPins(context);
+            pins.remove(cid);
+            setPins(context, pins);
+        }
+    }
+
+    @NonNull
+    private static Storage getStorage(@NonNull Context context) {
+        BLOCKS blocks = BLOCKS.getInstance(context);
+        // blocks which are still stored in the other storage are moved to the selected one,
+        // the other storage is only scanned until the migration is complete
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        boolean migrated = sharedPref.getBoolean(FILE_STORAGE_MIGRATED_KEY, false);
+        if (isFileStorage(context)) {
+            FILES files = FILES.getInstance(context);
+            if (!migrated && files.migrate(blocks)) {
+                sharedPref.edit().putBoolean(FILE_STORAGE_MIGRATED_KEY, true).apply();
+            }
+            return files;
+        }
+        if (!migrated) {
+            // the file storage database is only created, when there are files to restore
+            if (!FILES.exists(context) || FILES.getInstance(context).restore(blocks)) {
+                sharedPref.edit().putBoolean(FILE_STORAGE_MIGRATED_KEY, true).apply();
+            }
+        }
+        return blocks;
+    }
+
     @SuppressWarnings("UnusedReturnValue")
     public static long copy(InputStream source, OutputStream sink) throws IOException {
         long nread = 0L;
@@ -475,10 +670,58 @@ public class IPFS {
     public Cid storeInputStream(@NonNull InputStream inputStream,
                                 @NonNull Progress progress, long size) {
 
-        return Stream.write(blockstore, new WriterStream(inputStream, progress, size));
+        Lock lock = gcLock.readLock();
+        lock.lock();
+        try {
+            return Stream.write(blockstore, new WriterStream(inputStream, progress, size));
+        } finally {
+            lock.unlock();
+        }
 
     }
 
+    // the chunker defines how the data is split into blocks (e.g. content-defined chunks
+    // for files which are imported again after edits)
+    @NonNull
+    public Cid storeInputStream(@NonNull InputStream inputStream,
+                                @NonNull Progress progress, long size,
+                                @NonNull Chunker chunker) {
+
+        Lock lock = gcLock.readLock();
+        lock.lock();
+        try {
+            return Stream.write(blockstore, new WriterStream(inputStream, progress, size), chunker);
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Stores the content and pins its root (see {@link #pin(Context, Cid)}), a garbage
+     * collection can't start in between
+     *
+     * @param context     Context
+     * @param inputStream content which should be stored
+     * @param progress    progress of the import
+     * @param size        size of the content (0 when unknown)
+     * @return pinned root of the content
+     */
+    @NonNull
+    public Cid pinInputStream(@NonNull Context context, @NonNull InputStream inputStream,
+                              @NonNull Progress progress, long size) {
+
+        Lock lock = gcLock.readLock();
+        lock.lock();
+        try {
+            Cid cid = storeInputStream(inputStream, progress, size);
+            pin(context, cid);
+            return cid;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @NonNull
     public Cid storeInputStream(@NonNull InputStream inputStream) {
 
@@ -518,15 +761,16 @@ public class IPFS {
 
         Reader reader = getReader(cid, progress);
         long size = reader.getSize();
-        byte[] buf = reader.loadNextData();
-        while (buf != null && buf.length > 0) {
+        WritableByteChannel channel = Channels.newChannel(os);
+        ByteBuffer buf = reader.loadNextBuffer();
+        while (buf != null && buf.hasRemaining()) {
 
             if (progress.isClosed()) {
                 throw new ClosedException();
             }
 
             // calculate progress
-            totalRead += buf.length;
+            totalRead += buf.remaining();
             if (progress.doProgress()) {
                 if (size > 0) {
                     int percent = (int) ((totalRead * 100.0f) / size);
@@ -537,9 +781,9 @@ public class IPFS {
                 }
             }
 
-            os.write(buf, 0, buf.length);
+            writeFully(channel, buf);
 
-            buf = reader.loadNextData();
+            buf = reader.loadNextBuffer();
 
         }
     }
@@ -548,11 +792,19 @@ public class IPFS {
                                     @NonNull Closeable closeable) throws IOException {
 
         Reader reader = getReader(cid, closeable);
-        byte[] buf = reader.loadNextData();
-        while (buf != null && buf.length > 0) {
+        WritableByteChannel channel = Channels.newChannel(os);
+        ByteBuffer buf = reader.loadNextBuffer();
+        while (buf != null && buf.hasRemaining()) {
 
-            os.write(buf, 0, buf.length);
-            buf = reader.loadNextData();
+            writeFully(channel, buf);
+            buf = reader.loadNextBuffer();
+        }
+    }
+
+    private static void writeFully(@NonNull WritableByteChannel channel,
+                                   @NonNull ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
         }
     }
 
@@ -576,30 +828,42 @@ public class IPFS {
 
     @Nullable
     public Cid rmLinkFromDir(@NonNull Cid dir, String name) {
+        Lock lock = gcLock.readLock();
+        lock.lock();
         try {
             return Stream.removeLinkFromDir(blockstore, () -> false, dir, name);
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
+        } finally {
+            lock.unlock();
         }
         return null;
     }
 
     @Nullable
     public Cid addLinkToDir(@NonNull Cid dir, @NonNull String name, @NonNull Cid link) {
+        Lock lock = gcLock.readLock();
+        lock.lock();
         try {
             return Stream.addLinkToDir(blockstore, () -> false, dir, name, link);
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
+        } finally {
+            lock.unlock();
         }
         return null;
     }
 
     @Nullable
     public Cid createEmptyDir() {
+        Lock lock = gcLock.readLock();
+        lock.lock();
         try {
             return Stream.createEmptyDir(blockstore);
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
+        } finally {
+            lock.unlock();
         }
         return null;
     }
@@ -632,6 +896,11 @@ public class IPFS {
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
         }
+        try {
+            Scheduler.shutdown();
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
     }
 
     @NonNull
@@ -732,7 +1001,7 @@ public class IPFS {
 
             //Set<String> addresses = new HashSet<>(IPFS.IPFS_RELAYS_NODES);
             if (!addresses.isEmpty()) {
-                ExecutorService executor = Executors.newFixedThreadPool(addresses.size());
+                List<Future<?>> futures = new ArrayList<>();
                 for (String address : addresses) {
                     try {
                         Multiaddr multiaddr = new Multiaddr(address);
@@ -750,26 +1019,27 @@ public class IPFS {
                             continue;
                         }
 
-                        executor.execute(() -> {
+                        futures.add(Scheduler.getInstance().execute(Scheduler.Lane.RELAY, () -> {
                             try {
                                 Reservation reservation = host.doReservation(relayId, multiaddr);
                                 minInMinutes.set(Math.min(minInMinutes.get(),
                                         reservation.expireInMinutes()));
                             } catch (Throwable ignore) {
                             }
-                        });
+                        }));
                     } catch (Throwable throwable) {
                         LogUtils.error(TAG, throwable);
                     }
                 }
                 if (timeout > 0) {
-                    try {
-                        boolean termination = executor.awaitTermination(timeout, TimeUnit.SECONDS);
-                        if (!termination) {
-                            executor.shutdownNow();
+                    long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeout);
+                    for (Future<?> future : futures) {
+                        try {
+                            future.get(Math.max(0, end - System.currentTimeMillis()),
+                                    TimeUnit.MILLISECONDS);
+                        } catch (Throwable ignore) {
+                            future.cancel(true);
                         }
-                    } catch (Throwable throwable) {
-                        LogUtils.error(TAG, throwable);
                     }
                 }
             }
@@ -800,6 +1070,24 @@ public class IPFS {
         blockstore.clear();
     }
 
+    /**
+     * Deletes all blocks which are not reachable from the pinned roots (see
+     * {@link #pin(Context, Cid)}). The collection is done in rate limited batches,
+     * so it can run in the background.
+     * Note: content which is stored or edited during the collection is kept, but content
+     * which was stored before and is not pinned yet is deleted (use
+     * {@link #pinInputStream(Context, InputStream, Progress, long)} to store and pin at once)
+     *
+     * @param context   Context
+     * @param closeable cancels the garbage collection
+     * @return reclaimed bytes
+     * @throws ClosedException when the garbage collection was cancelled
+     */
+    public long collectGarbage(@NonNull Context context, @NonNull Closeable closeable)
+            throws ClosedException {
+        return garbageCollector.collect(blockstore, closeable, getPins(context));
+    }
+
 
     public void findProviders(@NonNull Consumer<Peer> providers, @NonNull Cid cid,
                               boolean acceptLocalAddress, @NonNull Closeable closeable) {
@@ -1071,6 +1359,11 @@ public class IPFS {
                 IPFS.MESSAGE_SIZE_MAX, keepConnection, closeable);
     }
 
+    @NonNull
+    public CachedBlockStore getBlockStore() {
+        return blockstore;
+    }
+
     @NonNull
     public LiteHost getHost() {
         return host;
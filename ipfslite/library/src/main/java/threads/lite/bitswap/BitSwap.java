@@ -4,14 +4,9 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import net.luminis.quic.QuicConnection;
-import net.luminis.quic.QuicStream;
 
-import java.io.OutputStream;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import bitswap.pb.MessageOuterClass;
@@ -23,8 +18,6 @@ import threads.lite.core.ClosedException;
 import threads.lite.format.Block;
 import threads.lite.format.BlockStore;
 import threads.lite.host.LiteHost;
-import threads.lite.utils.DataHandler;
-import threads.lite.utils.ReaderHandler;
 
 
 public class BitSwap implements Exchange {
@@ -35,10 +28,11 @@ public class BitSwap implements Exchange {
     private final BitSwapManager bitSwapManager;
     @NonNull
     private final BitSwapEngine engine;
+    private final ConcurrentHashMap<QuicConnection, BitSwapStream> streams = new ConcurrentHashMap<>();
 
     public BitSwap(@NonNull BlockStore blockstore, @NonNull LiteHost host) {
         bitSwapManager = new BitSwapManager(this, blockstore, host);
-        engine = new BitSwapEngine(blockstore, host.self());
+        engine = new BitSwapEngine(this, blockstore, host.self());
     }
 
     @Nullable
@@ -57,6 +51,10 @@ public class BitSwap implements Exchange {
         bitSwapManager.reset();
     }
 
+    public void shutdown() {
+        bitSwapManager.shutdown();
+    }
+
 
     public void receiveMessage(@NonNull QuicConnection conn, @NonNull BitSwapMessage bsm) {
 
@@ -64,17 +62,8 @@ public class BitSwap implements Exchange {
 
         if (IPFS.BITSWAP_ENGINE_ACTIVE) {
             try {
-                BitSwapMessage msg = engine.messageReceived(bsm);
-                if (msg != null) {
-                    QuicStream stream = conn.createStream(true, IPFS.CREATE_STREAM_TIMEOUT,
-                            TimeUnit.SECONDS);
-                    OutputStream outputStream = stream.getOutputStream();
-
-                    outputStream.write(DataHandler.writeToken(
-                            IPFS.STREAM_PROTOCOL, IPFS.BITSWAP_PROTOCOL));
-                    outputStream.write(DataHandler.encode(msg.ToProtoV1()));
-                    outputStream.close();
-                }
+                // the wants are queued, the engine answers them asynchronously
+                engine.messageReceived(conn, bsm);
             } catch (Throwable throwable) {
                 LogUtils.error(TAG, throwable);
             }
@@ -89,17 +78,19 @@ public class BitSwap implements Exchange {
         LogUtils.debug(TAG, "ReceiveMessage " +
                 conn.getRemoteAddress().toString());
 
-        List<Block> wanted = bsm.Blocks();
+        List<BitSwapMessage.Payload> payloads = bsm.Payloads();
         List<Cid> haves = bsm.Haves();
-        if (wanted.size() > 0 || haves.size() > 0) {
-            for (Block block : wanted) {
-                LogUtils.info(TAG, "Block Received " + block.getCid().String() + " " +
-                        conn.getRemoteAddress().toString());
-                bitSwapManager.blockReceived(block);
-            }
-
+        List<Cid> dontHaves = bsm.DontHaves();
+        if (payloads.size() > 0) {
+            // the blocks are hashed on the scheduler, not on the thread of the stream
+            bitSwapManager.payloadsReceived(conn, payloads);
+        }
+        if (haves.size() > 0) {
             bitSwapManager.haveReceived(conn, haves);
         }
+        if (dontHaves.size() > 0) {
+            bitSwapManager.dontHaveReceived(conn, dontHaves);
+        }
 
     }
 
@@ -120,11 +111,12 @@ public class BitSwap implements Exchange {
 
         for (Cid c : haves) {
 
-            // Broadcast wants are sent as want-have
+            // Broadcast wants are sent as want-have (the DONT_HAVE answers
+            // are recorded in the ledger of the peer)
             MessageOuterClass.Message.Wantlist.WantType wantType =
                     MessageOuterClass.Message.Wantlist.WantType.Have;
 
-            message.AddEntry(c, priority, wantType, false);
+            message.AddEntry(c, priority, wantType, true);
 
             priority--;
         }
@@ -175,50 +167,41 @@ public class BitSwap implements Exchange {
 
         if (IPFS.BITSWAP_REQUEST_ACTIVE) {
             try {
-                QuicStream quicStream = conn.createStream(true,
-                        IPFS.CREATE_STREAM_TIMEOUT, TimeUnit.SECONDS);
-
-                OutputStream outputStream = quicStream.getOutputStream();
-                outputStream.write(DataHandler.writeToken(
-                        IPFS.STREAM_PROTOCOL, IPFS.BITSWAP_PROTOCOL));
-
-
-                // TODO rethink done (just simple write the stream,
-                // and then we go)
-                CompletableFuture<Boolean> done = new CompletableFuture<>();
-                ReaderHandler.reading(quicStream,
-                        (token) -> {
-                            if (!Arrays.asList(IPFS.STREAM_PROTOCOL, IPFS.BITSWAP_PROTOCOL)
-                                    .contains(token)) {
-                                done.completeExceptionally(
-                                        new Exception("Token " + token + " not supported"));
-                                return;
-                            }
-                            try {
-                                if (Objects.equals(token, IPFS.BITSWAP_PROTOCOL)) {
-                                    outputStream.write(DataHandler.encode(message.ToProtoV1()));
-                                    outputStream.close();
-                                }
-                            } catch (Throwable throwable) {
-                                done.completeExceptionally(throwable);
-                            }
-                        }, (data) -> {
-                            try {
-                                consumer.accept(BitSwapMessage.newMessageFromProto(
-                                        MessageOuterClass.Message.parseFrom(data)));
-                                done.complete(true);
-                            } catch (Throwable throwable) {
-                                done.completeExceptionally(throwable);
-                            }
-
-                        }, (fin) -> done.complete(true),
-                        done::completeExceptionally);
-
+                getStream(conn, consumer).writeMessage(message);
             } catch (Throwable throwable) {
                 LogUtils.error(TAG, throwable.getClass().getSimpleName() +
                         " : " + throwable.getMessage());
             }
         }
     }
-}
 
+    @NonNull
+    private BitSwapStream getStream(@NonNull QuicConnection conn,
+                                    @NonNull Consumer<BitSwapMessage> consumer) {
+        return streams.compute(conn, (key, value) -> {
+            if (value == null || value.isClosed()) {
+                return BitSwapStream.createBitSwapStream(conn, consumer);
+            }
+            return value;
+        });
+    }
+
+    // writes the message directly onto the outbound stream of the connection
+    void sendMessage(@NonNull QuicConnection conn, @NonNull BitSwapMessage message)
+            throws Exception {
+        getStream(conn, (bsm) -> receiveMessage(conn, bsm)).writeMessageNow(message);
+    }
+
+    @NonNull
+    public BitSwapEngine getEngine() {
+        return engine;
+    }
+
+    // closes the outbound stream of the connection (e.g. the peer is not used anymore)
+    public void closeStream(@NonNull QuicConnection conn) {
+        BitSwapStream stream = streams.remove(conn);
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
@@ -1,32 +1,52 @@
 package threads.lite.bitswap;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
+
+import net.luminis.quic.QuicConnection;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import bitswap.pb.MessageOuterClass;
 import threads.lite.IPFS;
 import threads.lite.LogUtils;
 import threads.lite.cid.Cid;
 import threads.lite.cid.PeerId;
+import threads.lite.core.Scheduler;
 import threads.lite.format.Block;
 import threads.lite.format.BlockStore;
 
-
+/**
+ * Serves the wantlists of the other peers. Every peer has its own task queue, ordered by
+ * the priority of the wants. The queues are served with a deficit round robin scheduler
+ * (every peer gets a quantum of {@link IPFS#BITSWAP_ENGINE_QUANTUM} bytes per round), and
+ * the bytes which are in flight to a peer are limited by
+ * {@link IPFS#BITSWAP_ENGINE_MAX_IN_FLIGHT}, so that a single peer, which asks for many
+ * blocks, can not monopolise the node. Responses are chunked into messages of about
+ * {@link IPFS#BITSWAP_ENGINE_MESSAGE_SIZE} bytes, and each response tells the peer how many
+ * bytes are still queued for it (pending bytes).
+ * <p>
+ * The responses are written on their own scheduler lane, a slow peer blocks the writing
+ * thread, but not the bitswap requests of this node.
+ */
 public class BitSwapEngine {
     public static final int MaxBlockSizeReplaceHasWithBlock = 1024;
     private static final String TAG = BitSwapEngine.class.getSimpleName();
     private final BlockStore blockstore;
-
+    private final BitSwap bitSwap;
     private final PeerId self;
+    private final ConcurrentHashMap<QuicConnection, PeerQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicLong sequence = new AtomicLong(0);
 
-    BitSwapEngine(@NonNull BlockStore bs, @NonNull PeerId self) {
+    BitSwapEngine(@NonNull BitSwap bitSwap, @NonNull BlockStore bs, @NonNull PeerId self) {
+        this.bitSwap = bitSwap;
         this.blockstore = bs;
         this.self = self;
 
@@ -40,21 +60,17 @@ public class BitSwapEngine {
         LogUtils.verbose(TAG,
                 "Bitswap process tasks" + " local " + self.toBase58());
 
-        // Amount of data in the request queue still waiting to be popped
-        msg.SetPendingBytes(0);
-
         // Split out want-blocks, want-haves and DONT_HAVEs
         List<Cid> blockCids = new ArrayList<>();
-        Map<Cid, TaskData> blockTasks = new HashMap<>();
+        Map<Cid, Task> blockTasks = new HashMap<>();
 
         for (Task task : tasks) {
 
             Cid c = task.Topic;
-            TaskData td = task.Data;
-            if (td.HaveBlock) {
-                if (td.IsWantBlock) {
+            if (task.HaveBlock) {
+                if (task.IsWantBlock) {
                     blockCids.add(c);
-                    blockTasks.put(c, td);
+                    blockTasks.put(c, task);
                 } else {
                     // Add HAVES to the message
                     msg.AddHave(c);
@@ -66,7 +82,7 @@ public class BitSwapEngine {
         }
 
         Map<Cid, Block> blks = getBlocks(blockCids);
-        for (Map.Entry<Cid, TaskData> entry : blockTasks.entrySet()) {
+        for (Map.Entry<Cid, Task> entry : blockTasks.entrySet()) {
             Block blk = blks.get(entry.getKey());
             // If the block was not found (it has been removed)
             if (blk == null) {
@@ -82,41 +98,27 @@ public class BitSwapEngine {
 
     }
 
-    public List<BitSwapMessage.Entry> filterWantsCancels(
-            @NonNull List<BitSwapMessage.Entry> es) {
-        List<BitSwapMessage.Entry> wants = new ArrayList<>();
-        for (BitSwapMessage.Entry et : es) {
-            if (!et.Cancel) {
-                wants.add(et);
-            }
-        }
-        return wants;
-    }
-
-    @Nullable
-    public BitSwapMessage messageReceived(@NonNull BitSwapMessage bsm) {
+    public void messageReceived(@NonNull QuicConnection conn, @NonNull BitSwapMessage bsm) {
 
         List<BitSwapMessage.Entry> entries = bsm.Wantlist();
-
-        List<BitSwapMessage.Entry> wants = filterWantsCancels(entries);
-
-        Set<Cid> wantKs = new HashSet<>();
-        for (BitSwapMessage.Entry entry : wants) {
-            wantKs.add(entry.Cid);
+        if (entries.isEmpty()) {
+            return;
         }
 
-
-        HashMap<Cid, Integer> blockSizes = getBlockSizes(wantKs);
-
         List<Task> tasks = new ArrayList<>();
+        List<Cid> cancels = new ArrayList<>();
 
-        for (BitSwapMessage.Entry entry : wants) {
+        for (BitSwapMessage.Entry entry : entries) {
             // For each want-have / want-block
 
             Cid c = entry.Cid;
-            Integer blockSize = blockSizes.get(entry.Cid);
+            if (entry.Cancel) {
+                cancels.add(c);
+                continue;
+            }
+            int blockSize = blockstore.getSize(c);
 
-            if (blockSize == null) {
+            if (blockSize <= 0) {
                 LogUtils.debug(TAG,
                         "Bitswap engine: block not found" + " local " + self.toBase58()
                                 + " cid " + entry.Cid.String()
@@ -127,9 +129,9 @@ public class BitSwapEngine {
 
                     boolean isWantBlock = entry.WantType == MessageOuterClass.Message.Wantlist.WantType.Block;
 
-                    Task task = new Task(c, new TaskData(false,
+                    tasks.add(new Task(c, entry.Priority, sequence.incrementAndGet(),
+                            BitSwapMessage.BlockPresenceSize(c), false,
                             isWantBlock, entry.SendDontHave));
-                    tasks.add(task);
 
                 }
             } else {
@@ -139,16 +141,129 @@ public class BitSwapEngine {
                         "Bitswap engine: block found" +
                                 " cid " + entry.Cid.String() + " isWantBlock " + isWantBlock);
 
-                Task task = new Task(c, new TaskData(true, isWantBlock, entry.SendDontHave));
-                tasks.add(task);
+                int size = isWantBlock ? blockSize : BitSwapMessage.BlockPresenceSize(c);
+                tasks.add(new Task(c, entry.Priority, sequence.incrementAndGet(), size,
+                        true, isWantBlock, entry.SendDontHave));
             }
         }
-        BitSwapMessage msg = createMessage(tasks);
-        if (!msg.Empty()) {
-            return msg;
+
+        // atomic with the removal of an empty queue (see run)
+        queues.compute(conn, (key, value) -> {
+            PeerQueue queue = value != null ? value : new PeerQueue(conn);
+            synchronized (queue) {
+                for (Cid cid : cancels) {
+                    queue.remove(cid);
+                }
+                for (Task task : tasks) {
+                    queue.push(task);
+                }
+            }
+            return queue;
+        });
+
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            Scheduler.getInstance().execute(Scheduler.Lane.BITSWAP, this::run);
         }
-        return null;
+    }
 
+    // one deficit round robin pass over the peers, until no peer can send anymore
+    private void run() {
+        scheduled.set(false);
+        try {
+            boolean progress = true;
+            while (progress) {
+                progress = false;
+                for (PeerQueue queue : queues.values()) {
+                    List<Task> tasks;
+                    int size;
+                    int pendingBytes;
+                    boolean empty;
+                    synchronized (queue) {
+                        empty = queue.tasks.isEmpty();
+                        if (empty) {
+                            queue.deficit = 0;
+                        }
+                    }
+                    if (empty) {
+                        // the queue lock is taken within the map lock (same order as
+                        // in messageReceived)
+                        queues.computeIfPresent(queue.conn, (key, value) -> {
+                            synchronized (value) {
+                                return value.tasks.isEmpty() && value.inFlight == 0 ? null : value;
+                            }
+                        });
+                        continue;
+                    }
+                    synchronized (queue) {
+                        if (queue.inFlight >= IPFS.BITSWAP_ENGINE_MAX_IN_FLIGHT) {
+                            continue;
+                        }
+                        queue.deficit += IPFS.BITSWAP_ENGINE_QUANTUM;
+                        tasks = queue.pop();
+                        // the deficit grows, until the next task fits
+                        progress = true;
+                        if (tasks.isEmpty()) {
+                            continue;
+                        }
+                        size = 0;
+                        for (Task task : tasks) {
+                            size += task.Size;
+                        }
+                        queue.inFlight += size;
+                        pendingBytes = queue.pendingBytes;
+                    }
+                    send(queue, tasks, size, pendingBytes);
+                }
+            }
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
+    }
+
+    private void send(@NonNull PeerQueue queue, @NonNull List<Task> tasks, int size,
+                      int pendingBytes) {
+        Scheduler.getInstance().execute(Scheduler.Lane.SERVE, () -> {
+            try {
+                BitSwapMessage msg = createMessage(tasks);
+                // Amount of data in the request queue still waiting to be popped
+                msg.SetPendingBytes(pendingBytes);
+                if (!msg.Empty()) {
+                    bitSwap.sendMessage(queue.conn, msg);
+                }
+            } catch (Throwable throwable) {
+                LogUtils.error(TAG, throwable);
+            } finally {
+                synchronized (queue) {
+                    queue.inFlight -= size;
+                }
+                schedule();
+            }
+        });
+    }
+
+    // number of bytes which are queued for all peers
+    public long getPendingBytes() {
+        long pendingBytes = 0;
+        for (PeerQueue queue : queues.values()) {
+            synchronized (queue) {
+                pendingBytes += queue.pendingBytes;
+            }
+        }
+        return pendingBytes;
+    }
+
+    public int getPendingTasks() {
+        int pendingTasks = 0;
+        for (PeerQueue queue : queues.values()) {
+            synchronized (queue) {
+                pendingTasks += queue.tasks.size();
+            }
+        }
+        return pendingTasks;
     }
 
     private boolean sendAsBlock(MessageOuterClass.Message.Wantlist.WantType wantType, Integer blockSize) {
@@ -168,34 +283,79 @@ public class BitSwapEngine {
         return blks;
     }
 
-    public HashMap<Cid, Integer> getBlockSizes(@NonNull Set<Cid> wantKs) {
 
-        HashMap<Cid, Integer> sizes = new HashMap<>();
-        for (Cid cid : wantKs) {
-            int size = blockstore.getSize(cid);
-            if (size > 0) {
-                sizes.put(cid, size);
+    private static class PeerQueue {
+        final QuicConnection conn;
+        // highest priority first, same priority in arrival order
+        final TreeSet<Task> tasks = new TreeSet<>((task1, task2) -> {
+            int result = Integer.compare(task2.Priority, task1.Priority);
+            if (result == 0) {
+                result = Long.compare(task1.Sequence, task2.Sequence);
             }
+            return result;
+        });
+        final HashMap<Cid, Task> topics = new HashMap<>();
+        int pendingBytes = 0;
+        int inFlight = 0;
+        int deficit = 0;
+
+        PeerQueue(@NonNull QuicConnection conn) {
+            this.conn = conn;
         }
-        return sizes;
-    }
-
 
-    private static class Task {
-        // Topic for the task
-        public final Cid Topic;
-        // Arbitrary data associated with this Task by the client
-        public final TaskData Data;
+        // a new want for the same topic replaces the older one
+        void push(@NonNull Task task) {
+            remove(task.Topic);
+            tasks.add(task);
+            topics.put(task.Topic, task);
+            pendingBytes += task.Size;
+        }
 
-        public Task(@NonNull Cid topic, @NonNull TaskData data) {
-            this.Topic = topic;
-            this.Data = data;
+        void remove(@NonNull Cid topic) {
+            Task task = topics.remove(topic);
+            if (task != null) {
+                tasks.remove(task);
+                pendingBytes -= task.Size;
+            }
         }
 
+        // the tasks for the next message (limited by the deficit, the message size
+        // and the bytes in flight)
+        @NonNull
+        List<Task> pop() {
+            List<Task> result = new ArrayList<>();
+            int size = 0;
+            int limit = Math.min(IPFS.BITSWAP_ENGINE_MESSAGE_SIZE,
+                    IPFS.BITSWAP_ENGINE_MAX_IN_FLIGHT - inFlight);
+            while (!tasks.isEmpty()) {
+                Task task = tasks.first();
+                if (task.Size > deficit) {
+                    break;
+                }
+                // a single task is always sent, even when it exceeds the message size
+                if (!result.isEmpty() && size + task.Size > limit) {
+                    break;
+                }
+                tasks.pollFirst();
+                topics.remove(task.Topic);
+                pendingBytes -= task.Size;
+                deficit -= task.Size;
+                size += task.Size;
+                result.add(task);
+            }
+            return result;
+        }
     }
 
-
-    private static class TaskData {
+    private static class Task {
+        // Topic for the task
+        final Cid Topic;
+        // Priority of the want (higher first)
+        final int Priority;
+        // Arrival order of tasks with the same priority
+        final long Sequence;
+        // Size of the response of the task (block size or block presence size)
+        final int Size;
         // Tasks can be want-have or want-block
         final boolean IsWantBlock;
         // Whether to immediately send a response if the block is not found
@@ -203,13 +363,17 @@ public class BitSwapEngine {
         // Whether the block was found
         final boolean HaveBlock;
 
-        public TaskData(boolean haveBlock, boolean isWantBlock, boolean sendDontHave) {
+        Task(@NonNull Cid topic, int priority, long sequence, int size, boolean haveBlock,
+             boolean isWantBlock, boolean sendDontHave) {
+            this.Topic = topic;
+            this.Priority = priority;
+            this.Sequence = sequence;
+            this.Size = size;
             this.SendDontHave = sendDontHave;
             this.IsWantBlock = isWantBlock;
             this.HaveBlock = haveBlock;
         }
 
-
     }
 
 }
@@ -0,0 +1,177 @@
+package threads.lite.bitswap;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import threads.lite.IPFS;
+import threads.lite.cid.PeerId;
+
+/**
+ * Remembers per peer how it behaved as block provider (blocks and bytes received, latency
+ * of the want-block requests, HAVE/DONT_HAVE answers, timeouts and the RTT of the connection).
+ * The score is used to rank the peers, so that repeated fetches from the same content
+ * provider converge on the fast peers, which actually deliver.
+ */
+public class BitSwapLedger {
+
+    private final ConcurrentHashMap<PeerId, Entry> entries = new ConcurrentHashMap<>();
+
+    @NonNull
+    private Entry getEntry(@NonNull PeerId peerId) {
+        return entries.computeIfAbsent(peerId, (key) -> new Entry());
+    }
+
+    public void haveReceived(@NonNull PeerId peerId) {
+        Entry entry = getEntry(peerId);
+        synchronized (entry) {
+            entry.haves++;
+        }
+    }
+
+    public void dontHaveReceived(@NonNull PeerId peerId) {
+        Entry entry = getEntry(peerId);
+        synchronized (entry) {
+            entry.dontHaves++;
+        }
+    }
+
+    public void wantBlockSent(@NonNull PeerId peerId) {
+        Entry entry = getEntry(peerId);
+        synchronized (entry) {
+            entry.wantBlocks++;
+        }
+    }
+
+    // latency is the time between the want-block and the block, -1 when not known
+    public void blockReceived(@NonNull PeerId peerId, int size, long latency) {
+        Entry entry = getEntry(peerId);
+        synchronized (entry) {
+            entry.blocks++;
+            entry.bytes += size;
+            if (latency >= 0) {
+                entry.latency = entry.latency < 0 ? latency :
+                        (long) ((1 - IPFS.BITSWAP_LEDGER_ALPHA) * entry.latency +
+                                IPFS.BITSWAP_LEDGER_ALPHA * latency);
+            }
+        }
+    }
+
+    // a block which failed the verification (invalid prefix, hash or data)
+    public void invalidBlockReceived(@NonNull PeerId peerId) {
+        Entry entry = getEntry(peerId);
+        synchronized (entry) {
+            entry.invalids++;
+            entry.lastInvalid = System.currentTimeMillis();
+        }
+    }
+
+    // a valid block which was not wanted (anymore), e.g. the want was answered by another
+    // peer in the meantime, it is not a misbehaviour of the peer
+    public void unwantedBlockReceived(@NonNull PeerId peerId) {
+        Entry entry = getEntry(peerId);
+        synchronized (entry) {
+            entry.unwanted++;
+        }
+    }
+
+    public void timeout(@NonNull PeerId peerId) {
+        Entry entry = getEntry(peerId);
+        synchronized (entry) {
+            entry.timeouts++;
+            entry.lastTimeout = System.currentTimeMillis();
+        }
+    }
+
+    public void updateRtt(@NonNull PeerId peerId, int rtt) {
+        if (rtt > 0) {
+            Entry entry = getEntry(peerId);
+            synchronized (entry) {
+                entry.rtt = rtt;
+            }
+        }
+    }
+
+    // the higher the better, peers without history get a neutral score
+    public double getScore(@NonNull PeerId peerId) {
+        Entry entry = getEntry(peerId);
+        synchronized (entry) {
+            // delivered blocks per want-block, and HAVE per answer (with a prior of 1/2)
+            double blockYield = (entry.blocks + 1.0) /
+                    (entry.wantBlocks + entry.invalids + 2.0);
+            double haveYield = (entry.haves + 1.0) / (entry.haves + entry.dontHaves + 2.0);
+            long latency = entry.latency >= 0 ? entry.latency :
+                    (entry.rtt > 0 ? entry.rtt : IPFS.BITSWAP_LEDGER_DEFAULT_LATENCY);
+            return (blockYield * haveYield) / (1.0 + latency);
+        }
+    }
+
+    // a peer which never delivered a block, but let several want-blocks time out, or
+    // a peer which sent several invalid blocks
+    public boolean isUseless(@NonNull PeerId peerId) {
+        Entry entry = entries.get(peerId);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            if (entry.invalids >= IPFS.BITSWAP_LEDGER_MAX_INVALID_BLOCKS) {
+                if ((System.currentTimeMillis() - entry.lastInvalid) <=
+                        IPFS.BITSWAP_LEDGER_PENALTY_TIME) {
+                    return true;
+                }
+                // the peer gets another chance
+                entry.invalids = 0;
+            }
+            if (entry.blocks > 0 || entry.timeouts < IPFS.BITSWAP_LEDGER_MAX_TIMEOUTS) {
+                return false;
+            }
+            if ((System.currentTimeMillis() - entry.lastTimeout) >
+                    IPFS.BITSWAP_LEDGER_PENALTY_TIME) {
+                // the peer gets another chance
+                entry.timeouts = 0;
+                return false;
+            }
+            return true;
+        }
+    }
+
+    public long getBlocksReceived(@NonNull PeerId peerId) {
+        Entry entry = getEntry(peerId);
+        synchronized (entry) {
+            return entry.blocks;
+        }
+    }
+
+    public long getBytesReceived(@NonNull PeerId peerId) {
+        Entry entry = getEntry(peerId);
+        synchronized (entry) {
+            return entry.bytes;
+        }
+    }
+
+    public long getUnwantedBlocksReceived(@NonNull PeerId peerId) {
+        Entry entry = getEntry(peerId);
+        synchronized (entry) {
+            return entry.unwanted;
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static class Entry {
+        long blocks = 0;
+        long bytes = 0;
+        long wantBlocks = 0;
+        long haves = 0;
+        long dontHaves = 0;
+        long timeouts = 0;
+        long lastTimeout = 0;
+        long invalids = 0;
+        long lastInvalid = 0;
+        long unwanted = 0;
+        long latency = -1;
+        int rtt = 0;
+    }
+}
@@ -1,20 +1,19 @@
 package threads.lite.bitswap;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import net.luminis.quic.QuicConnection;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -25,6 +24,8 @@ import threads.lite.cid.Peer;
 import threads.lite.cid.PeerId;
 import threads.lite.core.Closeable;
 import threads.lite.core.ClosedException;
+import threads.lite.core.Scheduler;
+import threads.lite.format.BasicBlock;
 import threads.lite.format.Block;
 import threads.lite.format.BlockStore;
 import threads.lite.host.LiteHost;
@@ -36,12 +37,13 @@ public class BitSwapManager {
 
     private final LiteHost host;
     private final BlockStore blockStore;
-    private final ScheduledThreadPoolExecutor providers = new ScheduledThreadPoolExecutor(6);
-    private final ExecutorService connector = Executors.newFixedThreadPool(6);
     private final ConcurrentHashMap<PeerId, QuicConnection> peers = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Cid, ConcurrentLinkedDeque<QuicConnection>> matches = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<QuicConnection, PeerId> peerIds = new ConcurrentHashMap<>();
+    private final BitSwapLedger ledger = new BitSwapLedger();
+    private final BitSwapSession session = new BitSwapSession(this);
     private final Blocker blocker = new Blocker();
     private final BitSwap bitSwap;
+    private volatile boolean shutdown = false;
 
     public BitSwapManager(@NonNull BitSwap bitSwap, @NonNull BlockStore blockStore, @NonNull LiteHost host) {
         this.bitSwap = bitSwap;
@@ -50,19 +52,55 @@ public class BitSwapManager {
     }
 
     private void addPeer(@NonNull PeerId peerId, @NonNull QuicConnection conn) {
-        peers.put(peerId, conn);
+        QuicConnection previous = peers.put(peerId, conn);
+        if (previous != null && previous != conn) {
+            peerIds.remove(previous);
+            bitSwap.closeStream(previous);
+        }
+        peerIds.put(conn, peerId);
+        session.peerAdded();
+    }
+
+    private void removePeer(@NonNull PeerId peerId, @NonNull QuicConnection conn) {
+        if (peers.remove(peerId, conn)) {
+            peerIds.remove(conn);
+            bitSwap.closeStream(conn);
+            LogUtils.debug(TAG, "Remove peer " + peerId.toBase58());
+            if (host.isNotProtected(peerId)) {
+                conn.close();
+            }
+        }
     }
 
     public void haveReceived(@NonNull QuicConnection conn, @NonNull List<Cid> cids) {
+        PeerId peerId = peerIds.get(conn);
+        if (peerId != null) {
+            for (int i = 0; i < cids.size(); i++) {
+                ledger.haveReceived(peerId);
+            }
+        }
+        session.haveReceived(conn, cids);
+    }
 
-        for (Cid cid : cids) {
-            ConcurrentLinkedDeque<QuicConnection> res = matches.get(cid);
-            if (res != null) {
-                res.add(conn);
+    public void dontHaveReceived(@NonNull QuicConnection conn, @NonNull List<Cid> cids) {
+        PeerId peerId = peerIds.get(conn);
+        if (peerId != null) {
+            for (int i = 0; i < cids.size(); i++) {
+                ledger.dontHaveReceived(peerId);
             }
         }
     }
 
+    @NonNull
+    public BitSwapLedger getLedger() {
+        return ledger;
+    }
+
+    @Nullable
+    PeerId getPeerId(@NonNull QuicConnection conn) {
+        return peerIds.get(conn);
+    }
+
     public void reset() {
 
         LogUtils.debug(TAG, "Reset");
@@ -70,6 +108,7 @@ public class BitSwapManager {
             for (Map.Entry<PeerId, QuicConnection> entry : peers.entrySet()) {
                 PeerId peerId = entry.getKey();
                 QuicConnection conn = entry.getValue();
+                bitSwap.closeStream(conn);
                 if (host.isNotProtected(peerId)) {
                     conn.close();
                 }
@@ -79,7 +118,24 @@ public class BitSwapManager {
         }
         try {
             peers.clear();
-            matches.clear();
+            peerIds.clear();
+            session.reset();
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
+    }
+
+    // all waiting and all later block requests fail with a ClosedException (not reversible)
+    public void shutdown() {
+        shutdown = true;
+        // the waiting callers fail first, so that their cancelled wants are not renewed
+        try {
+            blocker.shutdown();
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
+        try {
+            session.shutdown();
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
         }
@@ -91,6 +147,10 @@ public class BitSwapManager {
                 return;
             }
 
+            if (ledger.isUseless(peer.getPeerId())) {
+                return;
+            }
+
             QuicConnection conn = host.connect(peer, IPFS.CONNECT_TIMEOUT, IPFS.GRACE_PERIOD,
                     IPFS.MAX_STREAMS, IPFS.MESSAGE_SIZE_MAX,
                     true);
@@ -109,134 +169,201 @@ public class BitSwapManager {
     }
 
 
-    public void runHaveMessage(@NonNull Closeable closeable, QuicConnection conn,
-                               @NonNull List<Cid> cids) {
-        new Thread(() -> {
+    void runHaveMessage(@NonNull QuicConnection conn, @NonNull List<Cid> cids) {
+        Scheduler.getInstance().execute(Scheduler.Lane.BITSWAP, () -> {
             long start = System.currentTimeMillis();
             boolean success = false;
             try {
-                if (closeable.isClosed()) {
-                    return;
-                }
                 bitSwap.sendHaveMessage(conn, cids);
                 success = true;
             } catch (Throwable throwable) {
                 LogUtils.error(TAG, "runHaveMessage " + throwable.getClass().getName());
             } finally {
-                LogUtils.debug(TAG, "runHaveMessage " + success + " " +
+                LogUtils.debug(TAG, "runHaveMessage " + success + " " + cids.size() +
+                        " took " + (System.currentTimeMillis() - start));
+            }
+        });
+    }
+
+    void runWantsMessage(@NonNull QuicConnection conn, @NonNull List<Cid> cids) {
+        Scheduler.getInstance().execute(Scheduler.Lane.BITSWAP, () -> {
+            long start = System.currentTimeMillis();
+            boolean success = false;
+            try {
+                bitSwap.sendWantsMessage(conn, cids);
+                success = true;
+            } catch (Throwable throwable) {
+                LogUtils.error(TAG, "runWantsMessage " + throwable.getClass().getName());
+            } finally {
+                LogUtils.debug(TAG, "runWantsMessage " + success + " " + cids.size() +
                         " took " + (System.currentTimeMillis() - start));
             }
-        }).start();
+        });
     }
 
+    // connections of the peers, best scored first (peers which never deliver are removed)
+    @NonNull
+    List<QuicConnection> getRankedConnections() {
+        List<QuicConnection> conns = new ArrayList<>();
+        Map<QuicConnection, Double> scores = new HashMap<>();
+        for (Map.Entry<PeerId, QuicConnection> entry : peers.entrySet()) {
+            PeerId peerId = entry.getKey();
+            QuicConnection conn = entry.getValue();
+            if (ledger.isUseless(peerId)) {
+                removePeer(peerId, conn);
+                continue;
+            }
+            try {
+                ledger.updateRtt(peerId, conn.getStats().smoothedRtt());
+            } catch (Throwable throwable) {
+                LogUtils.error(TAG, throwable);
+            }
+            scores.put(conn, ledger.getScore(peerId));
+            conns.add(conn);
+        }
+        conns.sort((conn1, conn2) -> Double.compare(
+                Objects.requireNonNull(scores.get(conn2)),
+                Objects.requireNonNull(scores.get(conn1))));
+        return conns;
+    }
 
     public Block runWantHaves(@NonNull Closeable closeable, @NonNull Cid cid) throws ClosedException {
 
-        matches.put(cid, new ConcurrentLinkedDeque<>());
-
+        if (shutdown) {
+            throw new ClosedException();
+        }
 
         loadProviders(closeable, cid, IPFS.BITSWAP_LOAD_PROVIDERS_DELAY, TimeUnit.SECONDS);
 
-        Set<QuicConnection> haves = new HashSet<>();
-
         Set<Peer> swarm = host.getPeers();
 
         for (Peer peer : swarm) {
-            connector.execute(() -> connectPeer(closeable, peer));
+            Scheduler.getInstance().execute(Scheduler.Lane.CONNECT,
+                    () -> connectPeer(closeable, peer));
         }
 
-        while (matches.containsKey(cid)) {
-
-            if (closeable.isClosed()) {
-                throw new ClosedException();
+        CompletableFuture<Block> result = blocker.subscribe(cid, closeable);
+        try {
+            // the block might have arrived before the subscription
+            Block block = blockStore.getBlock(cid);
+            if (block != null) {
+                return block;
             }
-
-            for (QuicConnection peer : peers.values()) {
-                if (!haves.contains(peer)) {
-                    haves.add(peer);
-                    runHaveMessage(closeable, peer, Collections.singletonList(cid));
-                }
+            want(closeable, cid, result);
+            return result.get();
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof ClosedException) {
+                throw (ClosedException) exception.getCause();
             }
+            throw new RuntimeException(exception.getCause());
+        } catch (InterruptedException exception) {
+            throw new ClosedException();
+        } finally {
+            result.cancel(true);
+        }
+    }
 
-            ConcurrentLinkedDeque<QuicConnection> set = matches.get(cid);
-            if (set != null) {
-                QuicConnection conn = set.poll();
-                if (conn != null) {
-
-                    long start = System.currentTimeMillis();
-                    try {
-                        if (matches.containsKey(cid)) {
-                            bitSwap.sendWantsMessage(conn, Collections.singletonList(cid));
+    private void want(@NonNull Closeable closeable, @NonNull Cid cid,
+                      @NonNull CompletableFuture<Block> result) {
+        session.want(closeable, cid).whenComplete((block, throwable) -> {
+            // the want was dropped (e.g. reset or timeout), but it is still waited for
+            if (throwable != null && !result.isDone() && !closeable.isClosed()) {
+                want(closeable, cid, result);
+            }
+        });
+    }
 
-                            blocker.subscribe(cid, closeable);
-                        }
-                    } catch (Throwable throwable) {
-                        LogUtils.error(TAG, throwable);
-                    } finally {
-                        LogUtils.debug(TAG, "Match CID " + cid.String() +
-                                " took " + (System.currentTimeMillis() - start));
-                    }
-                }
 
-            }
+    public void blockReceived(@NonNull QuicConnection conn, @NonNull Block block) {
 
-            if (closeable.isClosed()) {
-                throw new ClosedException();
-            }
+        try {
+            blockStore.putBlock(block);
+            session.blockReceived(conn, block);
+            blocker.release(block);
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
         }
-        return blockStore.getBlock(cid);
     }
 
 
-    public void blockReceived(@NonNull Block block) {
+    // the received blocks are verified in parallel (off the network thread), each block is
+    // delivered as soon as it is verified, independent of the order in the message
+    public void payloadsReceived(@NonNull QuicConnection conn,
+                                 @NonNull List<BitSwapMessage.Payload> payloads) {
+        for (BitSwapMessage.Payload payload : payloads) {
+            Scheduler.getInstance().execute(Scheduler.Lane.VERIFY,
+                    () -> payloadReceived(conn, payload));
+        }
+    }
 
+    private void payloadReceived(@NonNull QuicConnection conn,
+                                 @NonNull BitSwapMessage.Payload payload) {
         try {
+            Block block;
+            try {
+                // only a failure of the verification (prefix, hash, data) is counted as
+                // invalid block
+                Cid cid = payload.Sum();
+                block = BasicBlock.createBlockWithCid(cid, payload.Data.toByteArray());
+            } catch (Throwable throwable) {
+                invalidBlockReceived(conn, throwable.getClass().getSimpleName() +
+                        " : " + throwable.getMessage());
+                return;
+            }
             Cid cid = block.getCid();
-            blockStore.putBlock(block);
-            matches.remove(cid);
-            blocker.release(cid);
+            if (!session.isWanted(cid)) {
+                // a late duplicate (e.g. delivered by another peer as well) or a block
+                // which is not wanted anymore, the verified block is dropped
+                LogUtils.debug(TAG, "Block not wanted " + cid.String());
+                PeerId peerId = peerIds.get(conn);
+                if (peerId != null) {
+                    ledger.unwantedBlockReceived(peerId);
+                }
+                return;
+            }
+            LogUtils.info(TAG, "Block Received " + cid.String() + " " +
+                    conn.getRemoteAddress().toString());
+            blockReceived(conn, block);
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
         }
     }
 
+    private void invalidBlockReceived(@NonNull QuicConnection conn, @NonNull String reason) {
+        LogUtils.debug(TAG, "Invalid block " + reason + " " +
+                conn.getRemoteAddress().toString());
+        PeerId peerId = peerIds.get(conn);
+        if (peerId != null) {
+            ledger.invalidBlockReceived(peerId);
+        }
+    }
 
     public void loadBlocks(@NonNull Closeable closeable, @NonNull List<Cid> cids) {
 
         LogUtils.verbose(TAG, "LoadBlocks " + cids.size());
 
-        List<QuicConnection> handled = new ArrayList<>();
-
-        for (QuicConnection conn : peers.values()) {
-            if (!handled.contains(conn)) {
-                handled.add(conn);
-                runHaveMessage(closeable, conn, cids);
-            }
-        }
+        session.want(closeable, cids);
     }
 
     public Block getBlock(@NonNull Closeable closeable, @NonNull Cid cid, boolean root) throws ClosedException {
         try {
-            synchronized (cid.String().intern()) {
-                Block block = blockStore.getBlock(cid);
-                if (block == null) {
-                    AtomicBoolean done = new AtomicBoolean(false);
-                    LogUtils.info(TAG, "Block Get " + cid.String());
-
-                    if (root) {
-                        loadProviders(() -> closeable.isClosed() || done.get(), cid, 1,
-                                TimeUnit.MILLISECONDS);
-                    }
-                    try {
-                        return runWantHaves(() -> closeable.isClosed() || done.get(), cid);
-                    } finally {
-                        done.set(true);
-                    }
+            Block block = blockStore.getBlock(cid);
+            if (block == null) {
+                AtomicBoolean done = new AtomicBoolean(false);
+                LogUtils.info(TAG, "Block Get " + cid.String());
+
+                if (root) {
+                    loadProviders(() -> closeable.isClosed() || done.get(), cid, 1,
+                            TimeUnit.MILLISECONDS);
+                }
+                try {
+                    return runWantHaves(() -> closeable.isClosed() || done.get(), cid);
+                } finally {
+                    done.set(true);
                 }
-                return block;
             }
+            return block;
         } finally {
-            blocker.release(cid);
             LogUtils.info(TAG, "Block Release  " + cid.String());
         }
     }
@@ -246,7 +373,7 @@ public class BitSwapManager {
 
         if (IPFS.BITSWAP_SUPPORT_FIND_PROVIDERS) {
 
-            providers.schedule(() -> {
+            Scheduler.getInstance().schedule(Scheduler.Lane.LOOKUP, () -> {
 
                 long start = System.currentTimeMillis();
                 try {
@@ -260,7 +387,8 @@ public class BitSwapManager {
 
                     host.findProviders(closeable, (peer) -> {
                         if (peer.hasAddresses()) {
-                            connector.execute(() -> connectPeer(closeable, peer));
+                            Scheduler.getInstance().execute(Scheduler.Lane.CONNECT,
+                                    () -> connectPeer(closeable, peer));
                         }
                     }, cid, false);
                 } catch (Throwable throwable) {
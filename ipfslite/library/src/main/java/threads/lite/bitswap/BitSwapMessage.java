@@ -3,8 +3,9 @@ package threads.lite.bitswap;
 import androidx.annotation.NonNull;
 
 import com.google.protobuf.ByteString;
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -12,8 +13,8 @@ import java.util.Map;
 
 import bitswap.pb.MessageOuterClass;
 import threads.lite.cid.Cid;
+import threads.lite.cid.Multihash;
 import threads.lite.cid.Prefix;
-import threads.lite.format.BasicBlock;
 import threads.lite.format.Block;
 
 
@@ -40,18 +41,17 @@ public interface BitSwapMessage {
             }
             m.addEntry(cid, e.getPriority(), e.getCancel(), e.getWantType(), e.getSendDontHave());
         }
+        // the blocks are not hashed here, they are verified later (see Payload)
         // deprecated
         for (ByteString data : pbm.getBlocksList()) {
             // CIDv0, sha256, protobuf only
-            Block block = BasicBlock.createBlock(data.toByteArray());
-            m.AddBlock(block);
+            m.addPayload(new Prefix(Cid.DagProtobuf, 32,
+                    Multihash.Type.sha2_256.index, 0), data);
         }
         for (MessageOuterClass.Message.Block b : pbm.getPayloadList()) {
             ByteString prefix = b.getPrefix();
             Prefix pref = Prefix.getPrefixFromBytes(prefix.toByteArray());
-            Cid cid = pref.sum(b.getData().toByteArray());
-            Block block = BasicBlock.createBlockWithCid(cid, b.getData().toByteArray());
-            m.AddBlock(block);
+            m.addPayload(pref, b.getData());
         }
 
         for (MessageOuterClass.Message.BlockPresence bi : pbm.getBlockPresencesList()) {
@@ -68,9 +68,15 @@ public interface BitSwapMessage {
         return m;
     }
 
-    static BitSwapMessage fromData(byte[] data) throws InvalidProtocolBufferException {
-        MessageOuterClass.Message message = MessageOuterClass.Message.parseFrom(data);
-        return newMessageFromProto(message);
+    static BitSwapMessage fromData(byte[] data) throws IOException {
+        return newMessageFromProto(parseFrom(data));
+    }
+
+    static MessageOuterClass.Message parseFrom(byte[] data) throws IOException {
+        // aliasing avoids copies of the block data, it references the encoded bytes
+        CodedInputStream codedInputStream = CodedInputStream.newInstance(data);
+        codedInputStream.enableAliasing(true);
+        return MessageOuterClass.Message.parseFrom(codedInputStream);
     }
 
     MessageOuterClass.Message ToProtoV1();
@@ -82,6 +88,9 @@ public interface BitSwapMessage {
     // Blocks returns a slice of unique blocks.
     List<Block> Blocks();
 
+    // Payloads returns the received blocks, which are not verified yet
+    List<Payload> Payloads();
+
     // BlockPresences returns the list of HAVE / DONT_HAVE in the message
     List<BlockPresence> BlockPresences();
 
@@ -179,11 +188,24 @@ public interface BitSwapMessage {
         public MessageOuterClass.Message.BlockPresenceType Type;
     }
 
+    // Payload is a received block, the CID is computed from the data when the
+    // block is verified
+    class Payload {
+        public threads.lite.cid.Prefix Prefix;
+        public ByteString Data;
+
+        // computes the CID of the data (the data is hashed without a copy)
+        public Cid Sum() {
+            return Prefix.sum(Data.asReadOnlyByteBuffer());
+        }
+    }
+
     class BitSwapMessageImpl implements BitSwapMessage {
 
         private static final String TAG = BitSwapMessage.class.getSimpleName();
         final HashMap<Cid, Entry> wantlist = new HashMap<>();
         final HashMap<Cid, Block> blocks = new HashMap<>();
+        final List<Payload> payloads = new ArrayList<>();
         final HashMap<Cid, MessageOuterClass.Message.BlockPresenceType> blockPresences = new HashMap<>();
         boolean full;
         int pendingBytes;
@@ -241,6 +263,18 @@ public interface BitSwapMessage {
             return new ArrayList<>(blocks.values());
         }
 
+        void addPayload(@NonNull Prefix prefix, @NonNull ByteString data) {
+            Payload payload = new Payload();
+            payload.Prefix = prefix;
+            payload.Data = data;
+            payloads.add(payload);
+        }
+
+        @Override
+        public List<Payload> Payloads() {
+            return new ArrayList<>(payloads);
+        }
+
         @Override
         public List<BlockPresence> BlockPresences() {
 
@@ -299,7 +333,8 @@ public interface BitSwapMessage {
 
         @Override
         public boolean Empty() {
-            return blocks.size() == 0 && wantlist.size() == 0 && blockPresences.size() == 0;
+            return blocks.size() == 0 && payloads.size() == 0 && wantlist.size() == 0 &&
+                    blockPresences.size() == 0;
         }
 
         private int BlockPresenceSize(@NonNull Cid c) {
@@ -316,6 +351,9 @@ public interface BitSwapMessage {
             for (Block b : blocks.values()) {
                 size += b.getRawData().length;
             }
+            for (Payload p : payloads) {
+                size += p.Data.size();
+            }
             for (Cid c : blockPresences.keySet()) {
                 size += BlockPresenceSize(c);
             }
@@ -401,6 +439,7 @@ public interface BitSwapMessage {
             this.full = full;
             wantlist.clear();
             blocks.clear();
+            payloads.clear();
             blockPresences.clear();
             this.pendingBytes = 0;
         }
@@ -410,6 +449,7 @@ public interface BitSwapMessage {
             BitSwapMessageImpl msg = new BitSwapMessageImpl(full);
             msg.blockPresences.putAll(blockPresences);
             msg.blocks.putAll(blocks);
+            msg.payloads.addAll(payloads);
             msg.wantlist.putAll(wantlist);
             msg.pendingBytes = pendingBytes;
             return msg;
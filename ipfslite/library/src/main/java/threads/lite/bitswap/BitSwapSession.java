@@ -0,0 +1,290 @@
+package threads.lite.bitswap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.luminis.quic.QuicConnection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import threads.lite.IPFS;
+import threads.lite.LogUtils;
+import threads.lite.cid.Cid;
+import threads.lite.cid.PeerId;
+import threads.lite.core.Closeable;
+import threads.lite.core.ClosedException;
+import threads.lite.format.Block;
+
+/**
+ * Wantlist of all outstanding CIDs. Instead of asking the peers for one CID after the
+ * other, the wanted CIDs are collected and sent as batched want-have entries (one message
+ * per peer), and the CIDs for which a peer answered with HAVE are requested as batched
+ * want-block entries (again one message per peer). The blocks are delivered through the
+ * futures returned by {@link #want(Closeable, Cid)}.
+ * <p>
+ * All wantlist work is done on a single scheduler thread, triggered by the events
+ * (new wants, new peers, HAVE answers) and by a periodic tick for timeouts. The thread
+ * is stopped by {@link #shutdown()}.
+ */
+public class BitSwapSession {
+
+    private static final String TAG = BitSwapSession.class.getSimpleName();
+
+    @NonNull
+    private final BitSwapManager bitSwapManager;
+    private final ConcurrentHashMap<Cid, Want> wants = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+    private final AtomicBoolean triggered = new AtomicBoolean(false);
+
+    public BitSwapSession(@NonNull BitSwapManager bitSwapManager) {
+        this.bitSwapManager = bitSwapManager;
+        this.scheduler.scheduleWithFixedDelay(this::tick, IPFS.BITSWAP_SESSION_TICK,
+                IPFS.BITSWAP_SESSION_TICK, TimeUnit.MILLISECONDS);
+    }
+
+    @NonNull
+    public CompletableFuture<Block> want(@NonNull Closeable closeable, @NonNull Cid cid) {
+        if (scheduler.isShutdown()) {
+            // nobody would process the want anymore
+            CompletableFuture<Block> future = new CompletableFuture<>();
+            future.completeExceptionally(new ClosedException());
+            return future;
+        }
+        Want want = addWant(closeable, cid);
+        trigger();
+        return want.future;
+    }
+
+    public void want(@NonNull Closeable closeable, @NonNull List<Cid> cids) {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        for (Cid cid : cids) {
+            addWant(closeable, cid);
+        }
+        trigger();
+    }
+
+    @NonNull
+    private Want addWant(@NonNull Closeable closeable, @NonNull Cid cid) {
+        // atomic, so that a want is never dropped while a new closeable is added
+        return wants.compute(cid, (key, value) -> {
+            Want want = value != null ? value : new Want();
+            want.closeables.add(closeable);
+            return want;
+        });
+    }
+
+    public boolean isWanted(@NonNull Cid cid) {
+        return wants.containsKey(cid);
+    }
+
+    public int getWantSize() {
+        return wants.size();
+    }
+
+    public void haveReceived(@NonNull QuicConnection conn, @NonNull List<Cid> cids) {
+        boolean changed = false;
+        for (Cid cid : cids) {
+            Want want = wants.get(cid);
+            if (want != null) {
+                want.haves.add(conn);
+                want.hasHaves = true;
+                changed = true;
+            }
+        }
+        if (changed) {
+            trigger();
+        }
+    }
+
+    public void blockReceived(@NonNull QuicConnection conn, @NonNull Block block) {
+        Want want = wants.remove(block.getCid());
+        PeerId peerId = bitSwapManager.getPeerId(conn);
+        if (peerId != null) {
+            long latency = -1;
+            if (want != null && want.requested == conn) {
+                latency = System.currentTimeMillis() - want.requestedAt;
+            }
+            bitSwapManager.getLedger().blockReceived(peerId, block.getRawData().length, latency);
+        }
+        if (want != null) {
+            want.future.complete(block);
+        }
+    }
+
+    // a new peer is available (it will be asked for all outstanding wants)
+    public void peerAdded() {
+        trigger();
+    }
+
+    public void reset() {
+        for (Cid cid : wants.keySet()) {
+            Want want = wants.remove(cid);
+            if (want != null) {
+                want.future.cancel(true);
+            }
+        }
+    }
+
+    // cancels all outstanding wants and stops the scheduler thread (not reversible)
+    public void shutdown() {
+        scheduler.shutdownNow();
+        reset();
+    }
+
+    private void trigger() {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        if (triggered.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::process);
+            } catch (RejectedExecutionException ignore) {
+                // shutdown in between
+            }
+        }
+    }
+
+    private void tick() {
+        if (!wants.isEmpty()) {
+            trigger();
+        }
+    }
+
+    private void process() {
+        triggered.set(false);
+        try {
+            List<QuicConnection> conns = bitSwapManager.getRankedConnections();
+            Map<QuicConnection, List<Cid>> haveMessages = new HashMap<>();
+            Map<QuicConnection, List<Cid>> wantMessages = new HashMap<>();
+            long now = System.currentTimeMillis();
+
+            for (Map.Entry<Cid, Want> entry : wants.entrySet()) {
+                Cid cid = entry.getKey();
+                Want want = entry.getValue();
+
+                // wants which are waited for are added again by the waiting callers,
+                // which also means that the peers are asked again
+                Want current = wants.computeIfPresent(cid, (key, value) ->
+                        value.future.isDone() || value.isClosed() ||
+                                (now - value.created) > IPFS.BITSWAP_WANT_TIMEOUT ? null : value);
+                if (current == null) {
+                    want.future.cancel(true);
+                    continue;
+                }
+
+                // want-have to the best ranked peers, which were not asked yet, as long
+                // as no peer answered with HAVE, more peers are asked over time
+                int limit = IPFS.BITSWAP_WANT_HAVE_PEERS;
+                if (!want.hasHaves) {
+                    limit = limit * (1 + (int) ((now - want.created) / IPFS.WANTS_WAIT_TIMEOUT));
+                }
+                for (int i = 0; i < Math.min(limit, conns.size()); i++) {
+                    QuicConnection conn = conns.get(i);
+                    if (want.asked.add(conn)) {
+                        haveMessages.computeIfAbsent(conn, (key) -> new ArrayList<>()).add(cid);
+                    }
+                }
+
+                // the pending want-block timed out
+                if (want.requested != null &&
+                        (now - want.requestedAt) > IPFS.WANTS_WAIT_TIMEOUT) {
+                    PeerId peerId = bitSwapManager.getPeerId(want.requested);
+                    if (peerId != null) {
+                        bitSwapManager.getLedger().timeout(peerId);
+                    }
+                    want.requested = null;
+                }
+
+                // want-block to the best peer which answered with HAVE
+                if (want.requested == null) {
+                    QuicConnection conn = bestHave(want, conns);
+                    if (conn != null) {
+                        want.requested = conn;
+                        want.requestedAt = now;
+                        PeerId peerId = bitSwapManager.getPeerId(conn);
+                        if (peerId != null) {
+                            bitSwapManager.getLedger().wantBlockSent(peerId);
+                        }
+                        wantMessages.computeIfAbsent(conn, (key) -> new ArrayList<>()).add(cid);
+                    }
+                }
+            }
+
+            for (Map.Entry<QuicConnection, List<Cid>> entry : haveMessages.entrySet()) {
+                for (List<Cid> cids : partition(entry.getValue())) {
+                    bitSwapManager.runHaveMessage(entry.getKey(), cids);
+                }
+            }
+            for (Map.Entry<QuicConnection, List<Cid>> entry : wantMessages.entrySet()) {
+                for (List<Cid> cids : partition(entry.getValue())) {
+                    bitSwapManager.runWantsMessage(entry.getKey(), cids);
+                }
+            }
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
+    }
+
+    // the peer with the best rank, which answered with HAVE (peers which are not connected
+    // anymore are ranked last)
+    @Nullable
+    private static QuicConnection bestHave(@NonNull Want want,
+                                           @NonNull List<QuicConnection> conns) {
+        QuicConnection best = null;
+        int bestRank = Integer.MAX_VALUE;
+        for (QuicConnection conn : want.haves) {
+            int rank = conns.indexOf(conn);
+            if (rank < 0) {
+                rank = conns.size();
+            }
+            if (best == null || rank < bestRank) {
+                best = conn;
+                bestRank = rank;
+            }
+        }
+        if (best != null) {
+            want.haves.remove(best);
+        }
+        return best;
+    }
+
+    @NonNull
+    private static List<List<Cid>> partition(@NonNull List<Cid> cids) {
+        List<List<Cid>> result = new ArrayList<>();
+        for (int i = 0; i < cids.size(); i += IPFS.BITSWAP_SESSION_BATCH) {
+            result.add(cids.subList(i, Math.min(cids.size(), i + IPFS.BITSWAP_SESSION_BATCH)));
+        }
+        return result;
+    }
+
+    private static class Want {
+        final CompletableFuture<Block> future = new CompletableFuture<>();
+        final ConcurrentLinkedQueue<Closeable> closeables = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedDeque<QuicConnection> haves = new ConcurrentLinkedDeque<>();
+        final Set<QuicConnection> asked = ConcurrentHashMap.newKeySet();
+        final long created = System.currentTimeMillis();
+        volatile boolean hasHaves = false;
+        volatile QuicConnection requested = null;
+        volatile long requestedAt = 0L;
+
+        // a want is dropped, when nobody is interested anymore
+        boolean isClosed() {
+            closeables.removeIf(Closeable::isClosed);
+            return closeables.isEmpty();
+        }
+    }
+}
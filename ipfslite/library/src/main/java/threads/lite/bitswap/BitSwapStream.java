@@ -0,0 +1,235 @@
+package threads.lite.bitswap;
+
+import androidx.annotation.NonNull;
+
+import net.luminis.quic.QuicConnection;
+import net.luminis.quic.QuicStream;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import threads.lite.IPFS;
+import threads.lite.LogUtils;
+import threads.lite.cid.Cid;
+import threads.lite.core.Scheduler;
+import threads.lite.format.Block;
+import threads.lite.utils.DataHandler;
+import threads.lite.utils.ReaderHandler;
+
+/**
+ * Long-lived outbound bitswap stream of a connection. The protocol is negotiated once, when
+ * the stream is opened, afterwards the messages are written as length-prefixed messages onto
+ * the same stream. Messages which are queued within {@link IPFS#BITSWAP_COALESCE_WINDOW} are
+ * merged into one message (as long as the merged message stays below
+ * {@link IPFS#MESSAGE_SIZE_MAX}).
+ * <p>
+ * When the stream fails, it is closed and a new stream is opened by the next message.
+ */
+public class BitSwapStream {
+    private static final String TAG = BitSwapStream.class.getSimpleName();
+
+    @NonNull
+    private final QuicConnection conn;
+    @NonNull
+    private final Consumer<BitSwapMessage> consumer;
+    private final CompletableFuture<OutputStream> negotiated = new CompletableFuture<>();
+    private final List<BitSwapMessage> pending = new ArrayList<>();
+    private boolean scheduled = false;
+    private volatile boolean closed = false;
+
+    private BitSwapStream(@NonNull QuicConnection conn,
+                          @NonNull Consumer<BitSwapMessage> consumer) {
+        this.conn = conn;
+        this.consumer = consumer;
+    }
+
+    @NonNull
+    public static BitSwapStream createBitSwapStream(@NonNull QuicConnection conn,
+                                                    @NonNull Consumer<BitSwapMessage> consumer) {
+        BitSwapStream stream = new BitSwapStream(conn, consumer);
+        stream.open();
+        return stream;
+    }
+
+    private void open() {
+        try {
+            QuicStream quicStream = conn.createStream(true,
+                    IPFS.CREATE_STREAM_TIMEOUT, TimeUnit.SECONDS);
+
+            OutputStream outputStream = quicStream.getOutputStream();
+            outputStream.write(DataHandler.writeToken(
+                    IPFS.STREAM_PROTOCOL, IPFS.BITSWAP_PROTOCOL));
+
+            ReaderHandler.reading(quicStream,
+                    (token) -> {
+                        if (!Arrays.asList(IPFS.STREAM_PROTOCOL, IPFS.BITSWAP_PROTOCOL)
+                                .contains(token)) {
+                            fail(new Exception("Token " + token + " not supported"));
+                            return;
+                        }
+                        if (Objects.equals(token, IPFS.BITSWAP_PROTOCOL)) {
+                            negotiated.complete(outputStream);
+                        }
+                    }, (data) -> {
+                        try {
+                            consumer.accept(BitSwapMessage.fromData(data));
+                        } catch (Throwable throwable) {
+                            LogUtils.error(TAG, throwable);
+                        }
+                    }, (fin) -> fail(new Exception("Stream finished")),
+                    this::fail);
+        } catch (Throwable throwable) {
+            fail(throwable);
+        }
+    }
+
+    private void fail(@NonNull Throwable throwable) {
+        if (!closed) {
+            LogUtils.debug(TAG, "Stream failed " + throwable.getClass().getSimpleName() +
+                    " : " + throwable.getMessage());
+        }
+        close();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void close() {
+        closed = true;
+        if (!negotiated.completeExceptionally(new Exception("Stream closed"))) {
+            try {
+                negotiated.getNow(null).close();
+            } catch (Throwable ignore) {
+                // ignore
+            }
+        }
+        synchronized (pending) {
+            pending.clear();
+        }
+    }
+
+    // the message is queued and written, together with the other messages of the window
+    public void writeMessage(@NonNull BitSwapMessage message) {
+        if (closed) {
+            throw new IllegalStateException("Stream closed");
+        }
+        synchronized (pending) {
+            pending.add(message);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        Scheduler.getInstance().schedule(Scheduler.Lane.BITSWAP, this::flush,
+                IPFS.BITSWAP_COALESCE_WINDOW, TimeUnit.MILLISECONDS);
+    }
+
+    // the message is written directly (without waiting for the window of other messages),
+    // returns when the message is written to the stream
+    public void writeMessageNow(@NonNull BitSwapMessage message) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("Stream closed");
+        }
+        try {
+            write(Collections.singletonList(message));
+        } catch (Throwable throwable) {
+            fail(throwable);
+            throw throwable;
+        }
+    }
+
+    private void write(@NonNull List<BitSwapMessage> messages) throws Exception {
+        OutputStream outputStream = negotiated.get(
+                IPFS.CREATE_STREAM_TIMEOUT, TimeUnit.SECONDS);
+
+        // the messages are written in order, the stream is not used concurrently
+        synchronized (negotiated) {
+            for (BitSwapMessage message : messages) {
+                outputStream.write(DataHandler.encode(message.ToProtoV1()));
+            }
+            outputStream.flush();
+        }
+    }
+
+    // only one flush is active at a time (scheduled stays set until the pending messages are
+    // written), so that the messages are never written in reverse order
+    private void flush() {
+        while (true) {
+            List<BitSwapMessage> messages;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    scheduled = false;
+                    return;
+                }
+                messages = new ArrayList<>(pending);
+                pending.clear();
+            }
+            try {
+                write(coalesce(messages));
+            } catch (Throwable throwable) {
+                synchronized (pending) {
+                    scheduled = false;
+                }
+                fail(throwable);
+                return;
+            }
+        }
+    }
+
+    @NonNull
+    private static List<BitSwapMessage> coalesce(@NonNull List<BitSwapMessage> messages) {
+        List<BitSwapMessage> result = new ArrayList<>();
+        BitSwapMessage merged = null;
+        int size = 0;
+        for (BitSwapMessage message : messages) {
+            int messageSize = message.Size();
+            if (merged == null || size + messageSize > IPFS.MESSAGE_SIZE_MAX) {
+                merged = BitSwapMessage.New(false);
+                result.add(merged);
+                size = 0;
+            }
+            merge(merged, message);
+            size += messageSize;
+        }
+        return result;
+    }
+
+    // the entry of the later message wins, a want replaces an earlier cancel and a cancel
+    // replaces an earlier want (AddEntry only turns a want into a cancel, never back)
+    private static void merge(@NonNull BitSwapMessage target, @NonNull BitSwapMessage source) {
+        Map<Cid, BitSwapMessage.Entry> entries = new HashMap<>();
+        for (BitSwapMessage.Entry entry : target.Wantlist()) {
+            entries.put(entry.Cid, entry);
+        }
+        for (BitSwapMessage.Entry entry : source.Wantlist()) {
+            BitSwapMessage.Entry existing = entries.get(entry.Cid);
+            if (entry.Cancel) {
+                target.Remove(entry.Cid);
+                target.Cancel(entry.Cid);
+            } else {
+                if (existing != null && existing.Cancel) {
+                    target.Remove(entry.Cid);
+                }
+                target.AddEntry(entry.Cid, entry.Priority, entry.WantType, entry.SendDontHave);
+            }
+        }
+        for (BitSwapMessage.BlockPresence presence : source.BlockPresences()) {
+            target.AddBlockPresence(presence.Cid, presence.Type);
+        }
+        for (Block block : source.Blocks()) {
+            target.AddBlock(block);
+        }
+        // the latest message has the current number of pending bytes
+        target.SetPendingBytes(source.PendingBytes());
+    }
+}
@@ -2,58 +2,113 @@ package threads.lite.bitswap;
 
 import androidx.annotation.NonNull;
 
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import threads.lite.IPFS;
 import threads.lite.LogUtils;
 import threads.lite.cid.Cid;
 import threads.lite.core.Closeable;
+import threads.lite.core.ClosedException;
+import threads.lite.format.Block;
 
+/**
+ * Registry of the callers which are waiting for a block. The futures of the waiting callers
+ * are completed directly, when the block arrives ({@link #release(Block)}). A closed
+ * {@link Closeable} completes the future of the caller with a {@link ClosedException}, all
+ * closeables are checked by one shared watcher, no thread is created for a single wait.
+ * The watcher is stopped by {@link #shutdown()}, which fails all waiting and all later callers.
+ */
 public class Blocker {
     private static final String TAG = Blocker.class.getSimpleName();
 
+    private final ConcurrentHashMap<Cid, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor watcher = new ScheduledThreadPoolExecutor(1);
+    private volatile boolean shutdown = false;
 
-    public void subscribe(@NonNull Cid cid, @NonNull Closeable closeable) {
-
-        String key = "B" + cid.String();
-        long start = System.currentTimeMillis();
-        synchronized (key.intern()) {
-            try {
-                // Calling wait() will block this thread until another thread
-                // calls notify() on the object.
-                LogUtils.verbose(TAG, "Lock " + cid.String());
-                Thread thread = new Thread(() -> {
-                    try {
-                        while (true) {
-                            if (closeable.isClosed()) {
-                                release(cid);
-                                break;
-                            }
-                            Thread.sleep(25);
-                        }
-                    } catch (InterruptedException e) {
-                        release(cid);
-                    }
-                });
-                thread.start();
-                key.intern().wait(IPFS.WANTS_WAIT_TIMEOUT);
-                thread.interrupt();
-            } catch (Throwable throwable) {
-                LogUtils.error(TAG, throwable);
-            } finally {
-                LogUtils.verbose(TAG, "Lock Finish " + cid.String() +
-                        " took " + (System.currentTimeMillis() - start));
+    public Blocker() {
+        watcher.scheduleWithFixedDelay(this::checkClosed, IPFS.BLOCKER_CLOSED_CHECK,
+                IPFS.BLOCKER_CLOSED_CHECK, TimeUnit.MILLISECONDS);
+    }
+
+    @NonNull
+    public CompletableFuture<Block> subscribe(@NonNull Cid cid, @NonNull Closeable closeable) {
+        Subscription subscription = new Subscription(closeable);
+        if (shutdown) {
+            subscription.future.completeExceptionally(new ClosedException());
+            return subscription.future;
+        }
+        subscriptions.compute(cid, (key, value) -> {
+            Set<Subscription> set = value != null ? value : ConcurrentHashMap.newKeySet();
+            set.add(subscription);
+            return set;
+        });
+        // the subscription is removed, however the future is completed
+        subscription.future.whenComplete((block, throwable) -> unsubscribe(cid, subscription));
+        if (shutdown) {
+            // shutdown in between, the subscription might have been missed
+            subscription.future.completeExceptionally(new ClosedException());
+        }
+        return subscription.future;
+    }
+
+    private void unsubscribe(@NonNull Cid cid, @NonNull Subscription subscription) {
+        subscriptions.computeIfPresent(cid, (key, value) -> {
+            value.remove(subscription);
+            return value.isEmpty() ? null : value;
+        });
+    }
+
+    public void release(@NonNull Block block) {
+        Set<Subscription> set = subscriptions.remove(block.getCid());
+        if (set != null) {
+            for (Subscription subscription : set) {
+                subscription.future.complete(block);
             }
         }
     }
 
-    public void release(@NonNull Cid cid) {
+    public int getSize() {
+        return subscriptions.size();
+    }
+
+    // stops the watcher, all waiting and all later callers get a ClosedException (not reversible)
+    public void shutdown() {
+        shutdown = true;
+        watcher.shutdownNow();
+        for (Cid cid : subscriptions.keySet()) {
+            Set<Subscription> set = subscriptions.remove(cid);
+            if (set != null) {
+                for (Subscription subscription : set) {
+                    subscription.future.completeExceptionally(new ClosedException());
+                }
+            }
+        }
+    }
+
+    private void checkClosed() {
         try {
-            String key = "B" + cid.String();
-            synchronized (key.intern()) {
-                key.intern().notify();
+            for (Set<Subscription> set : subscriptions.values()) {
+                for (Subscription subscription : set) {
+                    if (subscription.closeable.isClosed()) {
+                        subscription.future.completeExceptionally(new ClosedException());
+                    }
+                }
             }
-        } catch (Throwable ignore) {
-            // ignore
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
         }
     }
 
+    private static class Subscription {
+        final CompletableFuture<Block> future = new CompletableFuture<>();
+        final Closeable closeable;
+
+        Subscription(@NonNull Closeable closeable) {
+            this.closeable = closeable;
+        }
+    }
 }
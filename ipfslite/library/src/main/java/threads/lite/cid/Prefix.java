@@ -3,6 +3,7 @@ package threads.lite.cid;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 
 public class Prefix implements Builder {
@@ -44,6 +45,11 @@ public class Prefix implements Builder {
 
     @Override
     public Cid sum(byte[] data) {
+        return sum(ByteBuffer.wrap(data));
+    }
+
+    // the data is hashed in place (no copy of the buffer)
+    public Cid sum(ByteBuffer data) {
 
 
         if (Version == 0 && (MhType != Multihash.Type.sha2_256.index) ||
@@ -57,7 +63,8 @@ public class Prefix implements Builder {
         try {
 
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = Cid.encode(digest.digest(data), MhType);
+            digest.update(data);
+            byte[] hash = Cid.encode(digest.digest(), MhType);
 
             switch ((int) Version) {
                 case 0:
@@ -0,0 +1,248 @@
+package threads.lite.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import threads.lite.IPFS;
+import threads.lite.LogUtils;
+
+/**
+ * Shared executor for the network fan-out (bitswap messages, dials, DHT queries, etc.) and
+ * the parallel hashing of blocks.
+ * <p>
+ * All tasks run on one shared thread pool, but each subsystem ({@link Lane}) has its own
+ * concurrency limit. Tasks above the limit of a lane wait in the queue of the lane, so that
+ * one busy subsystem can not starve the others. The number of threads which execute tasks is
+ * bounded by the sum of the lane limits; the pool has no maximum size of its own, so that a
+ * lane below its limit always gets a thread (tasks of one lane wait for tasks of other lanes,
+ * e.g. connect waits for dials, and a thread which has just left its lane is only available
+ * again, when it is back in the pool).
+ * <p>
+ * After {@link #shutdown()}, the next {@link #getInstance()} creates a new scheduler, and tasks
+ * which are still passed to the old one run on the new one.
+ */
+public class Scheduler {
+    private static final String TAG = Scheduler.class.getSimpleName();
+    private static volatile Scheduler INSTANCE = null;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+    private final EnumMap<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+    private volatile boolean closed = false;
+
+    private Scheduler() {
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new LaneState(lane.getLimit()));
+        }
+        executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), Executors.defaultThreadFactory());
+    }
+
+    @NonNull
+    public static Scheduler getInstance() {
+        Scheduler scheduler = INSTANCE;
+        if (scheduler == null || scheduler.closed) {
+            synchronized (Scheduler.class) {
+                if (INSTANCE == null || INSTANCE.closed) {
+                    INSTANCE = new Scheduler();
+                }
+                scheduler = INSTANCE;
+            }
+        }
+        return scheduler;
+    }
+
+    // stops all running and queued tasks, a later getInstance creates a new scheduler
+    public static void shutdown() {
+        synchronized (Scheduler.class) {
+            if (INSTANCE != null) {
+                INSTANCE.close();
+                INSTANCE = null;
+            }
+        }
+    }
+
+    @NonNull
+    public Future<?> execute(@NonNull Lane lane, @NonNull Runnable runnable) {
+        return submit(lane, Executors.callable(runnable));
+    }
+
+    @NonNull
+    public <T> Future<T> submit(@NonNull Lane lane, @NonNull Callable<T> callable) {
+        if (closed) {
+            // the caller still holds a scheduler which is shut down
+            return getInstance().submit(lane, callable);
+        }
+        FutureTask<T> task = new FutureTask<>(callable);
+        LaneState state = Objects.requireNonNull(lanes.get(lane));
+        boolean start = false;
+        synchronized (state) {
+            if (state.active < state.limit) {
+                state.active++;
+                start = true;
+            } else {
+                state.queue.add(task);
+                state.maxQueueSize = Math.max(state.maxQueueSize, state.queue.size());
+            }
+        }
+        if (start) {
+            try {
+                run(state, task);
+            } catch (RejectedExecutionException exception) {
+                // shutdown in between
+                return getInstance().submit(lane, callable);
+            }
+        }
+        return task;
+    }
+
+    public void schedule(@NonNull Lane lane, @NonNull Runnable runnable,
+                         long delay, @NonNull TimeUnit delayUnit) {
+        if (closed) {
+            getInstance().schedule(lane, runnable, delay, delayUnit);
+            return;
+        }
+        try {
+            timer.schedule(() -> {
+                try {
+                    execute(lane, runnable);
+                } catch (Throwable throwable) {
+                    LogUtils.error(TAG, throwable);
+                }
+            }, delay, delayUnit);
+        } catch (RejectedExecutionException exception) {
+            // shutdown in between
+            getInstance().schedule(lane, runnable, delay, delayUnit);
+        }
+    }
+
+    private void run(@NonNull LaneState state, @NonNull Runnable task) {
+        try {
+            executor.execute(() -> {
+                Runnable next = task;
+                // the thread keeps draining the queue of the lane
+                while (next != null) {
+                    next.run();
+                    // clears the interrupt of a cancelled task, before the next one is run
+                    //noinspection ResultOfMethodCallIgnored
+                    Thread.interrupted();
+                    synchronized (state) {
+                        state.completed++;
+                        next = state.queue.poll();
+                        if (next == null) {
+                            state.active--;
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            // only after shutdown
+            synchronized (state) {
+                state.active--;
+            }
+            throw exception;
+        }
+    }
+
+    private void close() {
+        closed = true;
+        try {
+            timer.shutdownNow();
+            executor.shutdownNow();
+            for (LaneState state : lanes.values()) {
+                synchronized (state) {
+                    for (FutureTask<?> task : state.queue) {
+                        task.cancel(true);
+                    }
+                    state.queue.clear();
+                }
+            }
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
+    }
+
+    // number of tasks of the lane, which wait for execution
+    public int getQueueSize(@NonNull Lane lane) {
+        LaneState state = Objects.requireNonNull(lanes.get(lane));
+        synchronized (state) {
+            return state.queue.size();
+        }
+    }
+
+    // highest number of waiting tasks of the lane so far
+    public int getMaxQueueSize(@NonNull Lane lane) {
+        LaneState state = Objects.requireNonNull(lanes.get(lane));
+        synchronized (state) {
+            return state.maxQueueSize;
+        }
+    }
+
+    // number of tasks of the lane, which are currently executed
+    public int getActiveCount(@NonNull Lane lane) {
+        LaneState state = Objects.requireNonNull(lanes.get(lane));
+        synchronized (state) {
+            return state.active;
+        }
+    }
+
+    public long getCompletedCount(@NonNull Lane lane) {
+        LaneState state = Objects.requireNonNull(lanes.get(lane));
+        synchronized (state) {
+            return state.completed;
+        }
+    }
+
+    public int getPoolSize() {
+        return executor.getPoolSize();
+    }
+
+    public enum Lane {
+        BITSWAP(IPFS.SCHEDULER_BITSWAP_LIMIT),
+        SERVE(IPFS.SCHEDULER_SERVE_LIMIT),
+        CONNECT(IPFS.SCHEDULER_CONNECT_LIMIT),
+        DIAL(IPFS.SCHEDULER_DIAL_LIMIT),
+        HOLEPUNCH(IPFS.SCHEDULER_HOLEPUNCH_LIMIT),
+        DHT(IPFS.SCHEDULER_DHT_LIMIT),
+        LOOKUP(IPFS.SCHEDULER_LOOKUP_LIMIT),
+        RELAY(IPFS.SCHEDULER_RELAY_LIMIT),
+        PUSH(IPFS.SCHEDULER_PUSH_LIMIT),
+        VERIFY(IPFS.SCHEDULER_VERIFY_LIMIT),
+        IMPORT(IPFS.SCHEDULER_IMPORT_LIMIT),
+        STORAGE(IPFS.SCHEDULER_STORAGE_LIMIT);
+
+        private final int limit;
+
+        Lane(int limit) {
+            this.limit = limit;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+    }
+
+    private static class LaneState {
+        final int limit;
+        final ArrayDeque<FutureTask<?>> queue = new ArrayDeque<>();
+        int active = 0;
+        int maxQueueSize = 0;
+        long completed = 0L;
+
+        LaneState(int limit) {
+            this.limit = limit;
+        }
+    }
+}
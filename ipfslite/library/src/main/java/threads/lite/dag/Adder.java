@@ -3,13 +3,13 @@ package threads.lite.dag;
 
 import androidx.annotation.NonNull;
 
-import java.util.Arrays;
 import java.util.Objects;
 
-import threads.lite.IPFS;
 import threads.lite.cid.Builder;
+import threads.lite.core.Closeable;
+import threads.lite.core.ClosedException;
 import threads.lite.format.Node;
-import threads.lite.format.Reader;
+import threads.lite.utils.Chunker;
 import threads.lite.utils.Splitter;
 import threads.lite.utils.WriterStream;
 
@@ -18,6 +18,9 @@ public class Adder {
     private final DagService dagService;
     public boolean RawLeaves;
     public Builder builder;
+    public Chunker chunker = Chunker.createDefaultChunker();
+    // balanced layout (shallow, fast seeks), otherwise the trickle layout
+    public boolean balanced = false;
 
     private Adder(@NonNull DagService dagService) {
         this.dagService = dagService;
@@ -29,30 +32,35 @@ public class Adder {
 
 
     public Node createEmptyDir() {
-        Directory dir = Directory.createDirectory();
+        Directory dir = Directory.createDirectory(dagService);
         dir.setCidBuilder(builder);
         Node fnd = dir.getNode();
         dagService.add(fnd);
+        dagService.flush();
         return fnd;
     }
 
-    public Node addLinkToDir(@NonNull Node dirNode, @NonNull String name, @NonNull Node link) {
-        Directory dir = Directory.createDirectoryFromNode(dirNode);
+    public Node addLinkToDir(@NonNull Closeable closeable, @NonNull Node dirNode,
+                             @NonNull String name, @NonNull Node link) throws ClosedException {
+        Directory dir = Directory.createDirectoryFromNode(closeable, dagService, dirNode);
         Objects.requireNonNull(dir);
         dir.setCidBuilder(builder);
         dir.addChild(name, link);
         Node fnd = dir.getNode();
         dagService.add(fnd);
+        dagService.flush();
         return fnd;
     }
 
-    public Node removeChild(@NonNull Node dirNode, @NonNull String name) {
-        Directory dir = Directory.createDirectoryFromNode(dirNode);
+    public Node removeChild(@NonNull Closeable closeable, @NonNull Node dirNode,
+                            @NonNull String name) throws ClosedException {
+        Directory dir = Directory.createDirectoryFromNode(closeable, dagService, dirNode);
         Objects.requireNonNull(dir);
         dir.setCidBuilder(builder);
         dir.removeChild(name);
         Node fnd = dir.getNode();
         dagService.add(fnd);
+        dagService.flush();
         return fnd;
     }
 
@@ -60,38 +68,18 @@ public class Adder {
     @NonNull
     public Node addReader(@NonNull final WriterStream reader) {
 
-        Splitter splitter = new Splitter() {
-
-            @Override
-            public Reader reader() {
-                return reader;
-            }
-
-            @Override
-            public byte[] nextBytes() {
-
-                int size = IPFS.CHUNK_SIZE;
-                byte[] buf = new byte[size];
-                int read = reader.read(buf);
-                if (read < 0) {
-                    return null;
-                } else if (read < size) {
-                    return Arrays.copyOfRange(buf, 0, read);
-                } else {
-                    return buf;
-                }
-            }
-
-            @Override
-            public boolean done() {
-                return reader.done();
-            }
-        };
+        Splitter splitter = chunker.createSplitter(reader);
 
         DagBuilderHelper db = new DagBuilderHelper(
                 dagService, builder, splitter, RawLeaves);
 
-        return Trickle.Layout(db);
+        try {
+            Node root = balanced ? Balanced.Layout(db) : Trickle.Layout(db);
+            db.flush();
+            return root;
+        } finally {
+            db.close();
+        }
     }
 
 }
@@ -0,0 +1,75 @@
+package threads.lite.dag;
+
+import android.util.Pair;
+
+import androidx.annotation.NonNull;
+
+import threads.lite.IPFS;
+import threads.lite.format.Node;
+
+/**
+ * Balanced layout, every internal node has up to {@link IPFS#LINKS_PER_BLOCK} children and
+ * all leaves have the same depth. The depth grows with log(n) of the number of leaves,
+ * so a seek to a random offset needs only a few fetches (one per level), where the
+ * trickle layout is much deeper for large files.
+ */
+public class Balanced {
+
+    public static Node Layout(@NonNull DagBuilderHelper db) {
+        if (db.isEnd()) {
+            // No data, return just an empty node
+            Node root = db.createFSNodeOverDag(unixfs.pb.Unixfs.Data.DataType.File).commit();
+            db.add(root);
+            return root;
+        }
+
+        // The first root is a single leaf node with data
+        Pair<Node, Integer> leaf = db.createLeafDataNode(unixfs.pb.Unixfs.Data.DataType.File);
+        if (leaf == null) {
+            throw new RuntimeException("no data");
+        }
+        Node root = leaf.first;
+        long fileSize = leaf.second;
+
+        // Each time the tree is full, the old root becomes the first child of a new root
+        // which is one level deeper
+        for (int depth = 1; !db.isEnd(); depth++) {
+            DagBuilderHelper.FSNodeOverDag newRoot =
+                    db.createFSNodeOverDag(unixfs.pb.Unixfs.Data.DataType.File);
+            newRoot.addChild(root, fileSize, db);
+
+            Pair<Node, Long> result = fillNodeRec(db, newRoot, depth);
+            root = result.first;
+            fileSize = result.second;
+        }
+        db.add(root);
+        return root;
+    }
+
+    private static Pair<Node, Long> fillNodeRec(@NonNull DagBuilderHelper db,
+                                                @NonNull DagBuilderHelper.FSNodeOverDag node,
+                                                int depth) {
+        if (depth < 1) {
+            throw new RuntimeException("attempt to fill a node at depth < 1");
+        }
+
+        while (node.numChildren() < IPFS.LINKS_PER_BLOCK && !db.isEnd()) {
+            if (depth == 1) {
+                Pair<Node, Integer> leaf =
+                        db.createLeafDataNode(unixfs.pb.Unixfs.Data.DataType.Raw);
+                if (leaf == null) {
+                    break;
+                }
+                node.addChild(leaf.first, leaf.second, db);
+            } else {
+                Pair<Node, Long> result = fillNodeRec(db,
+                        db.createFSNodeOverDag(unixfs.pb.Unixfs.Data.DataType.File),
+                        depth - 1);
+                node.addChild(result.first, result.second, db);
+            }
+        }
+        Node filledNode = node.commit();
+
+        return Pair.create(filledNode, node.fileSize());
+    }
+}
@@ -16,5 +16,7 @@ public interface BlockGetter {
 
     void addBlock(@NonNull Block block);
 
+    void addBlocks(@NonNull List<Block> blocks);
+
     void preload(@NonNull Closeable closeable, @NonNull List<Cid> cids);
 }
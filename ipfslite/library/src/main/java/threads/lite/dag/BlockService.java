@@ -12,13 +12,24 @@ import threads.lite.core.Closeable;
 import threads.lite.core.ClosedException;
 import threads.lite.format.Block;
 import threads.lite.format.BlockStore;
+import threads.lite.format.CachedBlockStore;
+import threads.lite.format.NodeCache;
 
 public interface BlockService extends BlockGetter {
 
 
     static BlockService createBlockService(@NonNull final BlockStore bs, @NonNull final Exchange rem) {
+        // decoded nodes are shared by all dag services of a cached block store
+        final NodeCache nodeCache = bs instanceof CachedBlockStore ?
+                ((CachedBlockStore) bs).getNodeCache() : null;
         return new BlockService() {
 
+            @Override
+            @Nullable
+            public NodeCache getNodeCache() {
+                return nodeCache;
+            }
+
             @Override
             @Nullable
             public Block getBlock(@NonNull Closeable closeable, @NonNull Cid cid, boolean root) throws ClosedException {
@@ -34,6 +45,11 @@ public interface BlockService extends BlockGetter {
                 bs.putBlock(block);
             }
 
+            @Override
+            public void addBlocks(@NonNull List<Block> blocks) {
+                bs.putBlocks(blocks);
+            }
+
             @Override
             public void preload(@NonNull Closeable closeable, @NonNull List<Cid> cids) {
                 List<Cid> preload = new ArrayList<>();
@@ -50,5 +66,7 @@ public interface BlockService extends BlockGetter {
         };
     }
 
+    @Nullable
+    NodeCache getNodeCache();
 
 }
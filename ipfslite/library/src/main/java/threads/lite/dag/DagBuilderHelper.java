@@ -5,19 +5,39 @@ import android.util.Pair;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 import threads.lite.IPFS;
 import threads.lite.cid.Builder;
+import threads.lite.core.Scheduler;
 import threads.lite.format.Node;
 import threads.lite.format.ProtoNode;
 import threads.lite.format.RawNode;
 import threads.lite.utils.Splitter;
 
 
+/**
+ * Creates the nodes of an import. The leaves are created in a pipeline: the data is read
+ * in order (by the caller), the leaves are encoded and hashed in parallel (scheduler lane
+ * IMPORT), and they are handed out in order again to the layout, which assembles the DAG.
+ * The pipeline keeps at most {@link IPFS#IMPORT_PIPELINE_SIZE} bytes of leaf data in flight
+ * (plus one leaf), independent of the chunk sizes of the splitter.
+ */
 public class DagBuilderHelper {
     private final DagService dagService;
     private final Builder builder;
     private final Splitter splitter;
     private final boolean rawLeaves;
+    // marks the end of the data in the pipeline
+    private static final Future<Leaf> END = CompletableFuture.completedFuture(null);
+    // leaves in read order
+    private final ArrayDeque<Future<Leaf>> leaves = new ArrayDeque<>();
+    private long inFlight = 0L; // bytes of the leaves in the pipeline
+    private boolean eof = false;
+    private boolean done = false;
 
 
     public DagBuilderHelper(@NonNull DagService dagService,
@@ -38,15 +58,73 @@ public class DagBuilderHelper {
     @Nullable
     public Pair<Node, Integer> createLeafDataNode(@NonNull unixfs.pb.Unixfs.Data.DataType dataType) {
 
-        byte[] fileData = nextBytes();
-        if (fileData != null) {
-            int dataSize = fileData.length;
+        fill();
+        Future<Leaf> future = leaves.poll();
+        if (future == null) {
+            return null;
+        }
+        try {
+            if (future == END) {
+                // the end of the data is reached (at the same point as a sequential read)
+                done = true;
+                return null;
+            }
+            Leaf leaf = future.get();
+            inFlight -= leaf.data.length;
+            Node node = leaf.node;
+            // the workers create leaves of type Raw (the common case)
+            if (!rawLeaves && dataType != unixfs.pb.Unixfs.Data.DataType.Raw) {
+                node = createLeafNode(leaf.data, dataType);
+            }
+            // the pipeline is only refilled on success, a failed import reads no more data
+            fill();
+            return Pair.create(node, leaf.data.length);
+        } catch (ExecutionException exception) {
+            close();
+            throw new RuntimeException(exception.getCause());
+        } catch (InterruptedException exception) {
+            close();
+            throw new RuntimeException(exception);
+        }
+    }
+
+    // look-ahead end of the data, unlike isDone, which is true after the end was read
+    public boolean isEnd() {
+        fill();
+        Future<Leaf> future = leaves.peek();
+        if (future == null) {
+            return isDone();
+        }
+        return future == END;
+    }
 
-            Node node = createLeafNode(fileData, dataType);
+    // reads the next chunks and submits them to the parallel workers
+    private void fill() {
+        while (!eof && inFlight < IPFS.IMPORT_PIPELINE_SIZE && !splitter.done()) {
+            byte[] fileData = nextBytes();
+            if (fileData == null) {
+                eof = true;
+                leaves.add(END);
+            } else {
+                inFlight += fileData.length;
+                leaves.add(Scheduler.getInstance().submit(Scheduler.Lane.IMPORT, () -> {
+                    Node node = createLeafNode(fileData,
+                            unixfs.pb.Unixfs.Data.DataType.Raw);
+                    // the node is encoded and hashed by the worker
+                    node.getCid();
+                    return new Leaf(fileData, node);
+                }));
+            }
+        }
+    }
 
-            return Pair.create(node, dataSize);
+    // cancels the leaves which are still in the pipeline
+    public void close() {
+        Future<Leaf> future;
+        while ((future = leaves.poll()) != null) {
+            future.cancel(true);
         }
-        return null;
+        inFlight = 0L;
     }
 
     private Node createLeafNode(byte[] data, @NonNull unixfs.pb.Unixfs.Data.DataType fsNodeType) {
@@ -88,8 +166,24 @@ public class DagBuilderHelper {
         dagService.add(node);
     }
 
+    public void flush() {
+        dagService.flush();
+    }
+
+    // same as the done state of a sequential read, the leaves read ahead by the
+    // pipeline are still outstanding
     public boolean isDone() {
-        return splitter.done();
+        return done || (leaves.isEmpty() && splitter.done());
+    }
+
+    private static class Leaf {
+        final byte[] data;
+        final Node node;
+
+        Leaf(@NonNull byte[] data, @NonNull Node node) {
+            this.data = data;
+            this.node = node;
+        }
     }
 
     public static class FSNodeOverDag {
@@ -6,15 +6,14 @@ import android.util.Pair;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import threads.lite.IPFS;
 import threads.lite.cid.Cid;
 import threads.lite.core.Closeable;
 import threads.lite.core.ClosedException;
@@ -36,7 +35,15 @@ public class DagReader {
     private final Visitor visitor;
     private final Walker dagWalker;
     private final NodeGetter nodeGetter;
-    private final Set<Cid> cids = new HashSet<>();
+    // leaves of the current read-ahead window, which are already requested
+    private final LinkedHashSet<Cid> cids = new LinkedHashSet<>();
+    private final ReadAhead readAhead = new ReadAhead();
+    private final Seeker seeker = new Seeker();
+    @Nullable
+    private Stack<Stage> ahead = null; // position of the read-ahead
+    private long issued = 0L; // leaves requested by the read-ahead
+    private long consumed = 0L; // leaves returned by the reader
+    private boolean exhausted = false;
 
     public DagReader(@NonNull Walker dagWalker, @NonNull NodeGetter nodeGetter, long size) {
         this.dagWalker = dagWalker;
@@ -79,11 +86,16 @@ public class DagReader {
         Pair<Stack<Stage>, Long> result = dagWalker.seek(closeable, offset);
         this.atomicLeft.set(result.second.intValue());
         this.visitor.reset(result.first);
+        // the read-ahead restarts at the new position
+        this.ahead = null;
+        this.readAhead.reset();
+        this.cids.clear();
     }
 
+    // the returned read-only buffer is a view of the block data,
+    // the data of the leaf nodes is not copied
     @Nullable
-    public byte[] loadNextData(@NonNull Closeable closeable) throws ClosedException {
-
+    public ByteBuffer loadNextBuffer(@NonNull Closeable closeable) throws ClosedException {
 
         int left = atomicLeft.getAndSet(0);
         if (left > 0) {
@@ -93,12 +105,36 @@ public class DagReader {
 
             if (node.getLinks().size() == 0) {
 
-                byte[] data = FSNode.readUnixFSNodeData(node);
-
-                return Arrays.copyOfRange(data, left, data.length);
+                ByteBuffer buffer = FSNode.readUnixFSNodeBuffer(node);
+                buffer.position(left);
+                return buffer.slice();
             }
         }
 
+        long start = System.nanoTime();
+        Node node = nextLeaf(closeable);
+        if (node == null) {
+            return null;
+        }
+        ByteBuffer buffer = FSNode.readUnixFSNodeBuffer(node);
+        readAhead.leafLoaded(buffer.remaining(), System.nanoTime() - start);
+        return buffer;
+    }
+
+    // copy of the data of loadNextBuffer
+    @Nullable
+    public byte[] loadNextData(@NonNull Closeable closeable) throws ClosedException {
+        ByteBuffer buffer = loadNextBuffer(closeable);
+        if (buffer == null) {
+            return null;
+        }
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    @Nullable
+    private Node nextLeaf(@NonNull Closeable closeable) throws ClosedException {
         while (true) {
             NavigableNode visitedNode = dagWalker.next(closeable, visitor);
             if (visitedNode == null) {
@@ -109,38 +145,59 @@ public class DagReader {
             if (node.getLinks().size() > 0) {
                 continue;
             }
-
-            return FSNode.readUnixFSNodeData(node);
+            consumed++;
+            return node;
         }
-
     }
 
+    // keeps the leaves of the read-ahead window in flight (the window is adapted to the
+    // observed stalls, see ReadAhead), the read-ahead continues where it stopped before
     public void preloadData(@NonNull Closeable closeable) throws ClosedException {
 
-        List<Cid> preloads = new ArrayList<>();
-        Seeker seeker = new Seeker();
-        Stack<Stage> stack = visitor.copy();
-        int runs = 0;
-
-        int min = (cids.size() / IPFS.PRELOAD) + IPFS.PRELOAD_DIST;
-
-        int maxRuns = Math.min(min, IPFS.PRELOAD);
+        // new position (start or seek), or the reader overtook the read-ahead
+        if (ahead == null || consumed > issued) {
+            ahead = visitor.copy();
+            issued = consumed;
+            exhausted = false;
+            cids.clear();
+        }
+        if (exhausted) {
+            return;
+        }
 
-        while (runs < maxRuns) {
-            Cid cid = seeker.next(closeable, stack);
+        List<Cid> preloads = new ArrayList<>();
+        int window = readAhead.getWindow();
+        while (issued - consumed < window) {
+            Cid cid = seeker.next(closeable, ahead);
             if (cid == null) {
+                exhausted = true;
                 break;
             }
-            if (!cids.contains(cid)) {
+            issued++;
+            if (cids.add(cid)) {
                 preloads.add(cid);
+                // only the window is remembered (the oldest leaves are already consumed)
+                Iterator<Cid> iterator = cids.iterator();
+                while (cids.size() > window && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
             }
-            runs++;
         }
 
-        if (preloads.size() >= IPFS.PRELOAD_DIST) {
-            cids.addAll(preloads);
+        if (!preloads.isEmpty()) {
             nodeGetter.preload(closeable, preloads);
         }
 
     }
+
+    // number of leaves which are requested ahead of the read position
+    public int getReadAheadWindow() {
+        return readAhead.getWindow();
+    }
+
+    // total time in ms the reader waited for leaves
+    public long getStallTime() {
+        return readAhead.getStallTime();
+    }
 }
@@ -3,6 +3,7 @@ package threads.lite.dag;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import threads.lite.cid.Cid;
@@ -11,24 +12,43 @@ import threads.lite.core.ClosedException;
 import threads.lite.format.Block;
 import threads.lite.format.Decoder;
 import threads.lite.format.Node;
+import threads.lite.format.NodeCache;
 import threads.lite.format.NodeAdder;
 import threads.lite.format.NodeGetter;
 
 public interface DagService extends NodeGetter, NodeAdder {
 
 
+    // decoded nodes are taken from the node cache of the block service (when available),
+    // repeated lookups of the same node skip the protobuf parsing
+    @Nullable
+    static Node getNode(@NonNull BlockService blockService, @NonNull Closeable closeable,
+                        @NonNull Cid cid, boolean root) throws ClosedException {
+        NodeCache nodeCache = blockService.getNodeCache();
+        if (nodeCache != null) {
+            Node node = nodeCache.get(cid);
+            if (node != null) {
+                return node;
+            }
+        }
+        Block b = blockService.getBlock(closeable, cid, root);
+        if (b == null) {
+            return null;
+        }
+        Node node = Decoder.Decode(b);
+        if (nodeCache != null) {
+            nodeCache.put(node);
+        }
+        return node;
+    }
+
     static DagService createDagService(@NonNull BlockService blockService) {
         return new DagService() {
 
             @Override
             @Nullable
             public Node getNode(@NonNull Closeable closeable, @NonNull Cid cid, boolean root) throws ClosedException {
-
-                Block b = blockService.getBlock(closeable, cid, root);
-                if (b == null) {
-                    return null;
-                }
-                return Decoder.Decode(b);
+                return DagService.getNode(blockService, closeable, cid, root);
             }
 
             @Override
@@ -39,8 +59,61 @@ public interface DagService extends NodeGetter, NodeAdder {
             public void add(@NonNull Node nd) {
                 blockService.addBlock(nd);
             }
+
+            @Override
+            public void flush() {
+                // nothing to do here, nodes are added directly
+            }
+        };
+    }
+
+    // Buffered mode of the dag service, which collects the added nodes and writes them
+    // in groups (single transaction) to the block service, as soon as the size of the
+    // collected nodes exceeds the given memory budget (in bytes).
+    // Note: the nodes are only visible to getNode after a flush, so the caller
+    // has to flush when the adding of nodes is done
+    static DagService createBufferedDagService(@NonNull BlockService blockService,
+                                               long memoryBudget) {
+        return new DagService() {
+            private final List<Block> buffer = new ArrayList<>();
+            private long bufferSize = 0;
+
+            @Override
+            @Nullable
+            public Node getNode(@NonNull Closeable closeable, @NonNull Cid cid, boolean root) throws ClosedException {
+                flush();
+                return DagService.getNode(blockService, closeable, cid, root);
+            }
+
+            @Override
+            public void preload(@NonNull Closeable closeable, @NonNull List<Cid> cids) {
+                blockService.preload(closeable, cids);
+            }
+
+            public void add(@NonNull Node nd) {
+                synchronized (buffer) {
+                    buffer.add(nd);
+                    bufferSize += nd.getRawData().length;
+                    if (bufferSize >= memoryBudget) {
+                        flush();
+                    }
+                }
+            }
+
+            @Override
+            public void flush() {
+                synchronized (buffer) {
+                    if (!buffer.isEmpty()) {
+                        blockService.addBlocks(new ArrayList<>(buffer));
+                        buffer.clear();
+                    }
+                    bufferSize = 0;
+                }
+            }
         };
     }
 
+    // writes all pending nodes to the block service
+    void flush();
 
 }
@@ -3,7 +3,13 @@ package threads.lite.dag;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.List;
+
+import threads.lite.IPFS;
 import threads.lite.cid.Builder;
+import threads.lite.core.Closeable;
+import threads.lite.core.ClosedException;
+import threads.lite.format.Link;
 import threads.lite.format.Node;
 import threads.lite.format.ProtoNode;
 
@@ -17,18 +23,25 @@ public interface Directory {
         return Node.createNodeWithData(data);
     }
 
-    static Directory createDirectory() {
-        return new BasicDirectory(emptyDirNode());
+    static Directory createDirectory(@NonNull DagService dagService) {
+        return new BasicDirectory(() -> false, dagService, emptyDirNode());
     }
 
     @Nullable
-    static Directory createDirectoryFromNode(@NonNull Node node) {
+    static Directory createDirectoryFromNode(@NonNull Closeable closeable,
+                                             @NonNull DagService dagService,
+                                             @NonNull Node node) {
+        if (!(node instanceof ProtoNode)) {
+            return null;
+        }
         ProtoNode protoNode = (ProtoNode) node;
         FSNode fsNode = FSNode.createFSNodeFromBytes(protoNode.getData());
 
-        if (fsNode.Type() == unixfs.pb.Unixfs.Data.DataType.Directory ||
-                fsNode.Type() == unixfs.pb.Unixfs.Data.DataType.HAMTShard) {
-            return new BasicDirectory((ProtoNode) protoNode.copy());
+        if (fsNode.Type() == unixfs.pb.Unixfs.Data.DataType.Directory) {
+            return new BasicDirectory(closeable, dagService, (ProtoNode) protoNode.copy());
+        }
+        if (fsNode.Type() == unixfs.pb.Unixfs.Data.DataType.HAMTShard) {
+            return HAMTDirectory.createHAMTDirectoryFromNode(closeable, dagService, protoNode);
         }
         return null;
     }
@@ -37,37 +50,104 @@ public interface Directory {
 
     Node getNode();
 
-    void addChild(@NonNull String name, @NonNull Node link);
+    void addChild(@NonNull String name, @NonNull Node link) throws ClosedException;
 
-    void removeChild(@NonNull String name);
+    void removeChild(@NonNull String name) throws ClosedException;
 
+    @Nullable
+    Link getChild(@NonNull String name) throws ClosedException;
+
+    @NonNull
+    List<Link> getLinks() throws ClosedException;
+
+    // a flat directory is converted into a sharded directory, when the encoded
+    // links exceed IPFS.HAMT_SHARDING_SIZE (a sharded directory stays sharded)
     class BasicDirectory implements Directory {
+        @NonNull
+        private final Closeable closeable;
+        @NonNull
+        private final DagService dagService;
         private final ProtoNode protoNode;
+        @Nullable
+        private HAMTDirectory shard = null;
 
-        BasicDirectory(@NonNull ProtoNode protoNode) {
+        BasicDirectory(@NonNull Closeable closeable, @NonNull DagService dagService,
+                       @NonNull ProtoNode protoNode) {
+            this.closeable = closeable;
+            this.dagService = dagService;
             this.protoNode = protoNode;
         }
 
+        private static long estimatedSize(@NonNull List<Link> links) {
+            long size = 0;
+            for (Link link : links) {
+                size += link.getName().length() + link.getCid().bytes().length;
+            }
+            return size;
+        }
+
         @Override
         public void setCidBuilder(@NonNull Builder cidBuilder) {
             protoNode.setCidBuilder(cidBuilder);
+            if (shard != null) {
+                shard.setCidBuilder(cidBuilder);
+            }
         }
 
         @Override
         public Node getNode() {
+            if (shard != null) {
+                return shard.getNode();
+            }
             return protoNode;
         }
 
         @Override
-        public void addChild(@NonNull String name, @NonNull Node link) {
+        public void addChild(@NonNull String name, @NonNull Node link) throws ClosedException {
+            if (shard != null) {
+                shard.addChild(name, link);
+                return;
+            }
             protoNode.removeNodeLink(name);
             protoNode.addNodeLink(name, link);
+            List<Link> links = protoNode.getLinks();
+            if (estimatedSize(links) > IPFS.HAMT_SHARDING_SIZE) {
+                shard = HAMTDirectory.createHAMTDirectory(closeable, dagService, links);
+                shard.setCidBuilder(protoNode.getCidBuilder());
+            }
         }
 
         @Override
-        public void removeChild(@NonNull String name) {
+        public void removeChild(@NonNull String name) throws ClosedException {
+            if (shard != null) {
+                shard.removeChild(name);
+                return;
+            }
             protoNode.removeNodeLink(name);
         }
+
+        @Nullable
+        @Override
+        public Link getChild(@NonNull String name) throws ClosedException {
+            if (shard != null) {
+                return shard.getChild(name);
+            }
+            for (Link link : protoNode.getLinks()) {
+                if (name.equals(link.getName())) {
+                    return link;
+                }
+            }
+            return null;
+        }
+
+        @NonNull
+        @Override
+        public List<Link> getLinks() throws ClosedException {
+            if (shard != null) {
+                return shard.getLinks();
+            }
+            return protoNode.getLinks();
+        }
     }
 
 }
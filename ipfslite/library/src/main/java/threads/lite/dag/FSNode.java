@@ -3,6 +3,9 @@ package threads.lite.dag;
 import androidx.annotation.NonNull;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+
+import java.nio.ByteBuffer;
 
 import threads.lite.format.Node;
 import threads.lite.format.ProtoNode;
@@ -25,6 +28,17 @@ public class FSNode {
         }
     }
 
+    private FSNode(@NonNull ByteString content) {
+        try {
+            // the parsed data field is a view of the content, not a copy
+            CodedInputStream codedInputStream = content.newCodedInput();
+            codedInputStream.enableAliasing(true);
+            data = unixfs.pb.Unixfs.Data.parseFrom(codedInputStream);
+        } catch (Throwable throwable) {
+            throw new RuntimeException();
+        }
+    }
+
 
     public static FSNode createFSNode(@NonNull unixfs.pb.Unixfs.Data.DataType dataType) {
         return new FSNode(dataType);
@@ -34,6 +48,33 @@ public class FSNode {
         return new FSNode(data);
     }
 
+    public static FSNode createFSNodeFromByteString(@NonNull ByteString data) {
+        return new FSNode(data);
+    }
+
+    // same as readUnixFSNodeData, but the returned read-only buffer is a view
+    // of the block data, no bytes are copied
+    @NonNull
+    public static ByteBuffer readUnixFSNodeBuffer(@NonNull Node node) {
+
+        if (node instanceof ProtoNode) {
+            FSNode fsNode = createFSNodeFromByteString(((ProtoNode) node).getDataByteString());
+            switch (fsNode.Type()) {
+                case File:
+                case Raw:
+                    return fsNode.getDataBuffer();
+                default:
+                    throw new RuntimeException("found %s node in unexpected place " +
+                            fsNode.Type().name());
+            }
+        } else if (node instanceof RawNode) {
+            return ByteBuffer.wrap(node.getRawData()).asReadOnlyBuffer();
+        } else {
+            throw new RuntimeException("not supported type");
+        }
+
+    }
+
     public static byte[] readUnixFSNodeData(@NonNull Node node) {
 
         if (node instanceof ProtoNode) {
@@ -71,6 +112,11 @@ public class FSNode {
         return data.getData().toByteArray();
     }
 
+    @NonNull
+    public ByteBuffer getDataBuffer() {
+        return data.getData().asReadOnlyByteBuffer().slice();
+    }
+
     public void setData(byte[] bytes) {
         updateFileSize(bytes.length - getData().length);
         data = data.toBuilder().setData(ByteString.copyFrom(bytes)).build();
@@ -80,6 +126,14 @@ public class FSNode {
         return data.getType();
     }
 
+    public long getFanout() {
+        return data.getFanout();
+    }
+
+    public long getHashType() {
+        return data.getHashType();
+    }
+
     public long getFileSize() {
         return data.getFilesize();
     }
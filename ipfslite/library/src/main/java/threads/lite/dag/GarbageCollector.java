@@ -0,0 +1,252 @@
+package threads.lite.dag;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+
+import threads.lite.LogUtils;
+import threads.lite.cid.Cid;
+import threads.lite.core.Closeable;
+import threads.lite.core.ClosedException;
+import threads.lite.format.Block;
+import threads.lite.format.BlockStore;
+import threads.lite.format.Decoder;
+import threads.lite.format.Link;
+import threads.lite.format.Node;
+
+/**
+ * Mark and sweep garbage collector of the block store.
+ * <p>
+ * All blocks which are reachable from the pinned roots are marked, all other blocks
+ * are deleted. Only blocks which are already stored when the run starts are subject
+ * to the sweep. The blocks which are written during a run (through the block store
+ * returned by {@link #track(BlockStore)}) are additional roots, so content which is added
+ * or edited during a run (and not pinned yet) is never deleted, even when it shares
+ * blocks with the garbage.
+ * <p>
+ * The given (exclusive) lock is only held while the snapshot of the stored blocks is taken
+ * and while a batch of blocks is deleted. Writers of new content hold the shared counterpart
+ * for the whole import, so there is never a partially written import at these times.
+ * <p>
+ * The work is done in bounded batches of blocks, with a pause between two batches,
+ * so that a run can take place in the background (e.g. while bitswap is serving blocks).
+ */
+public class GarbageCollector {
+    private static final String TAG = GarbageCollector.class.getSimpleName();
+    @NonNull
+    private final Lock lock;
+    private final int batchSize;
+    private final long batchPause;
+    // blocks written during the current run, null when no run is active
+    private volatile Queue<Cid> written = null;
+
+    private GarbageCollector(@NonNull Lock lock, int batchSize, long batchPause) {
+        this.lock = lock;
+        this.batchSize = batchSize;
+        this.batchPause = batchPause;
+    }
+
+    public static GarbageCollector createGarbageCollector(@NonNull Lock lock,
+                                                          int batchSize, long batchPause) {
+        return new GarbageCollector(lock, batchSize, batchPause);
+    }
+
+    @NonNull
+    private static List<Cid> drain(@NonNull Queue<Cid> queue) {
+        List<Cid> cids = new ArrayList<>();
+        Cid cid;
+        while ((cid = queue.poll()) != null) {
+            cids.add(cid);
+        }
+        return cids;
+    }
+
+    /**
+     * Runs the garbage collection
+     *
+     * @param blockStore block store which is collected
+     * @param closeable  cancels the run, no blocks are deleted when closed during mark phase
+     * @param pins       roots of the blocks which should be kept
+     * @return reclaimed bytes
+     * @throws ClosedException when the run was cancelled
+     */
+    public synchronized long collect(@NonNull BlockStore blockStore, @NonNull Closeable closeable,
+                                     @NonNull Set<Cid> pins) throws ClosedException {
+        long start = System.currentTimeMillis();
+
+        Queue<Cid> roots = new ConcurrentLinkedQueue<>();
+        List<Cid> candidates;
+        lock.lock();
+        try {
+            // only blocks stored at this time are swept, blocks written from now on are roots
+            written = roots;
+            candidates = blockStore.getCids();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            Set<Cid> marked = new HashSet<>();
+            mark(blockStore, closeable, marked, pins, true);
+
+            List<Cid> garbage = new ArrayList<>();
+            for (Cid cid : candidates) {
+                if (!marked.contains(cid)) {
+                    garbage.add(cid);
+                }
+            }
+
+            long reclaimed = 0;
+            int deleted = 0;
+            for (int i = 0; i < garbage.size(); i += batchSize) {
+                List<Cid> batch = garbage.subList(i, Math.min(i + batchSize, garbage.size()));
+                // the roots written meanwhile are marked without holding the lock,
+                // only the few written since then are marked while the writers wait
+                mark(blockStore, closeable, marked, drain(roots), true);
+                List<Cid> delete = new ArrayList<>();
+                lock.lock();
+                try {
+                    mark(blockStore, closeable, marked, drain(roots), false);
+                    for (Cid cid : batch) {
+                        if (!marked.contains(cid)) {
+                            reclaimed += blockStore.getSize(cid);
+                            delete.add(cid);
+                        }
+                    }
+                    blockStore.deleteBlocks(delete);
+                } finally {
+                    lock.unlock();
+                }
+                deleted += delete.size();
+                pause(closeable);
+            }
+
+            LogUtils.info(TAG, "GC blocks " + candidates.size() + " marked " + marked.size() +
+                    " deleted " + deleted + " reclaimed bytes " + reclaimed +
+                    " took " + (System.currentTimeMillis() - start));
+            return reclaimed;
+        } finally {
+            written = null;
+        }
+    }
+
+    /**
+     * Returns a block store which writes to the given block store and reports the
+     * written blocks to this collector. All content has to be written through it.
+     *
+     * @param blockStore block store which is decorated
+     * @return block store which reports the written blocks
+     */
+    @NonNull
+    public BlockStore track(@NonNull BlockStore blockStore) {
+        return new BlockStore() {
+            @Override
+            public boolean hasBlock(@NonNull Cid cid) {
+                return blockStore.hasBlock(cid);
+            }
+
+            @Override
+            public Block getBlock(@NonNull Cid cid) {
+                return blockStore.getBlock(cid);
+            }
+
+            @Override
+            public void deleteBlock(@NonNull Cid cid) {
+                blockStore.deleteBlock(cid);
+            }
+
+            @Override
+            public void deleteBlocks(@NonNull List<Cid> cids) {
+                blockStore.deleteBlocks(cids);
+            }
+
+            @Override
+            public void putBlock(@NonNull Block block) {
+                // reported after it is written, so that the links of a reported block
+                // can be marked (imports are complete when a batch is deleted)
+                blockStore.putBlock(block);
+                written(block.getCid());
+            }
+
+            @Override
+            public void putBlocks(@NonNull List<Block> blocks) {
+                blockStore.putBlocks(blocks);
+                for (Block block : blocks) {
+                    written(block.getCid());
+                }
+            }
+
+            @Override
+            public int getSize(@NonNull Cid cid) {
+                return blockStore.getSize(cid);
+            }
+
+            @NonNull
+            @Override
+            public List<Cid> getCids() {
+                return blockStore.getCids();
+            }
+
+            @Override
+            public void clear() {
+                blockStore.clear();
+            }
+        };
+    }
+
+    private void written(@NonNull Cid cid) {
+        Queue<Cid> roots = written;
+        if (roots != null) {
+            roots.add(cid);
+        }
+    }
+
+    private void mark(@NonNull BlockStore blockStore, @NonNull Closeable closeable,
+                      @NonNull Set<Cid> marked, @NonNull Collection<Cid> roots,
+                      boolean paced) throws ClosedException {
+        Deque<Cid> pending = new ArrayDeque<>(roots);
+        int processed = 0;
+        while (!pending.isEmpty()) {
+            Cid cid = pending.poll();
+            if (!marked.add(cid)) {
+                continue;
+            }
+            // raw blocks have no links, they don't have to be loaded
+            if (cid.getType() != Cid.DagProtobuf) {
+                continue;
+            }
+            Block block = blockStore.getBlock(cid);
+            if (block == null) {
+                continue;
+            }
+            Node node = Decoder.Decode(block);
+            for (Link link : node.getLinks()) {
+                pending.add(link.getCid());
+            }
+            processed++;
+            if (paced && processed % batchSize == 0) {
+                pause(closeable);
+            }
+        }
+    }
+
+    private void pause(@NonNull Closeable closeable) throws ClosedException {
+        if (closeable.isClosed()) {
+            throw new ClosedException();
+        }
+        try {
+            Thread.sleep(batchPause);
+        } catch (InterruptedException interruptedException) {
+            throw new ClosedException();
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package threads.lite.dag;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hashing;
+import com.google.protobuf.ByteString;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import threads.lite.cid.Builder;
+import threads.lite.cid.Cid;
+import threads.lite.core.Closeable;
+import threads.lite.core.ClosedException;
+import threads.lite.format.Link;
+import threads.lite.format.Node;
+import threads.lite.format.NodeGetter;
+import threads.lite.format.ProtoNode;
+
+/**
+ * Sharded directory (UnixFS HAMTShard, compatible with go-ipfs). The names are hashed
+ * (murmur3-x64-64), each level of the trie uses the next 8 bits of the hash as index into
+ * the {@link #FANOUT} children of a shard. A link name starts with the index (two hex
+ * digits), followed by the entry name, or it is only the index for a child shard.
+ * <p>
+ * Changes only touch the shards on the path of the name (O(log n) instead of O(n) of
+ * a flat directory), and a lookup fetches only the shards on the path.
+ */
+public class HAMTDirectory implements Directory {
+    public static final int FANOUT = 256;
+    public static final long HASH_MURMUR3 = 0x22;
+    private static final int BITS = 8; // log2(FANOUT)
+    private static final int MAX_DEPTH = 64 / BITS;
+
+    @NonNull
+    private final Closeable closeable;
+    @NonNull
+    private final DagService dagService;
+    @NonNull
+    private final Shard root;
+    @Nullable
+    private Builder builder = null;
+
+    private HAMTDirectory(@NonNull Closeable closeable, @NonNull DagService dagService,
+                          @NonNull Shard root) {
+        this.closeable = closeable;
+        this.dagService = dagService;
+        this.root = root;
+    }
+
+    @NonNull
+    public static HAMTDirectory createHAMTDirectory(@NonNull Closeable closeable,
+                                                    @NonNull DagService dagService,
+                                                    @NonNull List<Link> links)
+            throws ClosedException {
+        HAMTDirectory dir = new HAMTDirectory(closeable, dagService, new Shard());
+        for (Link link : links) {
+            dir.insert(dir.root, link.getName(), link, hash(link.getName()), 0);
+        }
+        return dir;
+    }
+
+    @NonNull
+    public static HAMTDirectory createHAMTDirectoryFromNode(@NonNull Closeable closeable,
+                                                            @NonNull DagService dagService,
+                                                            @NonNull ProtoNode node) {
+        return new HAMTDirectory(closeable, dagService, Shard.load(node));
+    }
+
+    // lookup of a name, only the shards on the path are fetched
+    @Nullable
+    public static Link findLink(@NonNull Closeable closeable, @NonNull NodeGetter nodeGetter,
+                                @NonNull ProtoNode node, @NonNull String name)
+            throws ClosedException {
+        Shard shard = Shard.load(node);
+        long hash = hash(name);
+        for (int depth = 0; depth < MAX_DEPTH; depth++) {
+            Child child = shard.children.get(index(hash, depth));
+            if (child == null) {
+                return null;
+            }
+            if (child.name != null) {
+                return child.name.equals(name) ? child.link : null;
+            }
+            shard = child.getShard(closeable, nodeGetter);
+        }
+        return null;
+    }
+
+    public static boolean isHAMTShard(@NonNull ProtoNode node) {
+        try {
+            FSNode fsNode = FSNode.createFSNodeFromBytes(node.getData());
+            return fsNode.Type() == unixfs.pb.Unixfs.Data.DataType.HAMTShard;
+        } catch (Throwable ignore) {
+            return false; // not a unixfs node
+        }
+    }
+
+    private static long hash(@NonNull String name) {
+        return Hashing.murmur3_128().hashBytes(name.getBytes(StandardCharsets.UTF_8)).asLong();
+    }
+
+    private static int index(long hash, int depth) {
+        if (depth >= MAX_DEPTH) {
+            throw new RuntimeException("HAMT depth exceeded");
+        }
+        return (int) ((hash >>> (64 - BITS * (depth + 1))) & (FANOUT - 1));
+    }
+
+    @NonNull
+    private static String prefix(int index) {
+        return String.format(Locale.US, "%02X", index);
+    }
+
+    @Override
+    public void setCidBuilder(@NonNull Builder cidBuilder) {
+        this.builder = cidBuilder;
+    }
+
+    @Override
+    public Node getNode() {
+        return commit(root);
+    }
+
+    @Override
+    public void addChild(@NonNull String name, @NonNull Node link) throws ClosedException {
+        insert(root, name, Link.createLink(link, name), hash(name), 0);
+    }
+
+    @Override
+    public void removeChild(@NonNull String name) throws ClosedException {
+        remove(root, name, hash(name), 0);
+    }
+
+    @Nullable
+    @Override
+    public Link getChild(@NonNull String name) throws ClosedException {
+        commit(root);
+        return findLink(closeable, dagService, root.node, name);
+    }
+
+    // all entries, the child shards of a shard are fetched in parallel
+    @NonNull
+    @Override
+    public List<Link> getLinks() throws ClosedException {
+        List<Link> links = new ArrayList<>();
+        collect(root, links);
+        return links;
+    }
+
+    private void collect(@NonNull Shard shard, @NonNull List<Link> links) throws ClosedException {
+        List<Cid> preloads = new ArrayList<>();
+        for (Child child : shard.children.values()) {
+            if (child.name == null && child.shard == null) {
+                preloads.add(child.link.getCid());
+            }
+        }
+        if (!preloads.isEmpty()) {
+            dagService.preload(closeable, preloads);
+        }
+        for (Child child : shard.children.values()) {
+            if (child.name != null) {
+                links.add(child.link);
+            } else {
+                collect(child.getShard(closeable, dagService), links);
+            }
+        }
+    }
+
+    private void insert(@NonNull Shard shard, @NonNull String name, @NonNull Link link,
+                        long hash, int depth) throws ClosedException {
+        int index = index(hash, depth);
+        shard.node = null;
+        Child child = shard.children.get(index);
+        if (child == null || name.equals(child.name)) {
+            shard.children.put(index, Child.createEntry(name, link));
+        } else if (child.name != null) {
+            // two names with the same index on this level, a new shard takes both
+            Shard sub = new Shard();
+            insert(sub, child.name, child.link, hash(child.name), depth + 1);
+            insert(sub, name, link, hash, depth + 1);
+            shard.children.put(index, Child.createShard(sub));
+        } else {
+            insert(child.getShard(closeable, dagService), name, link, hash, depth + 1);
+        }
+    }
+
+    private void remove(@NonNull Shard shard, @NonNull String name, long hash, int depth)
+            throws ClosedException {
+        int index = index(hash, depth);
+        Child child = shard.children.get(index);
+        if (child == null) {
+            return;
+        }
+        if (child.name != null) {
+            if (child.name.equals(name)) {
+                shard.children.remove(index);
+                shard.node = null;
+            }
+            return;
+        }
+        Shard sub = child.getShard(closeable, dagService);
+        remove(sub, name, hash, depth + 1);
+        if (sub.node == null) {
+            shard.node = null;
+            if (sub.children.isEmpty()) {
+                shard.children.remove(index);
+            } else if (sub.children.size() == 1) {
+                // a shard with a single entry is replaced by the entry
+                Child single = sub.children.firstEntry().getValue();
+                if (single.name != null) {
+                    shard.children.put(index, single);
+                }
+            }
+        }
+    }
+
+    @NonNull
+    private ProtoNode commit(@NonNull Shard shard) {
+        if (shard.node != null) {
+            return shard.node;
+        }
+        ProtoNode node = new ProtoNode();
+        node.setCidBuilder(builder);
+        byte[] bitfield = new byte[FANOUT / 8];
+        for (Map.Entry<Integer, Child> entry : shard.children.entrySet()) {
+            int index = entry.getKey();
+            Child child = entry.getValue();
+            bitfield[bitfield.length - 1 - index / 8] |= (byte) (1 << (index % 8));
+            if (child.name != null) {
+                node.addRawLink(Link.create(child.link.getCid().bytes(),
+                        prefix(index) + child.name, child.link.getSize()));
+            } else if (child.shard != null && child.shard.node == null) {
+                ProtoNode sub = commit(child.shard);
+                dagService.add(sub);
+                node.addNodeLink(prefix(index), sub);
+            } else if (child.shard != null) {
+                node.addNodeLink(prefix(index), child.shard.node);
+            } else {
+                node.addRawLink(Link.create(child.link.getCid().bytes(),
+                        prefix(index), child.link.getSize()));
+            }
+        }
+        // the bitfield is encoded big-endian, without leading zero bytes
+        int start = 0;
+        while (start < bitfield.length && bitfield[start] == 0) {
+            start++;
+        }
+        node.setData(unixfs.pb.Unixfs.Data.newBuilder()
+                .setType(unixfs.pb.Unixfs.Data.DataType.HAMTShard)
+                .setData(ByteString.copyFrom(Arrays.copyOfRange(bitfield, start, bitfield.length)))
+                .setHashType(HASH_MURMUR3)
+                .setFanout(FANOUT)
+                .build().toByteArray());
+        shard.node = node;
+        return node;
+    }
+
+    private static class Shard {
+        // index of the child in the shard, to the child
+        final TreeMap<Integer, Child> children = new TreeMap<>();
+        // encoded node, null when the shard changed
+        @Nullable
+        ProtoNode node = null;
+
+        @NonNull
+        static Shard load(@NonNull ProtoNode node) {
+            FSNode fsNode = FSNode.createFSNodeFromBytes(node.getData());
+            if (fsNode.Type() != unixfs.pb.Unixfs.Data.DataType.HAMTShard ||
+                    fsNode.getFanout() != FANOUT || fsNode.getHashType() != HASH_MURMUR3) {
+                throw new RuntimeException("HAMT not supported");
+            }
+            Shard shard = new Shard();
+            for (Link link : node.getLinks()) {
+                String linkName = link.getName();
+                int index = Integer.parseInt(linkName.substring(0, 2), 16);
+                String name = linkName.substring(2);
+                if (name.isEmpty()) {
+                    shard.children.put(index, Child.createShardLink(link));
+                } else {
+                    shard.children.put(index, Child.createEntry(name,
+                            Link.create(link.getCid().bytes(), name, link.getSize())));
+                }
+            }
+            shard.node = node;
+            return shard;
+        }
+    }
+
+    private static class Child {
+        // name of an entry, null for a child shard
+        @Nullable
+        final String name;
+        // link of the entry or of the child shard (not yet loaded)
+        @Nullable
+        final Link link;
+        @Nullable
+        Shard shard;
+
+        private Child(@Nullable String name, @Nullable Link link, @Nullable Shard shard) {
+            this.name = name;
+            this.link = link;
+            this.shard = shard;
+        }
+
+        static Child createEntry(@NonNull String name, @NonNull Link link) {
+            return new Child(name, link, null);
+        }
+
+        static Child createShardLink(@NonNull Link link) {
+            return new Child(null, link, null);
+        }
+
+        static Child createShard(@NonNull Shard shard) {
+            return new Child(null, null, shard);
+        }
+
+        @NonNull
+        Shard getShard(@NonNull Closeable closeable, @NonNull NodeGetter nodeGetter)
+                throws ClosedException {
+            if (shard == null) {
+                Node node = nodeGetter.getNode(closeable, link.getCid(), true);
+                if (!(node instanceof ProtoNode)) {
+                    throw new RuntimeException("HAMT shard not valid");
+                }
+                shard = Shard.load((ProtoNode) node);
+            }
+            return shard;
+        }
+    }
+}
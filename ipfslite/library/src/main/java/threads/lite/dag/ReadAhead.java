@@ -0,0 +1,73 @@
+package threads.lite.dag;
+
+import threads.lite.IPFS;
+
+/**
+ * Sizes the read-ahead window of a {@link DagReader} (number of leaves which are requested
+ * ahead of the read position).
+ * <p>
+ * The window follows Little's law: the leaves in flight should cover the leaves which are
+ * consumed during one fetch (consumption rate times fetch latency). The fetch latency is
+ * observed as the time the reader had to wait for a leaf (stall). While the reader stalls
+ * the window doubles, after a full window without stall it shrinks by one leaf. The window
+ * is capped by the memory budget {@link IPFS#READ_AHEAD_MEMORY}.
+ */
+public class ReadAhead {
+    private static final double ALPHA = 0.25;
+    private int window = IPFS.READ_AHEAD_MIN;
+    private double leafSize = IPFS.CHUNK_SIZE; // bytes
+    private double rate = 0; // bytes per ms (consumption)
+    private double latency = 0; // ms (fetch latency of stalled leaves)
+    private long lastLeaf = 0L; // nano time of the last leaf
+    private int clean = 0; // leaves without stall
+    private long stallTime = 0L; // nano time
+    private long stalls = 0L;
+
+    public synchronized void leafLoaded(int size, long waitNanos) {
+        long now = System.nanoTime();
+        leafSize = (1 - ALPHA) * leafSize + ALPHA * size;
+        if (lastLeaf > 0) {
+            double interval = Math.max((now - lastLeaf) / 1000000.0, 0.001);
+            rate = (1 - ALPHA) * rate + ALPHA * (size / interval);
+        }
+        lastLeaf = now;
+
+        double wait = waitNanos / 1000000.0;
+        int target = Math.max(IPFS.READ_AHEAD_MIN,
+                (int) Math.ceil((rate * latency) / Math.max(leafSize, 1)));
+        if (wait >= IPFS.READ_AHEAD_STALL) {
+            stalls++;
+            stallTime += waitNanos;
+            latency = latency == 0 ? wait : (1 - ALPHA) * latency + ALPHA * wait;
+            window = Math.max(window * 2, target);
+            clean = 0;
+        } else if (++clean >= window) {
+            window = Math.max(window - 1, target);
+            clean = 0;
+        }
+        window = Math.min(window, getMaxWindow());
+    }
+
+    // the reader position changed, the consumption rate starts again
+    public synchronized void reset() {
+        lastLeaf = 0L;
+        clean = 0;
+    }
+
+    private int getMaxWindow() {
+        return Math.max(IPFS.READ_AHEAD_MIN, (int) (IPFS.READ_AHEAD_MEMORY / Math.max(leafSize, 1)));
+    }
+
+    public synchronized int getWindow() {
+        return window;
+    }
+
+    // total time in ms the reader waited for leaves
+    public synchronized long getStallTime() {
+        return stallTime / 1000000;
+    }
+
+    public synchronized long getStalls() {
+        return stalls;
+    }
+}
@@ -34,6 +34,7 @@ public class BLOCKS implements Storage {
                     BlocksDatabase blocksDatabase = Room.databaseBuilder(context, BlocksDatabase.class,
                             BlocksDatabase.class.getSimpleName()).
                             allowMainThreadQueries().
+                            addMigrations(BlocksDatabase.MIGRATION_2_3).
                             fallbackToDestructiveMigration().build();
 
                     INSTANCE = BLOCKS.createBlocks(blocksDatabase);
@@ -45,7 +46,7 @@ public class BLOCKS implements Storage {
 
     @Nullable
     @Override
-    public byte[] getData(@NonNull String id) {
+    public byte[] getData(@NonNull byte[] id) {
         Block block = getBlock(id);
         if (block != null) {
             return block.getData();
@@ -65,7 +66,7 @@ public class BLOCKS implements Storage {
 
 
     @NonNull
-    private Block createBlock(@NonNull String id, @NonNull byte[] data) {
+    private Block createBlock(@NonNull byte[] id, @NonNull byte[] data) {
         //LogUtils.error(TAG, "createBlock " +  id);
         return Block.createBlock(id, data);
     }
@@ -74,26 +75,32 @@ public class BLOCKS implements Storage {
         getBlocksDatabase().blockDao().insertBlock(block);
     }
 
-    public void deleteBlock(@NonNull String id) {
+    public void deleteBlock(@NonNull byte[] id) {
         //LogUtils.error(TAG, "deleteBlock " +  id);
         getBlocksDatabase().blockDao().deleteBlock(id);
     }
 
     @Override
-    public int sizeBlock(@NonNull String id) {
+    public int sizeBlock(@NonNull byte[] id) {
         return (int) getBlockSize(id);
     }
 
-    public void insertBlock(@NonNull String id, @NonNull byte[] bytes) {
+    public void insertBlock(@NonNull byte[] id, @NonNull byte[] bytes) {
         //LogUtils.error(TAG, "insertBlock " +  id);
         storeBlock(createBlock(id, bytes));
     }
 
-    public boolean hasBlock(@NonNull String id) {
+    @Override
+    public void insertBlocks(@NonNull List<Block> blocks) {
+        // all blocks are inserted within a single transaction
+        getBlocksDatabase().blockDao().insertBlocks(blocks);
+    }
+
+    public boolean hasBlock(@NonNull byte[] id) {
         return getBlocksDatabase().blockDao().hasBlock(id);
     }
 
-    public long getBlockSize(@NonNull String id) {
+    public long getBlockSize(@NonNull byte[] id) {
         //LogUtils.error(TAG, "getBlockSize " +  id);
         return getBlocksDatabase().blockDao().getBlockSize(id);
     }
@@ -103,8 +110,14 @@ public class BLOCKS implements Storage {
         return getBlocksDatabase().blockDao().getBlocks();
     }
 
+    @NonNull
+    @Override
+    public List<byte[]> getBlockIds() {
+        return getBlocksDatabase().blockDao().getBlockIds();
+    }
+
     @Nullable
-    public Block getBlock(@NonNull String id) {
+    public Block getBlock(@NonNull byte[] id) {
         //LogUtils.error(TAG, "getBlock " +  id);
         return getBlocksDatabase().blockDao().getBlock(id);
     }
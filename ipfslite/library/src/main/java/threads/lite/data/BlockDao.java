@@ -13,18 +13,24 @@ public interface BlockDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insertBlock(Block block);
 
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertBlocks(List<Block> blocks);
+
     @Query("DELETE FROM Block WHERE id = :id")
-    void deleteBlock(String id);
+    void deleteBlock(byte[] id);
 
     @Query("SELECT 1 FROM Block WHERE id = :id")
-    boolean hasBlock(String id);
+    boolean hasBlock(byte[] id);
 
     @Query("SELECT * FROM Block WHERE id = :id")
-    Block getBlock(String id);
+    Block getBlock(byte[] id);
 
     @Query("SELECT size FROM Block WHERE id = :id")
-    long getBlockSize(String id);
+    long getBlockSize(byte[] id);
 
     @Query("SELECT * FROM Block")
     List<Block> getBlocks();
+
+    @Query("SELECT id FROM Block")
+    List<byte[]> getBlockIds();
 }
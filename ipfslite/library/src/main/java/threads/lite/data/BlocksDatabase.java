@@ -1,10 +1,37 @@
 package threads.lite.data;
 
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.google.common.io.BaseEncoding;
 
-@androidx.room.Database(entities = {Block.class}, version = 2, exportSchema = false)
+@androidx.room.Database(entities = {Block.class}, version = 3, exportSchema = false)
 public abstract class BlocksDatabase extends RoomDatabase {
 
+    // the keys of the blocks are converted from base32 encoded strings to binary keys,
+    // the data of the blocks is copied within the database
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `Block_new` (`id` BLOB NOT NULL, " +
+                    "`data` BLOB NOT NULL, `size` INTEGER NOT NULL, PRIMARY KEY(`id`))");
+            try (Cursor cursor = database.query("SELECT id FROM Block")) {
+                while (cursor.moveToNext()) {
+                    String key = cursor.getString(0);
+                    database.execSQL("INSERT OR REPLACE INTO Block_new (id, data, size) " +
+                                    "SELECT ?, data, size FROM Block WHERE id = ?",
+                            new Object[]{BaseEncoding.base32().decode(key), key});
+                }
+            }
+            database.execSQL("DROP TABLE Block");
+            database.execSQL("ALTER TABLE Block_new RENAME TO Block");
+        }
+    };
+
     public abstract BlockDao blockDao();
 
 }
@@ -0,0 +1,303 @@
+package threads.lite.data;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.Room;
+
+import com.google.common.io.BaseEncoding;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import threads.lite.LogUtils;
+
+/**
+ * Storage which keeps the block payloads in sharded flat files, while only a small
+ * index (id and size) is stored in its own database. Queries like {@link #hasBlock(byte[])}
+ * and {@link #sizeBlock(byte[])} are answered from the index, without touching the
+ * payload files.
+ * <p>
+ * The file name of a block is the base32 encoded key, the shard of a block is derived
+ * from the next-to-last two characters of its file name (same scheme as the go-ds-flatfs "next-to-last/2" sharding), because the leading
+ * characters of the keys are mostly identical (multihash prefix).
+ */
+public class FILES implements Storage {
+    private static final String TAG = FILES.class.getSimpleName();
+    private static final String BLOCKS_DIR = "blocks";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static FILES INSTANCE = null;
+    private final FileBlocksDatabase fileBlocksDatabase;
+    private final File directory;
+
+    private FILES(FILES.Builder builder) {
+        this.fileBlocksDatabase = builder.fileBlocksDatabase;
+        this.directory = builder.directory;
+    }
+
+    @NonNull
+    private static FILES createFiles(@NonNull FileBlocksDatabase fileBlocksDatabase,
+                                     @NonNull File directory) {
+
+        return new FILES.Builder()
+                .fileBlocksDatabase(fileBlocksDatabase)
+                .directory(directory)
+                .build();
+    }
+
+    public static FILES getInstance(@NonNull Context context) {
+
+        if (INSTANCE == null) {
+            synchronized (FILES.class) {
+                if (INSTANCE == null) {
+                    FileBlocksDatabase fileBlocksDatabase = Room.databaseBuilder(context,
+                            FileBlocksDatabase.class,
+                            FileBlocksDatabase.class.getSimpleName()).
+                            allowMainThreadQueries().
+                            addMigrations(FileBlocksDatabase.MIGRATION_1_2).
+                            fallbackToDestructiveMigration().build();
+
+                    File directory = new File(context.getFilesDir(), BLOCKS_DIR);
+                    INSTANCE = FILES.createFiles(fileBlocksDatabase, directory);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * @param context Context
+     * @return true when blocks were stored in flat files (the storage might still hold blocks)
+     */
+    public static boolean exists(@NonNull Context context) {
+        return new File(context.getFilesDir(), BLOCKS_DIR).exists();
+    }
+
+    @NonNull
+    public FileBlocksDatabase getFileBlocksDatabase() {
+        return fileBlocksDatabase;
+    }
+
+    @NonNull
+    private static String getName(@NonNull byte[] id) {
+        return BaseEncoding.base32().encode(id);
+    }
+
+    @NonNull
+    private File getShard(@NonNull String name) {
+        int length = name.length();
+        String shard = name.substring(Math.max(0, length - 3), Math.max(0, length - 1));
+        return new File(directory, shard);
+    }
+
+    @NonNull
+    private File getFile(@NonNull byte[] id) {
+        String name = getName(id);
+        return new File(getShard(name), name);
+    }
+
+    @Override
+    public void insertBlock(@NonNull byte[] id, @NonNull byte[] bytes) {
+        writeFile(id, bytes);
+        getFileBlocksDatabase().fileBlockDao().insertFileBlock(
+                FileBlock.createFileBlock(id, bytes.length));
+    }
+
+    @Override
+    public void insertBlocks(@NonNull List<Block> blocks) {
+        List<FileBlock> fileBlocks = new ArrayList<>();
+        for (Block block : blocks) {
+            writeFile(block.getId(), block.getData());
+            fileBlocks.add(FileBlock.createFileBlock(block.getId(), block.getSize()));
+        }
+        // the index of all blocks is updated within a single transaction
+        getFileBlocksDatabase().fileBlockDao().insertFileBlocks(fileBlocks);
+    }
+
+    private void writeFile(@NonNull byte[] id, @NonNull byte[] bytes) {
+        String name = getName(id);
+        File shard = getShard(name);
+        if (!shard.exists() && !shard.mkdirs() && !shard.exists()) {
+            throw new RuntimeException("shard directory not created " + shard.getName());
+        }
+        try {
+            // the data is written to a temporary file, and renamed afterwards, so that
+            // a reader never sees a partially written block
+            File temp = File.createTempFile(name, TEMP_SUFFIX, shard);
+            try (OutputStream outputStream = new FileOutputStream(temp)) {
+                outputStream.write(bytes);
+            }
+            if (!temp.renameTo(new File(shard, name))) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+                throw new IOException("rename of block file failed " + name);
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    @Nullable
+    @Override
+    public byte[] getData(@NonNull byte[] id) {
+        long size = getBlockSize(id);
+        if (size <= 0) {
+            return hasBlock(id) ? new byte[0] : null;
+        }
+        File file = getFile(id);
+        if (file.length() != size) {
+            // the index and the payload are out of sync (e.g. crash while writing)
+            LogUtils.error(TAG, "invalid block file " + file.getName());
+            deleteBlock(id);
+            return null;
+        }
+        byte[] data = new byte[(int) size];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = inputStream.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("unexpected end of block file " + file.getName());
+                }
+                offset += read;
+            }
+            return data;
+        } catch (IOException exception) {
+            LogUtils.error(TAG, exception);
+        }
+        return null;
+    }
+
+    @Override
+    public void deleteBlock(@NonNull byte[] id) {
+        getFileBlocksDatabase().fileBlockDao().deleteFileBlock(id);
+        //noinspection ResultOfMethodCallIgnored
+        getFile(id).delete();
+    }
+
+    @Override
+    public int sizeBlock(@NonNull byte[] id) {
+        return (int) getBlockSize(id);
+    }
+
+    public long getBlockSize(@NonNull byte[] id) {
+        return getFileBlocksDatabase().fileBlockDao().getFileBlockSize(id);
+    }
+
+    @Override
+    public boolean hasBlock(@NonNull byte[] id) {
+        return getFileBlocksDatabase().fileBlockDao().hasFileBlock(id);
+    }
+
+    @NonNull
+    @Override
+    public List<byte[]> getBlockIds() {
+        return getFileBlocksDatabase().fileBlockDao().getFileBlockIds();
+    }
+
+    @Override
+    public void clear() {
+        getFileBlocksDatabase().clearAllTables();
+        deleteRecursive(directory);
+    }
+
+    private void deleteRecursive(@NonNull File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursive(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * Moves all blocks of the given database storage into this file storage.
+     * A block is only removed from the database, when it was successfully written
+     * to this storage. The migration can be interrupted and continued at any time.
+     *
+     * @param blocks database storage which should be migrated
+     * @return true when all blocks are migrated
+     */
+    public boolean migrate(@NonNull BLOCKS blocks) {
+        int migrated = 0;
+        List<byte[]> ids = blocks.getBlockIds();
+        for (byte[] id : ids) {
+            try {
+                Block block = blocks.getBlock(id);
+                if (block != null) {
+                    insertBlock(id, block.getData());
+                }
+                blocks.deleteBlock(id);
+                migrated++;
+            } catch (Throwable throwable) {
+                LogUtils.error(TAG, throwable);
+                break;
+            }
+        }
+        LogUtils.info(TAG, "migrated blocks " + migrated);
+        return migrated == ids.size();
+    }
+
+    /**
+     * Moves all blocks of this file storage back into the given database storage
+     * (reverse of {@link #migrate(BLOCKS)}). When all blocks are moved, the storage
+     * is cleared, so that no files are left behind.
+     *
+     * @param blocks database storage which should receive the blocks
+     * @return true when all blocks are moved
+     */
+    public boolean restore(@NonNull BLOCKS blocks) {
+        int restored = 0;
+        List<byte[]> ids = getBlockIds();
+        for (byte[] id : ids) {
+            try {
+                byte[] data = getData(id);
+                if (data != null) {
+                    blocks.insertBlock(id, data);
+                }
+                deleteBlock(id);
+                restored++;
+            } catch (Throwable throwable) {
+                LogUtils.error(TAG, throwable);
+                break;
+            }
+        }
+        LogUtils.info(TAG, "restored blocks " + restored);
+        if (restored == ids.size()) {
+            clear();
+            return true;
+        }
+        return false;
+    }
+
+    static class Builder {
+        FileBlocksDatabase fileBlocksDatabase = null;
+        File directory = null;
+
+        FILES build() {
+
+            return new FILES(this);
+        }
+
+        Builder fileBlocksDatabase(@NonNull FileBlocksDatabase fileBlocksDatabase) {
+
+            this.fileBlocksDatabase = fileBlocksDatabase;
+            return this;
+        }
+
+        Builder directory(@NonNull File directory) {
+
+            this.directory = directory;
+            return this;
+        }
+    }
+}
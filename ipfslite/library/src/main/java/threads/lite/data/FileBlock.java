@@ -0,0 +1,36 @@
+package threads.lite.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+@Entity
+public class FileBlock {
+
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "id", typeAffinity = ColumnInfo.BLOB)
+    private final byte[] id;
+    @ColumnInfo(name = "size")
+    private final long size;
+
+    FileBlock(@NonNull byte[] id, long size) {
+        this.id = id;
+        this.size = size;
+    }
+
+    public static FileBlock createFileBlock(@NonNull byte[] id, long size) {
+        return new FileBlock(id, size);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @NonNull
+    public byte[] getId() {
+        return id;
+    }
+
+}
@@ -0,0 +1,30 @@
+package threads.lite.data;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface FileBlockDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertFileBlock(FileBlock fileBlock);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertFileBlocks(List<FileBlock> fileBlocks);
+
+    @Query("DELETE FROM FileBlock WHERE id = :id")
+    void deleteFileBlock(byte[] id);
+
+    @Query("SELECT 1 FROM FileBlock WHERE id = :id")
+    boolean hasFileBlock(byte[] id);
+
+    @Query("SELECT size FROM FileBlock WHERE id = :id")
+    long getFileBlockSize(byte[] id);
+
+    @Query("SELECT id FROM FileBlock")
+    List<byte[]> getFileBlockIds();
+}
@@ -0,0 +1,37 @@
+package threads.lite.data;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.google.common.io.BaseEncoding;
+
+@androidx.room.Database(entities = {FileBlock.class}, version = 2, exportSchema = false)
+public abstract class FileBlocksDatabase extends RoomDatabase {
+
+    // the keys of the index are converted from base32 encoded strings to binary keys
+    // (the names of the block files are not changed)
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `FileBlock_new` (`id` BLOB NOT NULL, " +
+                    "`size` INTEGER NOT NULL, PRIMARY KEY(`id`))");
+            try (Cursor cursor = database.query("SELECT id FROM FileBlock")) {
+                while (cursor.moveToNext()) {
+                    String key = cursor.getString(0);
+                    database.execSQL("INSERT OR REPLACE INTO FileBlock_new (id, size) " +
+                                    "SELECT ?, size FROM FileBlock WHERE id = ?",
+                            new Object[]{BaseEncoding.base32().decode(key), key});
+                }
+            }
+            database.execSQL("DROP TABLE FileBlock");
+            database.execSQL("ALTER TABLE FileBlock_new RENAME TO FileBlock");
+        }
+    };
+
+    public abstract FileBlockDao fileBlockDao();
+
+}
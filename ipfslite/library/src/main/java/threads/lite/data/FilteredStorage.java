@@ -0,0 +1,191 @@
+package threads.lite.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import threads.lite.LogUtils;
+import threads.lite.core.Scheduler;
+
+/**
+ * Storage decorator which keeps the keys of all stored blocks in a compact in-memory
+ * {@link KeyFilter}. Lookups of blocks which are not stored (the common case of a node,
+ * which is asked for blocks by other peers) return without a database query.
+ * <p>
+ * The filter is built from the stored keys in the background. Until it is
+ * complete, all lookups are delegated to the underlying storage.
+ * <p>
+ * Keys are never removed from the filter when a block is deleted (a concurrent insert of
+ * the same key could otherwise end up stored, but missing in the filter). The stale keys
+ * are only false positives, the filter is rebuilt when there are too many of them.
+ */
+public class FilteredStorage implements Storage {
+    private static final String TAG = FilteredStorage.class.getSimpleName();
+    private static final int MIN_STALE_KEYS = 1024;
+    @NonNull
+    private final Storage storage;
+    private final AtomicBoolean ready = new AtomicBoolean(false);
+    private final AtomicBoolean building = new AtomicBoolean(false);
+    private final AtomicInteger staleKeys = new AtomicInteger(0);
+    // inserts share the lock, a (re)build takes it exclusively to register its new filter
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    @NonNull
+    private volatile KeyFilter filter = new KeyFilter();
+    @Nullable
+    private KeyFilter next = null; // filter under construction, guarded by lock
+
+    private FilteredStorage(@NonNull Storage storage) {
+        this.storage = storage;
+    }
+
+    @NonNull
+    public static FilteredStorage createFilteredStorage(@NonNull Storage storage) {
+        FilteredStorage filteredStorage = new FilteredStorage(storage);
+        filteredStorage.scheduleBuild();
+        return filteredStorage;
+    }
+
+    private void scheduleBuild() {
+        if (building.compareAndSet(false, true)) {
+            Scheduler.getInstance().execute(Scheduler.Lane.STORAGE, this::build);
+        }
+    }
+
+    private void build() {
+        long start = System.currentTimeMillis();
+        KeyFilter fresh = new KeyFilter();
+        boolean done = false;
+        try {
+            // inserts which are still running are stored before the keys are read,
+            // the following ones add their key to the new filter as well
+            lock.writeLock().lock();
+            try {
+                next = fresh;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            staleKeys.set(0);
+
+            List<byte[]> ids = storage.getBlockIds();
+            for (byte[] id : ids) {
+                fresh.add(id);
+            }
+            done = true;
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                next = null;
+                if (done) {
+                    filter = fresh;
+                    ready.set(true);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            building.set(false);
+            LogUtils.info(TAG, "Filter build " + done + " size " + fresh.size() +
+                    " took " + (System.currentTimeMillis() - start));
+        }
+    }
+
+    private boolean isMissing(@NonNull byte[] id) {
+        return ready.get() && !filter.mightContain(id);
+    }
+
+    // the key is added before the block is stored (a false positive is
+    // acceptable, a false negative not)
+    private void addKey(@NonNull byte[] id) {
+        filter.add(id);
+        KeyFilter pending = next;
+        if (pending != null) {
+            pending.add(id);
+        }
+    }
+
+    @Override
+    public void insertBlock(@NonNull byte[] id, @NonNull byte[] bytes) {
+        lock.readLock().lock();
+        try {
+            addKey(id);
+            storage.insertBlock(id, bytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void insertBlocks(@NonNull List<Block> blocks) {
+        lock.readLock().lock();
+        try {
+            for (Block block : blocks) {
+                addKey(block.getId());
+            }
+            storage.insertBlocks(blocks);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Nullable
+    @Override
+    public byte[] getData(@NonNull byte[] id) {
+        if (isMissing(id)) {
+            return null;
+        }
+        return storage.getData(id);
+    }
+
+    @Override
+    public void deleteBlock(@NonNull byte[] id) {
+        storage.deleteBlock(id);
+        // the key stays in the filter (stale), the filter is rebuilt
+        // when a quarter of its keys are stale
+        int stale = staleKeys.incrementAndGet();
+        if (stale >= MIN_STALE_KEYS && stale * 4L >= filter.size()) {
+            scheduleBuild();
+        }
+    }
+
+    @Override
+    public int sizeBlock(@NonNull byte[] id) {
+        if (isMissing(id)) {
+            return 0;
+        }
+        return storage.sizeBlock(id);
+    }
+
+    @Override
+    public boolean hasBlock(@NonNull byte[] id) {
+        if (isMissing(id)) {
+            return false;
+        }
+        return storage.hasBlock(id);
+    }
+
+    @NonNull
+    @Override
+    public List<byte[]> getBlockIds() {
+        return storage.getBlockIds();
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            storage.clear();
+            filter.clear();
+            if (next != null) {
+                next.clear();
+            }
+            staleKeys.set(0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package threads.lite.data;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Compact in-memory set of 64-bit key hashes (open addressing, linear probing).
+ * <p>
+ * Answers whether a key might be stored. A negative answer is definite, a positive
+ * answer has to be confirmed by the storage itself. Keys are only added: the keys of
+ * deleted blocks stay in the filter as stale entries (a positive answer), until the
+ * owner replaces the filter by a rebuilt one (see {@link FilteredStorage}).
+ */
+public class KeyFilter {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long EMPTY = 0L;
+    private long[] table = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // 64 bit hash of the key, zero is reserved for empty slots
+    // (the keys end with a cryptographic digest, so its last 8 bytes are used directly,
+    // shorter keys are hashed with FNV-1a)
+    static long hash(@NonNull byte[] key) {
+        long hash;
+        if (key.length >= Long.BYTES) {
+            hash = 0;
+            for (int i = key.length - Long.BYTES; i < key.length; i++) {
+                hash = (hash << 8) | (key[i] & 0xff);
+            }
+        } else {
+            hash = 0xcbf29ce484222325L;
+            for (byte b : key) {
+                hash ^= (b & 0xff);
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash == EMPTY ? 1L : hash;
+    }
+
+    // finalizer of murmur3, spreads the bits of the hash over the table index
+    private static int index(long hash, int mask) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+
+    public synchronized void add(@NonNull byte[] key) {
+        if ((size + 1) * 2 > table.length) {
+            resize(table.length * 2);
+        }
+        if (insert(table, hash(key))) {
+            size++;
+        }
+    }
+
+    public synchronized boolean mightContain(@NonNull byte[] key) {
+        long hash = hash(key);
+        int mask = table.length - 1;
+        int i = index(hash, mask);
+        while (table[i] != EMPTY) {
+            if (table[i] == hash) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public synchronized void clear() {
+        table = new long[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private boolean insert(@NonNull long[] target, long hash) {
+        int mask = target.length - 1;
+        int i = index(hash, mask);
+        while (target[i] != EMPTY) {
+            if (target[i] == hash) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        target[i] = hash;
+        return true;
+    }
+
+    private void resize(int capacity) {
+        long[] resized = new long[capacity];
+        for (long hash : table) {
+            if (hash != EMPTY) {
+                insert(resized, hash);
+            }
+        }
+        table = resized;
+    }
+}
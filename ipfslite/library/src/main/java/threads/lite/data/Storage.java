@@ -3,18 +3,25 @@ package threads.lite.data;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.List;
+
 
 public interface Storage {
-    void insertBlock(@NonNull String id, @NonNull byte[] bytes);
+    void insertBlock(@NonNull byte[] id, @NonNull byte[] bytes);
+
+    void insertBlocks(@NonNull List<Block> blocks);
 
     @Nullable
-    byte[] getData(@NonNull String id);
+    byte[] getData(@NonNull byte[] id);
+
+    void deleteBlock(@NonNull byte[] id);
 
-    void deleteBlock(@NonNull String id);
+    int sizeBlock(@NonNull byte[] id);
 
-    int sizeBlock(@NonNull String id);
+    boolean hasBlock(@NonNull byte[] id);
 
-    boolean hasBlock(@NonNull String id);
+    @NonNull
+    List<byte[]> getBlockIds();
 
     void clear();
 }
@@ -25,8 +25,6 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -44,6 +42,7 @@ import threads.lite.cid.Protocol;
 import threads.lite.core.Closeable;
 import threads.lite.core.ClosedException;
 import threads.lite.core.RecordIssue;
+import threads.lite.core.Scheduler;
 import threads.lite.host.DnsResolver;
 import threads.lite.host.LiteHost;
 import threads.lite.ipns.Ipns;
@@ -630,9 +629,9 @@ public class KadDht implements Routing {
 
         if (runFollowUp) {
             List<Future<Void>> futures = new ArrayList<>();
-            ExecutorService executor = Executors.newFixedThreadPool(4);
             for (Peer peerId : queryPeers) {
-                Future<Void> future = executor.submit(() -> invokeQuery(closeable, queryFn, peerId));
+                Future<Void> future = Scheduler.getInstance().submit(Scheduler.Lane.DHT,
+                        () -> invokeQuery(closeable, queryFn, peerId));
                 futures.add(future);
             }
             for (Future<Void> future : futures) {
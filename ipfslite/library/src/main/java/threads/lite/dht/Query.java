@@ -21,6 +21,7 @@ import threads.lite.LogUtils;
 import threads.lite.cid.Peer;
 import threads.lite.core.Closeable;
 import threads.lite.core.ClosedException;
+import threads.lite.core.Scheduler;
 
 public class Query {
 
@@ -147,7 +148,7 @@ public class Query {
                 // try spawning the queries, if there are no available peers to query then we won't spawn them
                 for (Peer queryPeer : result.second) {
                     queryPeers.setState(queryPeer, PeerState.PeerWaiting);
-                    new Thread(() -> {
+                    Scheduler.getInstance().execute(Scheduler.Lane.DHT, () -> {
                         try {
                             queryPeer(ctx, queryPeer);
                         } catch (ClosedException ignore) {
@@ -158,7 +159,7 @@ public class Query {
                             // not expected exception
                             LogUtils.error(TAG, throwable);
                         }
-                    }).start();
+                    });
                 }
             } else {
                 LogUtils.warning(TAG, "Termination no succes");
@@ -2,6 +2,7 @@ package threads.lite.format;
 
 import androidx.annotation.NonNull;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import threads.lite.cid.Cid;
@@ -14,14 +15,14 @@ public interface BlockStore {
         return new BlockStore() {
             @Override
             public boolean hasBlock(@NonNull Cid cid) {
-                String key = cid.getKey();
+                byte[] key = cid.bytes();
                 return storage.hasBlock(key);
             }
 
             @Override
             public Block getBlock(@NonNull Cid cid) {
 
-                String key = cid.getKey();
+                byte[] key = cid.bytes();
                 byte[] data = storage.getData(key);
                 if (data == null) {
                     return null;
@@ -31,13 +32,23 @@ public interface BlockStore {
 
             @Override
             public void putBlock(@NonNull Block block) {
-                String key = block.getCid().getKey();
+                byte[] key = block.getCid().bytes();
                 storage.insertBlock(key, block.getRawData());
             }
 
+            @Override
+            public void putBlocks(@NonNull List<Block> blocks) {
+                List<threads.lite.data.Block> list = new ArrayList<>();
+                for (Block block : blocks) {
+                    byte[] key = block.getCid().bytes();
+                    list.add(threads.lite.data.Block.createBlock(key, block.getRawData()));
+                }
+                storage.insertBlocks(list);
+            }
+
             @Override
             public int getSize(@NonNull Cid cid) {
-                String key = cid.getKey();
+                byte[] key = cid.bytes();
                 return storage.sizeBlock(key);
             }
 
@@ -46,8 +57,18 @@ public interface BlockStore {
                 storage.clear();
             }
 
+            @NonNull
+            @Override
+            public List<Cid> getCids() {
+                List<Cid> cids = new ArrayList<>();
+                for (byte[] key : storage.getBlockIds()) {
+                    cids.add(new Cid(key));
+                }
+                return cids;
+            }
+
             public void deleteBlock(@NonNull Cid cid) {
-                String key = cid.getKey();
+                byte[] key = cid.bytes();
                 storage.deleteBlock(key);
             }
 
@@ -71,8 +92,13 @@ public interface BlockStore {
 
     void putBlock(@NonNull Block block);
 
+    void putBlocks(@NonNull List<Block> blocks);
+
     int getSize(@NonNull Cid cid);
 
+    @NonNull
+    List<Cid> getCids();
+
     void clear();
 }
 
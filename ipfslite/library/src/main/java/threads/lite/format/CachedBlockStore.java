@@ -0,0 +1,179 @@
+package threads.lite.format;
+
+import androidx.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import threads.lite.cid.Cid;
+
+/**
+ * Block store decorator which keeps recently read blocks in memory (LRU order),
+ * limited by a byte budget. Only blocks up to a maximum size are admitted to the cache,
+ * so that large leaf blocks (file content, which is usually read once) do not evict the
+ * small interior nodes (directories and file roots), which are read over and over again.
+ * <p>
+ * The decoded nodes of the cached blocks are kept in a {@link NodeCache}, which is
+ * invalidated together with the blocks.
+ */
+public class CachedBlockStore implements BlockStore {
+
+    @NonNull
+    private final BlockStore blockStore;
+    private final long maxCacheSize;
+    private final int maxBlockSize;
+    @NonNull
+    private final NodeCache nodeCache;
+    private final LinkedHashMap<Cid, Block> cache = new LinkedHashMap<>(
+            16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private long cacheSize = 0;
+
+    private CachedBlockStore(@NonNull BlockStore blockStore, long maxCacheSize, int maxBlockSize,
+                             long maxNodeCacheSize) {
+        this.blockStore = blockStore;
+        this.maxCacheSize = maxCacheSize;
+        this.maxBlockSize = maxBlockSize;
+        this.nodeCache = NodeCache.createNodeCache(maxNodeCacheSize, maxBlockSize);
+    }
+
+    public static CachedBlockStore createCachedBlockStore(@NonNull BlockStore blockStore,
+                                                          long maxCacheSize, int maxBlockSize,
+                                                          long maxNodeCacheSize) {
+        return new CachedBlockStore(blockStore, maxCacheSize, maxBlockSize, maxNodeCacheSize);
+    }
+
+    private Block getCached(@NonNull Cid cid) {
+        synchronized (cache) {
+            return cache.get(cid);
+        }
+    }
+
+    private void cache(@NonNull Block block) {
+        int size = block.getRawData().length;
+        if (size > maxBlockSize || size > maxCacheSize) {
+            return;
+        }
+        synchronized (cache) {
+            Block previous = cache.put(block.getCid(), block);
+            if (previous != null) {
+                cacheSize -= previous.getRawData().length;
+            }
+            cacheSize += size;
+
+            // evict the least recently used blocks
+            Iterator<Map.Entry<Cid, Block>> iterator = cache.entrySet().iterator();
+            while (cacheSize > maxCacheSize && iterator.hasNext()) {
+                Map.Entry<Cid, Block> eldest = iterator.next();
+                cacheSize -= eldest.getValue().getRawData().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    private void invalidate(@NonNull Cid cid) {
+        nodeCache.invalidate(cid);
+        synchronized (cache) {
+            Block previous = cache.remove(cid);
+            if (previous != null) {
+                cacheSize -= previous.getRawData().length;
+            }
+        }
+    }
+
+    @Override
+    public boolean hasBlock(@NonNull Cid cid) {
+        if (getCached(cid) != null) {
+            return true;
+        }
+        return blockStore.hasBlock(cid);
+    }
+
+    @Override
+    public Block getBlock(@NonNull Cid cid) {
+        Block block = getCached(cid);
+        if (block != null) {
+            hits.incrementAndGet();
+            return block;
+        }
+        misses.incrementAndGet();
+        block = blockStore.getBlock(cid);
+        if (block != null) {
+            cache(block);
+        }
+        return block;
+    }
+
+    @Override
+    public void deleteBlock(@NonNull Cid cid) {
+        invalidate(cid);
+        blockStore.deleteBlock(cid);
+    }
+
+    @Override
+    public void deleteBlocks(@NonNull List<Cid> cids) {
+        for (Cid cid : cids) {
+            invalidate(cid);
+        }
+        blockStore.deleteBlocks(cids);
+    }
+
+    @Override
+    public void putBlock(@NonNull Block block) {
+        // written blocks are not cached, only blocks which are read
+        blockStore.putBlock(block);
+    }
+
+    @Override
+    public void putBlocks(@NonNull List<Block> blocks) {
+        blockStore.putBlocks(blocks);
+    }
+
+    @Override
+    public int getSize(@NonNull Cid cid) {
+        Block block = getCached(cid);
+        if (block != null) {
+            return block.getRawData().length;
+        }
+        return blockStore.getSize(cid);
+    }
+
+    @NonNull
+    @Override
+    public List<Cid> getCids() {
+        return blockStore.getCids();
+    }
+
+    @Override
+    public void clear() {
+        nodeCache.clear();
+        synchronized (cache) {
+            cache.clear();
+            cacheSize = 0;
+        }
+        blockStore.clear();
+    }
+
+    @NonNull
+    public NodeCache getNodeCache() {
+        return nodeCache;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getCacheSize() {
+        synchronized (cache) {
+            return cacheSize;
+        }
+    }
+}
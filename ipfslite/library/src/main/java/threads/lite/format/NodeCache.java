@@ -0,0 +1,130 @@
+package threads.lite.format;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import threads.lite.cid.Cid;
+
+/**
+ * Keeps recently decoded dag nodes in memory (LRU order), limited by a budget of the
+ * estimated object footprint. A hit skips the protobuf parsing and the creation of the
+ * links, which matters for directory listings and path resolution, which touch the same
+ * nodes over and over again.
+ * <p>
+ * Only {@link ProtoNode} objects up to a maximum block size are cached, raw nodes are only
+ * a wrapper of the block. The cached nodes are shared, so they must not be modified.
+ */
+public class NodeCache {
+
+    private static final int LINK_OVERHEAD = 96; // bytes (link, cid and name objects)
+    private final long maxCacheSize;
+    private final int maxBlockSize;
+    private final LinkedHashMap<Cid, Entry> cache = new LinkedHashMap<>(
+            16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private long cacheSize = 0;
+
+    private NodeCache(long maxCacheSize, int maxBlockSize) {
+        this.maxCacheSize = maxCacheSize;
+        this.maxBlockSize = maxBlockSize;
+    }
+
+    public static NodeCache createNodeCache(long maxCacheSize, int maxBlockSize) {
+        return new NodeCache(maxCacheSize, maxBlockSize);
+    }
+
+    // the encoded bytes are counted twice, the data of a node is copied on access
+    private static long estimatedSize(@NonNull ProtoNode node) {
+        long size = 2L * node.getRawData().length;
+        for (Link link : node.getLinks()) {
+            size += LINK_OVERHEAD + 2L * link.getName().length();
+        }
+        return size;
+    }
+
+    @Nullable
+    public Node get(@NonNull Cid cid) {
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(cid);
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.node;
+    }
+
+    public void put(@NonNull Node node) {
+        if (!(node instanceof ProtoNode) || node.getRawData().length > maxBlockSize) {
+            return;
+        }
+        long size = estimatedSize((ProtoNode) node);
+        if (size > maxCacheSize) {
+            return;
+        }
+        synchronized (cache) {
+            Entry previous = cache.put(node.getCid(), new Entry(node, size));
+            if (previous != null) {
+                cacheSize -= previous.size;
+            }
+            cacheSize += size;
+
+            // evict the least recently used nodes
+            Iterator<Map.Entry<Cid, Entry>> iterator = cache.entrySet().iterator();
+            while (cacheSize > maxCacheSize && iterator.hasNext()) {
+                Map.Entry<Cid, Entry> eldest = iterator.next();
+                cacheSize -= eldest.getValue().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    public void invalidate(@NonNull Cid cid) {
+        synchronized (cache) {
+            Entry previous = cache.remove(cid);
+            if (previous != null) {
+                cacheSize -= previous.size;
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            cacheSize = 0;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getCacheSize() {
+        synchronized (cache) {
+            return cacheSize;
+        }
+    }
+
+    private static class Entry {
+        @NonNull
+        final Node node;
+        final long size;
+
+        Entry(@NonNull Node node, long size) {
+            this.node = node;
+            this.size = size;
+        }
+    }
+}
@@ -6,7 +6,11 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.UnsafeByteOperations;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -25,6 +29,8 @@ public class ProtoNode implements Node {
     private final List<Link> links = Collections.synchronizedList(new ArrayList<>());
     public Cid cached;
     private byte[] data;
+    // data of a decoded node, it references the encoded bytes (no copy)
+    private ByteString dataByteString;
     private byte[] encoded;
     private Builder builder;
 
@@ -50,9 +56,11 @@ public class ProtoNode implements Node {
 
     @NonNull
     private Link getNodeLink(@NonNull String name) {
-        for (Link link : links) {
-            if (Objects.equals(link.getName(), name)) {
-                return new Link(link.getCid(), link.getName(), link.getSize());
+        synchronized (links) {
+            for (Link link : links) {
+                if (Objects.equals(link.getName(), name)) {
+                    return new Link(link.getCid(), link.getName(), link.getSize());
+                }
             }
         }
         throw new RuntimeException("" + name + " not found");
@@ -62,7 +70,10 @@ public class ProtoNode implements Node {
 
         try {
 
-            Merkledag.PBNode pbNode = Merkledag.PBNode.parseFrom(encoded);
+            // aliasing avoids copies of the data, it references the encoded bytes
+            CodedInputStream codedInputStream = CodedInputStream.newInstance(encoded);
+            codedInputStream.enableAliasing(true);
+            Merkledag.PBNode pbNode = Merkledag.PBNode.parseFrom(codedInputStream);
             List<Merkledag.PBLink> pbLinks = pbNode.getLinksList();
             for (Merkledag.PBLink pbLink : pbLinks) {
                 links.add(Link.create(pbLink.getHash().toByteArray(), pbLink.getName(),
@@ -71,7 +82,8 @@ public class ProtoNode implements Node {
 
             links.sort(Comparator.comparing(Link::getName));
 
-            this.data = pbNode.getData().toByteArray();
+            this.dataByteString = pbNode.getData();
+            this.data = null;
 
             this.encoded = encoded;
 
@@ -84,8 +96,10 @@ public class ProtoNode implements Node {
     public long size() {
         byte[] b = encodeProtobuf();
         long size = b.length;
-        for (Link link : links) {
-            size += link.getSize();
+        synchronized (links) {
+            for (Link link : links) {
+                size += link.getSize();
+            }
         }
         return size;
     }
@@ -111,13 +125,29 @@ public class ProtoNode implements Node {
 
     @Override
     public byte[] getData() {
+        if (data == null && dataByteString != null) {
+            data = dataByteString.toByteArray();
+        }
         return data;
     }
 
+    // returns the data without copying it
+    @NonNull
+    public ByteString getDataByteString() {
+        if (data == null && dataByteString != null) {
+            return dataByteString;
+        }
+        if (data == null) {
+            return ByteString.EMPTY;
+        }
+        return UnsafeByteOperations.unsafeWrap(data);
+    }
+
     public void setData(byte[] fileData) {
         encoded = null;
         cached = Cid.Undef();
         data = fileData;
+        dataByteString = null;
     }
 
     @Override
@@ -127,14 +157,15 @@ public class ProtoNode implements Node {
 
 
     // Marshal encodes a *Node instance into a new byte slice.
-    // The conversion uses an intermediate PBNode.
+    // The links are encoded before the data (not in the order of the field numbers, as a
+    // generated PBNode would do it), this is the dag-pb encoding of go-ipfs, otherwise the
+    // CIDs of nodes with links differ from the CIDs of go-ipfs
     private byte[] marshal() {
 
-        Merkledag.PBNode.Builder pbn = Merkledag.PBNode.newBuilder();
-
-        links.sort(Comparator.comparing(Link::getName));// keep links sorted
-
+        List<Merkledag.PBLink> pbLinks = new ArrayList<>();
+        int size = 0;
         synchronized (links) {
+            links.sort(Comparator.comparing(Link::getName));// keep links sorted
             for (Link link : links) {
 
                 Merkledag.PBLink.Builder lnb = Merkledag.PBLink.newBuilder().setName(link.getName())
@@ -145,19 +176,37 @@ public class ProtoNode implements Node {
                     lnb.setHash(hash);
                 }
 
-                pbn.addLinks(lnb.build());
+                Merkledag.PBLink pbLink = lnb.build();
+                size += CodedOutputStream.computeMessageSize(
+                        Merkledag.PBNode.LINKS_FIELD_NUMBER, pbLink);
+                pbLinks.add(pbLink);
             }
         }
-        if (this.data.length > 0) {
-            pbn.setData(ByteString.copyFrom(this.data));
+        ByteString data = ByteString.copyFrom(getData());
+        if (!data.isEmpty()) {
+            size += CodedOutputStream.computeBytesSize(Merkledag.PBNode.DATA_FIELD_NUMBER, data);
         }
 
-        return pbn.build().toByteArray();
+        byte[] result = new byte[size];
+        CodedOutputStream output = CodedOutputStream.newInstance(result);
+        try {
+            for (Merkledag.PBLink pbLink : pbLinks) {
+                output.writeMessage(Merkledag.PBNode.LINKS_FIELD_NUMBER, pbLink);
+            }
+            if (!data.isEmpty()) {
+                output.writeBytes(Merkledag.PBNode.DATA_FIELD_NUMBER, data);
+            }
+            output.checkNoSpaceLeft();
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+        return result;
     }
 
+    // a decoded node (or an encoded one, which is not changed anymore) is shared by the readers
+    // (e.g. via the NodeCache), the links are only sorted, when the node is encoded again
     private byte[] encodeProtobuf() {
 
-        links.sort(Comparator.comparing(Link::getName));// keep links sorted
         if (encoded == null) {
             cached = Cid.Undef();
             encoded = marshal();
@@ -231,7 +280,7 @@ public class ProtoNode implements Node {
 
     }
 
-    private void addRawLink(@NonNull Link link) {
+    public void addRawLink(@NonNull Link link) {
         encoded = null;
 
         synchronized (links) {
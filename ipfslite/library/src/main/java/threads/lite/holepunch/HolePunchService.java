@@ -20,8 +20,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import holepunch.pb.Holepunch;
@@ -30,6 +29,7 @@ import threads.lite.LogUtils;
 import threads.lite.cid.Multiaddr;
 import threads.lite.cid.PeerId;
 import threads.lite.cid.Protocol;
+import threads.lite.core.Scheduler;
 import threads.lite.host.Dialer;
 import threads.lite.host.LiteHost;
 import threads.lite.host.PeerInfo;
@@ -164,9 +164,9 @@ public class HolePunchService {
         List<Multiaddr> supported = liteHost.supported(multiaddrs);
         CompletableFuture<QuicConnection> done = new CompletableFuture<>();
         if (!supported.isEmpty()) {
-            ExecutorService executor = Executors.newFixedThreadPool(supported.size());
+            List<Future<?>> futures = new ArrayList<>();
             for (Multiaddr address : supported) {
-                executor.execute(() -> {
+                futures.add(Scheduler.getInstance().execute(Scheduler.Lane.HOLEPUNCH, () -> {
                     try {
                         done.complete(Dialer.dial(liteHost, peerId, address, DIAL_TIMEOUT,
                                 maxIdleTimeoutInSeconds, initialMaxStreams,
@@ -174,17 +174,15 @@ public class HolePunchService {
                     } catch (Throwable ignore) {
                         // ignore
                     }
-                });
+                }));
             }
             try {
                 return done.get(DIAL_TIMEOUT, TimeUnit.SECONDS);
             } catch (Throwable throwable) {
                 throw new ConnectException(throwable.getMessage());
             } finally {
-                try {
-                    executor.shutdownNow();
-                } catch (Throwable throwable) {
-                    LogUtils.error(TAG, throwable);
+                for (Future<?> future : futures) {
+                    future.cancel(true);
                 }
             }
         }
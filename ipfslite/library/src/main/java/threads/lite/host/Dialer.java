@@ -8,17 +8,18 @@ import net.luminis.quic.TransportParameters;
 import net.luminis.quic.Version;
 
 import java.net.ConnectException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import threads.lite.IPFS;
 import threads.lite.LogUtils;
 import threads.lite.cid.Multiaddr;
 import threads.lite.cid.PeerId;
+import threads.lite.core.Scheduler;
 import threads.lite.holepunch.HolePunchService;
 
 public class Dialer {
@@ -36,10 +37,10 @@ public class Dialer {
 
         CompletableFuture<QuicConnection> done = new CompletableFuture<>();
         if (!multiaddrs.isEmpty()) {
-            ExecutorService executor = Executors.newFixedThreadPool(multiaddrs.size());
+            List<Future<?>> futures = new ArrayList<>();
             for (Multiaddr address : multiaddrs) {
 
-                executor.execute(() -> {
+                futures.add(Scheduler.getInstance().execute(Scheduler.Lane.DIAL, () -> {
                     try {
                         boolean relayConnection = address.isCircuitAddress();
                         if (relayConnection) {
@@ -55,7 +56,7 @@ public class Dialer {
                     } catch (Throwable ignore) {
                         // ignore
                     }
-                });
+                }));
 
             }
             try {
@@ -63,10 +64,8 @@ public class Dialer {
             } catch (Throwable throwable) {
                 throw new ConnectException(throwable.getMessage());
             } finally {
-                try {
-                    executor.shutdownNow();
-                } catch (Throwable throwable) {
-                    LogUtils.error(TAG, throwable);
+                for (Future<?> future : futures) {
+                    future.cancel(true);
                 }
             }
         }
@@ -122,6 +121,8 @@ public class Dialer {
                     .clientCertificateKey(selfSignedCertificate.key())
                     .host(address.getHost())
                     .port(address.getPort())
+                    .endpoint(host.getClientEndpoint())
+                    .congestionControl(host.getCongestionControl())
                     .build();
 
             Objects.requireNonNull(conn);
@@ -7,8 +7,10 @@ import androidx.annotation.Nullable;
 import com.google.common.primitives.Bytes;
 import com.google.protobuf.ByteString;
 
+import net.luminis.quic.ClientEndpoint;
 import net.luminis.quic.QuicConnection;
 import net.luminis.quic.Version;
+import net.luminis.quic.cc.CongestionControl;
 import net.luminis.quic.server.ApplicationProtocolConnection;
 import net.luminis.quic.server.ApplicationProtocolConnectionFactory;
 import net.luminis.quic.server.Server;
@@ -35,8 +37,6 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -54,6 +54,7 @@ import threads.lite.cid.Multiaddr;
 import threads.lite.cid.Peer;
 import threads.lite.cid.PeerId;
 import threads.lite.core.Closeable;
+import threads.lite.core.Scheduler;
 import threads.lite.crypto.PrivKey;
 import threads.lite.crypto.PubKey;
 import threads.lite.dht.KadDht;
@@ -147,12 +148,25 @@ public class LiteHost {
     private Push push;
     @Nullable
     private Server server;
+    @Nullable
+    private ClientEndpoint clientEndpoint;
+    @NonNull
+    private final CongestionControl congestionControl;
 
     public LiteHost(@NonNull LiteHostCertificate selfSignedCertificate,
                     @NonNull PrivKey privKey,
                     @NonNull BlockStore blockstore,
                     int port, int alpha) {
+        this(selfSignedCertificate, privKey, blockstore, port, alpha, CongestionControl.NewReno);
+    }
+
+    public LiteHost(@NonNull LiteHostCertificate selfSignedCertificate,
+                    @NonNull PrivKey privKey,
+                    @NonNull BlockStore blockstore,
+                    int port, int alpha,
+                    @NonNull CongestionControl congestionControl) {
         this.selfSignedCertificate = selfSignedCertificate;
+        this.congestionControl = congestionControl;
         this.privKey = privKey;
 
         this.peerId = PeerId.fromPubKey(privKey.publicKey());
@@ -184,13 +198,22 @@ public class LiteHost {
                                 return new ServerHandler(LiteHost.this, quicConnection);
 
                             }
-                        });
+                        }, congestionControl);
                 server.start();
             } catch (Throwable throwable) {
                 LogUtils.error(TAG, throwable);
             }
         }
 
+        if (IPFS.QUIC_CLIENT_ENDPOINT) {
+            try {
+                clientEndpoint = new ClientEndpoint(IPFS.QUIC_CLIENT_ENDPOINT_THREADS);
+                clientEndpoint.start();
+            } catch (Throwable throwable) {
+                LogUtils.error(TAG, throwable);
+            }
+        }
+
         updateListenAddresses();
     }
 
@@ -219,6 +242,18 @@ public class LiteHost {
         return server;
     }
 
+    // shared socket of the outgoing connections, null when each connection has its own socket
+    @Nullable
+    public ClientEndpoint getClientEndpoint() {
+        return clientEndpoint;
+    }
+
+    // congestion control of the dialed and accepted connections
+    @NonNull
+    public CongestionControl getCongestionControl() {
+        return congestionControl;
+    }
+
     @NonNull
     public LiteHostCertificate getSelfSignedCertificate() {
         return selfSignedCertificate;
@@ -558,8 +593,8 @@ public class LiteHost {
             Objects.requireNonNull(content);
 
             if (push != null) {
-                ExecutorService executor = Executors.newSingleThreadExecutor();
-                executor.submit(() -> push.push(connection, new String(content)));
+                Scheduler.getInstance().execute(Scheduler.Lane.PUSH,
+                        () -> push.push(connection, new String(content)));
             }
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
@@ -612,6 +647,20 @@ public class LiteHost {
         } finally {
             server = null;
         }
+        try {
+            if (clientEndpoint != null) {
+                clientEndpoint.shutdown();
+            }
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        } finally {
+            clientEndpoint = null;
+        }
+        try {
+            bitSwap.shutdown();
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
     }
 
     public boolean swarmContains(@NonNull PeerId peerId) {
@@ -17,12 +17,12 @@ import java.util.Objects;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
-import bitswap.pb.MessageOuterClass;
 import circuit.pb.Circuit;
 import holepunch.pb.Holepunch;
 import identify.pb.IdentifyOuterClass;
 import threads.lite.IPFS;
 import threads.lite.LogUtils;
+import threads.lite.bitswap.BitSwapMessage;
 import threads.lite.cid.Multiaddr;
 import threads.lite.cid.PeerId;
 import threads.lite.utils.DataHandler;
@@ -116,9 +116,10 @@ public class StreamHandler {
                 if (protocol != null) {
                     switch (protocol) {
                         case IPFS.BITSWAP_PROTOCOL: {
+                            // the stream is kept open, the sender writes its following
+                            // messages onto the same stream
                             host.message(quicStream.getConnection(),
-                                    MessageOuterClass.Message.parseFrom(message));
-                            outputStream.close();
+                                    BitSwapMessage.parseFrom(message));
                             break;
                         }
                         case IPFS.PUSH_PROTOCOL: {
@@ -235,6 +236,13 @@ public class StreamHandler {
                 throw new RuntimeException(throwable);
             }
         }, (fin) -> {
+            if (Objects.equals(tokenProtocol.get(), IPFS.BITSWAP_PROTOCOL)) {
+                try {
+                    outputStream.close();
+                } catch (Throwable throwable) {
+                    LogUtils.error(TAG, throwable);
+                }
+            }
         }, this::exceptionCaught);
 
     }
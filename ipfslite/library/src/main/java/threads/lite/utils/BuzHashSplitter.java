@@ -0,0 +1,114 @@
+package threads.lite.utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+import threads.lite.format.Reader;
+
+/**
+ * Content-defined splitter, the chunk boundaries are found with a rolling hash (buzhash)
+ * over the last {@link #WINDOW} bytes. A boundary is set where the hash has the lowest
+ * bits cleared, therefore an inserted or removed byte only changes the chunks around the
+ * edit, the following chunks (and their CIDs) stay the same.
+ * <p>
+ * Chunks are at least minSize and at most maxSize bytes, the average is about avgSize.
+ * The inner loop does not allocate, the data is read into one buffer of maxSize bytes.
+ */
+public class BuzHashSplitter implements Splitter {
+    public static final int WINDOW = 32;
+    // the table must never change, otherwise the chunk boundaries (and CIDs) change
+    private static final int[] TABLE = createTable();
+    @NonNull
+    private final WriterStream reader;
+    private final int minSize;
+    private final int maxSize;
+    private final int mask;
+    private final byte[] buffer;
+    private int filled = 0;
+
+    private BuzHashSplitter(@NonNull WriterStream reader, int minSize, int avgSize, int maxSize) {
+        this.reader = reader;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        // expected chunk size is minSize + 2^bits
+        int bits = 31 - Integer.numberOfLeadingZeros(Math.max(avgSize - minSize, 1));
+        this.mask = (1 << bits) - 1;
+        this.buffer = new byte[maxSize];
+    }
+
+    @NonNull
+    public static BuzHashSplitter createBuzHashSplitter(@NonNull WriterStream reader,
+                                                        int minSize, int avgSize, int maxSize) {
+        if (minSize < WINDOW || avgSize < minSize || maxSize < avgSize) {
+            throw new IllegalArgumentException("invalid chunk sizes " +
+                    minSize + " " + avgSize + " " + maxSize);
+        }
+        return new BuzHashSplitter(reader, minSize, avgSize, maxSize);
+    }
+
+    // deterministic pseudo random table (xorshift with a fixed seed)
+    private static int[] createTable() {
+        int[] table = new int[256];
+        int x = 0x2545F491;
+        for (int i = 0; i < table.length; i++) {
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+            table[i] = x;
+        }
+        return table;
+    }
+
+    // position after the first boundary in [0, length), or length when there is none
+    public static int boundary(@NonNull byte[] data, int length, int minSize, int mask) {
+        if (length <= minSize) {
+            return length;
+        }
+        int[] table = TABLE;
+        int hash = 0;
+        for (int i = minSize - WINDOW; i < minSize; i++) {
+            hash = Integer.rotateLeft(hash, 1) ^ table[data[i] & 0xFF];
+        }
+        if ((hash & mask) == 0) {
+            return minSize;
+        }
+        // the byte leaving the window is rotated by WINDOW (32), which is the identity
+        for (int i = minSize; i < length; i++) {
+            hash = Integer.rotateLeft(hash, 1) ^ table[data[i - WINDOW] & 0xFF] ^
+                    table[data[i] & 0xFF];
+            if ((hash & mask) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public Reader reader() {
+        return reader;
+    }
+
+    @Override
+    public byte[] nextBytes() {
+        while (filled < maxSize && !reader.done()) {
+            int read = reader.read(buffer, filled, maxSize - filled);
+            if (read > 0) {
+                filled += read;
+            }
+        }
+        if (filled == 0) {
+            return null;
+        }
+        int cut = boundary(buffer, filled, minSize, mask);
+        byte[] chunk = Arrays.copyOf(buffer, cut);
+        System.arraycopy(buffer, cut, buffer, 0, filled - cut);
+        filled -= cut;
+        return chunk;
+    }
+
+    @Override
+    public boolean done() {
+        return filled == 0 && reader.done();
+    }
+}
@@ -0,0 +1,108 @@
+package threads.lite.utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+import threads.lite.IPFS;
+import threads.lite.format.Reader;
+
+/**
+ * Chunking option of an import, either fixed-size chunks (default, {@link IPFS#CHUNK_SIZE})
+ * or content-defined chunks ({@link BuzHashSplitter}), which keep most chunks (and CIDs)
+ * of an edited file the same.
+ * <p>
+ * Note: the same data imported with different chunkers results in different CIDs.
+ */
+public class Chunker {
+    private final boolean contentDefined;
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+
+    private Chunker(boolean contentDefined, int minSize, int avgSize, int maxSize) {
+        this.contentDefined = contentDefined;
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+    }
+
+    @NonNull
+    public static Chunker createFixedChunker(int size) {
+        if (size <= 0 || size > IPFS.BLOCK_SIZE_LIMIT) {
+            throw new IllegalArgumentException("invalid chunk size " + size);
+        }
+        return new Chunker(false, size, size, size);
+    }
+
+    @NonNull
+    public static Chunker createDefaultChunker() {
+        return createFixedChunker(IPFS.CHUNK_SIZE);
+    }
+
+    @NonNull
+    public static Chunker createBuzHashChunker(int minSize, int avgSize, int maxSize) {
+        if (minSize < BuzHashSplitter.WINDOW || avgSize < minSize || maxSize < avgSize ||
+                maxSize > IPFS.BLOCK_SIZE_LIMIT) {
+            throw new IllegalArgumentException("invalid chunk sizes " +
+                    minSize + " " + avgSize + " " + maxSize);
+        }
+        return new Chunker(true, minSize, avgSize, maxSize);
+    }
+
+    @NonNull
+    public static Chunker createBuzHashChunker() {
+        return createBuzHashChunker(IPFS.CHUNK_MIN_SIZE, IPFS.CHUNK_AVG_SIZE,
+                IPFS.CHUNK_MAX_SIZE);
+    }
+
+    @NonNull
+    public Splitter createSplitter(@NonNull WriterStream reader) {
+        if (contentDefined) {
+            return BuzHashSplitter.createBuzHashSplitter(reader, minSize, avgSize, maxSize);
+        }
+        int size = maxSize;
+        return new Splitter() {
+
+            @Override
+            public Reader reader() {
+                return reader;
+            }
+
+            @Override
+            public byte[] nextBytes() {
+
+                byte[] buf = new byte[size];
+                int read = reader.read(buf);
+                if (read < 0) {
+                    return null;
+                } else if (read < size) {
+                    return Arrays.copyOfRange(buf, 0, read);
+                } else {
+                    return buf;
+                }
+            }
+
+            @Override
+            public boolean done() {
+                return reader.done();
+            }
+        };
+    }
+
+    public boolean isContentDefined() {
+        return contentDefined;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getAvgSize() {
+        return avgSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+}
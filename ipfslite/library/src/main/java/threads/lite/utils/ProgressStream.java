@@ -4,6 +4,7 @@ import androidx.annotation.NonNull;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import threads.lite.core.ClosedException;
 import threads.lite.core.Progress;
@@ -12,8 +13,8 @@ public class ProgressStream extends InputStream {
     private final Reader mReader;
     private final Progress mProgress;
     private final long size;
-    private int position = 0;
-    private byte[] data = null;
+    private ByteBuffer data = null;
+    private boolean done = false;
     private int remember = 0;
     private long totalRead = 0L;
 
@@ -33,58 +34,55 @@ public class ProgressStream extends InputStream {
     @Override
     public int read() throws IOException {
 
-
         try {
-            if (data == null) {
-                invalidate();
-                preLoad();
-            }
-            if (data == null) {
+            if (!preLoad()) {
                 return -1;
             }
-            if (position < data.length) {
-                byte value = data[position];
-                position++;
-                return (value & 0xff);
-            } else {
-                invalidate();
-                if (preLoad()) {
-                    byte value = data[position];
-                    position++;
-                    return (value & 0xff);
-                } else {
-                    return -1;
-                }
-            }
-
+            return (data.get() & 0xff);
         } catch (Throwable e) {
             throw new IOException(e);
         }
     }
 
-    private void invalidate() {
-        position = 0;
-        data = null;
-    }
+    @Override
+    public int read(@NonNull byte[] bytes, int off, int len) throws IOException {
 
+        try {
+            if (len == 0) {
+                return 0;
+            }
+            if (!preLoad()) {
+                return -1;
+            }
+            int read = Math.min(len, data.remaining());
+            data.get(bytes, off, read);
+            return read;
+        } catch (Throwable e) {
+            throw new IOException(e);
+        }
+    }
 
+    // loads the next block data, when the current one is consumed
     private boolean preLoad() throws ClosedException {
 
-        data = mReader.loadNextData();
-        if (data != null) {
-            int read = data.length;
-            totalRead += read;
-            if (mProgress.doProgress()) {
-                if (size > 0) {
-                    int percent = (int) ((totalRead * 100.0f) / size);
-                    if (remember < percent) {
-                        remember = percent;
-                        mProgress.setProgress(percent);
+        while (!done && (data == null || !data.hasRemaining())) {
+            data = mReader.loadNextBuffer();
+            done = data == null;
+            if (data != null) {
+                int read = data.remaining();
+                totalRead += read;
+                if (mProgress.doProgress()) {
+                    if (size > 0) {
+                        int percent = (int) ((totalRead * 100.0f) / size);
+                        if (remember < percent) {
+                            remember = percent;
+                            mProgress.setProgress(percent);
+                        }
                     }
                 }
             }
         }
-        return data != null;
+        return !done;
     }
 
 }
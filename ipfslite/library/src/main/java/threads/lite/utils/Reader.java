@@ -3,6 +3,7 @@ package threads.lite.utils;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import threads.lite.bitswap.Exchange;
@@ -36,27 +37,32 @@ public class Reader {
         return new Reader(closeable, dagReader);
     }
 
+    // the read-ahead is topped up before the next leaf is loaded, so that the following
+    // leaves are fetched while the reader waits
     @Nullable
     public byte[] loadNextData() throws ClosedException {
-        try {
-            return dagReader.loadNextData(closeable);
-        } finally {
-            dagReader.preloadData(closeable);
-        }
+        dagReader.preloadData(closeable);
+        return dagReader.loadNextData(closeable);
+    }
+
+    @Nullable
+    public ByteBuffer loadNextBuffer() throws ClosedException {
+        dagReader.preloadData(closeable);
+        return dagReader.loadNextBuffer(closeable);
     }
 
     public int readNextData(long offset, int size, byte[] data) throws ClosedException {
         seek(offset);
-        byte[] bytes = loadNextData();
-        if (bytes != null) {
-            int min = Math.min(bytes.length, size);
-            System.arraycopy(bytes, 0, data, 0, min);
+        ByteBuffer buffer = loadNextBuffer();
+        if (buffer != null) {
+            int min = Math.min(buffer.remaining(), size);
+            buffer.get(data, 0, min);
             if (min < size) {
-                int remain = size - min;
-                bytes = loadNextData();
-                if (bytes != null) {
-                    System.arraycopy(bytes, 0, data, min, remain);
-                    return size;
+                buffer = loadNextBuffer();
+                if (buffer != null) {
+                    int remain = Math.min(buffer.remaining(), size - min);
+                    buffer.get(data, min, remain);
+                    return min + remain;
                 } else {
                     return min;
                 }
@@ -69,6 +75,12 @@ public class Reader {
 
     public void seek(long position) throws ClosedException {
         dagReader.Seek(closeable, position);
+        dagReader.preloadData(closeable);
+    }
+
+    // total time in ms the reader waited for blocks
+    public long getStallTime() {
+        return dagReader.getStallTime();
     }
 
     public long getSize() {
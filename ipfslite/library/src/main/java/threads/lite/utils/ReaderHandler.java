@@ -4,31 +4,31 @@ import androidx.annotation.NonNull;
 
 import net.luminis.quic.QuicStream;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.function.Consumer;
 
 import threads.lite.IPFS;
 import threads.lite.LogUtils;
 import threads.lite.cid.Charsets;
-import threads.lite.cid.Multihash;
 
+/**
+ * Incremental decoder of varint length-prefixed frames (multistream tokens and messages).
+ * <p>
+ * The parse state (length prefix, current frame) is kept across the received chunks,
+ * so every byte is only copied once into a frame buffer of the exact frame size. The
+ * frame is not reused after it is handed over, consumers may reference it (aliasing).
+ * The frame length is checked against {@link IPFS#MESSAGE_SIZE_MAX} as soon as the
+ * length prefix is read.
+ */
 public class ReaderHandler {
     private static final String TAG = ReaderHandler.class.getSimpleName();
+    private static final int MAX_VARINT_SHIFT = 63;
 
-    private final ByteArrayOutputStream temp = new ByteArrayOutputStream();
-    public int consumed; // TODO remove
-    public int accepted; // TODO remove
-    public int tokens; // TODO remove
-    private int expectedLength;
-
-    public ReaderHandler() {
-        this.expectedLength = 0;
-    }
-
+    private long length = 0; // length prefix of the next frame (in progress)
+    private int shift = 0; // bits of the length prefix already read
+    private byte[] frame = null; // current frame, null while the length prefix is read
+    private int filled = 0; // bytes of the current frame already read
+    private long frames = 0;
 
     public static void reading(@NonNull QuicStream quicStream,
                                @NonNull Consumer<String> token,
@@ -45,9 +45,7 @@ public class ReaderHandler {
                 }
             } catch (Throwable exception) {
                 if (LogUtils.isDebug()) {
-                    LogUtils.error(TAG, "ExpectedLength " + reader.expectedLength + " Consumed " +
-                            reader.consumed + " Accepted " + reader.accepted + " Tokens " + reader.tokens +
-                            " Content Length " + reader.temp.size() + " " + exception.getMessage());
+                    LogUtils.error(TAG, reader + " " + exception.getMessage());
                 }
                 throwable.accept(exception);
             }
@@ -62,91 +60,39 @@ public class ReaderHandler {
         }, throwable);
     }
 
-    private static int copy(InputStream source, OutputStream sink, int length) throws IOException {
-        int nread = 0;
-        byte[] buf = new byte[length];
-        int n;
-        while ((n = source.read(buf)) > 0) {
-            sink.write(buf, 0, n);
-            nread += n;
-            if (nread == length) {
-                break;
-            }
-        }
-        return nread;
-    }
-
-    private static int copy(InputStream source, OutputStream sink) throws IOException {
-        int nread = 0;
-        byte[] buf = new byte[4096];
-        int n;
-        while ((n = source.read(buf)) > 0) {
-            sink.write(buf, 0, n);
-            nread += n;
-        }
-        return nread;
+    private static boolean isToken(@NonNull byte[] data, char first, char second) {
+        return data.length >= 2 && data[0] == first && data[1] == second &&
+                data[data.length - 1] == '\n';
     }
 
     @NonNull
     @Override
     public String toString() {
-        return "DataHandler{" +
-                ", temp=" + temp +
-                ", expectedLength=" + expectedLength +
+        return "ReaderHandler{" +
+                "frames=" + frames +
+                ", frameLength=" + (frame != null ? frame.length : -1) +
+                ", filled=" + filled +
                 '}';
     }
 
-    private void iteration(@NonNull Consumer<String> tokenConsumer,
-                           @NonNull Consumer<byte[]> dataConsumer)
-            throws IOException {
-
-        // LogUtils.error(TAG, "expected length " + expectedLength + " temp " + temp.size());
-
-
-        // shortcut
-        if (temp.size() < expectedLength) {
-            // no reading required
-            return;
-        }
-
-
-        try (InputStream inputStream = new ByteArrayInputStream(temp.toByteArray())) {
-            expectedLength = (int) Multihash.readVarint(inputStream);
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            int read = copy(inputStream, outputStream, expectedLength);
-
-            if (read == expectedLength) {
-                // token found
-                byte[] tokenData = outputStream.toByteArray();
-                // expected to be for a token
-                if (tokenData[0] == '/' && tokenData[read - 1] == '\n') {
-                    String token = new String(tokenData, Charsets.UTF_8);
-                    token = token.substring(0, read - 1);
-                    tokenConsumer.accept(token);
-                    tokens++;
-                } else if (tokenData[0] == 'n' && tokenData[1] == 'a' && tokenData[read - 1] == '\n') {
-                    LogUtils.debug(TAG, "na token");
-                    tokenConsumer.accept(IPFS.NA);
-                    tokens++;
-                } else if (tokenData[0] == 'l' && tokenData[1] == 's' && tokenData[read - 1] == '\n') {
-                    LogUtils.debug(TAG, "ls token");
-                    tokenConsumer.accept(IPFS.LS);
-                    tokens++;
-                } else {
-                    dataConsumer.accept(tokenData);
-                    accepted++;
-                }
-                consumed = consumed + tokenData.length;
-                // next iteration
-                expectedLength = 0;
-                temp.reset();
-                int copied = copy(inputStream, temp);
-                if (copied == 0) {
-                    temp.reset();
-                } else {
-                    iteration(tokenConsumer, dataConsumer);
-                }
-            }
+    private void frame(@NonNull byte[] data,
+                       @NonNull Consumer<String> tokenConsumer,
+                       @NonNull Consumer<byte[]> dataConsumer) {
+        frame = null;
+        filled = 0;
+        frames++;
+
+        int last = data.length - 1;
+        if (data.length > 0 && data[0] == '/' && data[last] == '\n') {
+            tokenConsumer.accept(new String(data, 0, last, Charsets.UTF_8));
+        } else if (isToken(data, 'n', 'a')) {
+            LogUtils.debug(TAG, "na token");
+            tokenConsumer.accept(IPFS.NA);
+        } else if (isToken(data, 'l', 's')) {
+            LogUtils.debug(TAG, "ls token");
+            tokenConsumer.accept(IPFS.LS);
+        } else {
+            dataConsumer.accept(data);
         }
     }
 
@@ -155,18 +101,44 @@ public class ReaderHandler {
                      @NonNull Consumer<byte[]> dataConsumer)
             throws IOException {
 
-        temp.write(data);
-
-        iteration(tokenConsumer, dataConsumer);
+        int offset = 0;
+        while (offset < data.length) {
+            if (frame == null) {
+                int b = data[offset++] & 0xFF;
+                length |= (long) (b & 0x7F) << shift;
+                shift += 7;
+                if (length > IPFS.MESSAGE_SIZE_MAX) {
+                    throw new IOException("frame length " + length + " exceeds limit");
+                }
+                if ((b & 0x80) == 0) {
+                    byte[] next = new byte[(int) length];
+                    length = 0;
+                    shift = 0;
+                    if (next.length == 0) {
+                        frame(next, tokenConsumer, dataConsumer);
+                    } else {
+                        frame = next;
+                    }
+                } else if (shift >= MAX_VARINT_SHIFT) {
+                    throw new IOException("frame length prefix overflow");
+                }
+            } else {
+                int read = Math.min(frame.length - filled, data.length - offset);
+                System.arraycopy(data, offset, frame, filled, read);
+                offset += read;
+                filled += read;
+                if (filled == frame.length) {
+                    frame(frame, tokenConsumer, dataConsumer);
+                }
+            }
+        }
     }
 
     public void clear() {
-        expectedLength = 0;
-        try {
-            temp.close();
-        } catch (Throwable throwable) {
-            LogUtils.error(TAG, throwable);
-        }
+        length = 0;
+        shift = 0;
+        frame = null;
+        filled = 0;
     }
 
 }
@@ -4,6 +4,7 @@ import androidx.annotation.NonNull;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import threads.lite.core.ClosedException;
 
@@ -11,8 +12,8 @@ import threads.lite.core.ClosedException;
 public class ReaderStream extends InputStream {
     private static final String TAG = ReaderStream.class.getSimpleName();
     private final Reader reader;
-    private int position = 0;
-    private byte[] data = null;
+    private ByteBuffer data = null;
+    private boolean done = false;
 
     public ReaderStream(@NonNull Reader reader) {
         this.reader = reader;
@@ -28,38 +29,32 @@ public class ReaderStream extends InputStream {
 
     @Override
     public int read() throws IOException {
-        if (data == null) {
-            invalidate();
-            preLoad();
-        }
-        if (data == null) {
+        if (!preLoad()) {
             return -1;
         }
-        if (position < data.length) {
-            byte value = data[position];
-            position++;
-            return (value & 0xff);
-        } else {
-            invalidate();
-            if (preLoad()) {
-                byte value = data[position];
-                position++;
-                return (value & 0xff);
-            } else {
-                return -1;
-            }
-        }
+        return (data.get() & 0xff);
     }
 
-    private void invalidate() {
-        position = 0;
-        data = null;
+    @Override
+    public int read(@NonNull byte[] bytes, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!preLoad()) {
+            return -1;
+        }
+        int read = Math.min(len, data.remaining());
+        data.get(bytes, off, read);
+        return read;
     }
 
-
+    // loads the next block data, when the current one is consumed
     private boolean preLoad() throws ClosedException {
-        data = reader.loadNextData();
-        return data != null;
+        while (!done && (data == null || !data.hasRemaining())) {
+            data = reader.loadNextBuffer();
+            done = data == null;
+        }
+        return !done;
     }
 
 
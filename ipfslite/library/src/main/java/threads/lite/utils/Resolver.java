@@ -15,10 +15,12 @@ import threads.lite.core.Closeable;
 import threads.lite.core.ClosedException;
 import threads.lite.dag.BlockService;
 import threads.lite.dag.DagService;
+import threads.lite.dag.HAMTDirectory;
 import threads.lite.format.BlockStore;
 import threads.lite.format.Link;
 import threads.lite.format.Node;
 import threads.lite.format.NodeGetter;
+import threads.lite.format.ProtoNode;
 
 
 public class Resolver {
@@ -79,9 +81,17 @@ public class Resolver {
 
         while (p.size() > 0) {
 
-            Pair<Link, List<String>> resolveOnce = node.resolveLink(p);
-            Link lnk = resolveOnce.first;
-            List<String> rest = resolveOnce.second;
+            Link lnk;
+            List<String> rest;
+            if (node instanceof ProtoNode && HAMTDirectory.isHAMTShard((ProtoNode) node)) {
+                // only the shards on the path of the name are fetched
+                lnk = HAMTDirectory.findLink(closeable, dag, (ProtoNode) node, p.get(0));
+                rest = p.subList(1, p.size());
+            } else {
+                Pair<Link, List<String>> resolveOnce = node.resolveLink(p);
+                lnk = resolveOnce.first;
+                rest = resolveOnce.second;
+            }
 
             // Note: have to drop the error here as `ResolveOnce` doesn't handle 'leaf'
             // paths (so e.g. for `echo '{"foo":123}' | ipfs dag put` we wouldn't be
@@ -6,6 +6,7 @@ import androidx.annotation.NonNull;
 import java.util.List;
 import java.util.Objects;
 
+import threads.lite.IPFS;
 import threads.lite.bitswap.BitSwap;
 import threads.lite.bitswap.Exchange;
 import threads.lite.cid.Cid;
@@ -28,9 +29,19 @@ public class Stream {
 
 
     public static Adder getFileAdder(@NonNull BlockStore blockStore) {
+        return getFileAdder(blockStore, IPFS.IMPORT_BUFFER_SIZE);
+    }
+
+    public static Adder getFileAdder(@NonNull BlockStore blockStore, @NonNull Chunker chunker) {
+        Adder fileAdder = getFileAdder(blockStore);
+        fileAdder.chunker = chunker;
+        return fileAdder;
+    }
+
+    public static Adder getFileAdder(@NonNull BlockStore blockStore, long memoryBudget) {
         Exchange exchange = new OfflineExchange(blockStore);
         BlockService blockservice = BlockService.createBlockService(blockStore, exchange);
-        DagService dagService = DagService.createDagService(blockservice);
+        DagService dagService = DagService.createBufferedDagService(blockservice, memoryBudget);
         Adder fileAdder = Adder.createAdder(dagService);
 
         Prefix prefix = Node.PrefixForCidVersion(0);
@@ -57,7 +68,7 @@ public class Stream {
 
         threads.lite.format.Node node = Resolver.resolveNode(closeable, dagService, cid);
         Objects.requireNonNull(node);
-        Directory dir = Directory.createDirectoryFromNode(node);
+        Directory dir = Directory.createDirectoryFromNode(closeable, dagService, node);
         return dir != null;
     }
 
@@ -83,7 +94,7 @@ public class Stream {
         Objects.requireNonNull(dirNode);
         threads.lite.format.Node linkNode = Resolver.resolveNode(closeable, dagService, link);
         Objects.requireNonNull(linkNode);
-        Node nd = fileAdder.addLinkToDir(dirNode, name, linkNode);
+        Node nd = fileAdder.addLinkToDir(closeable, dirNode, name, linkNode);
         return nd.getCid();
 
     }
@@ -99,7 +110,7 @@ public class Stream {
 
         threads.lite.format.Node dirNode = Resolver.resolveNode(closeable, dagService, dir);
         Objects.requireNonNull(dirNode);
-        Node nd = fileAdder.removeChild(dirNode, name);
+        Node nd = fileAdder.removeChild(closeable, dirNode, name);
         return nd.getCid();
 
     }
@@ -114,7 +125,7 @@ public class Stream {
 
         threads.lite.format.Node node = Resolver.resolveNode(closeable, dagService, cid);
         Objects.requireNonNull(node);
-        Directory dir = Directory.createDirectoryFromNode(node);
+        Directory dir = Directory.createDirectoryFromNode(closeable, dagService, node);
 
         if (dir == null) {
             lsFromLinks(closeable, dagService, node.getLinks(), resolveChildren);
@@ -127,8 +138,14 @@ public class Stream {
 
     @NonNull
     public static Cid write(@NonNull BlockStore storage, @NonNull WriterStream writerStream) {
+        return write(storage, writerStream, Chunker.createDefaultChunker());
+    }
 
-        Adder fileAdder = getFileAdder(storage);
+    @NonNull
+    public static Cid write(@NonNull BlockStore storage, @NonNull WriterStream writerStream,
+                            @NonNull Chunker chunker) {
+
+        Adder fileAdder = getFileAdder(storage, chunker);
         Node node = fileAdder.addReader(writerStream);
         return node.getCid();
     }
@@ -138,7 +155,8 @@ public class Stream {
                                          @NonNull Directory dir,
                                          boolean resolveChildren) throws ClosedException {
 
-        List<Link> links = dir.getNode().getLinks();
+        // a sharded directory fetches its shards, only the entries are listed
+        List<Link> links = dir.getLinks();
         for (Link link : links) {
             processLink(closeable, dagService, link, resolveChildren);
         }
@@ -183,10 +201,10 @@ public class Stream {
                             type = threads.lite.utils.Link.Raw;
                             break;
                         case Directory:
+                        case HAMTShard:
                             type = threads.lite.utils.Link.Dir;
                             break;
                         case Symlink:
-                        case HAMTShard:
                         case Metadata:
                         default:
                             type = threads.lite.utils.Link.Unknown;
@@ -30,13 +30,17 @@ public class WriterStream implements threads.lite.format.Reader {
 
     @Override
     public int read(byte[] bytes) {
+        return read(bytes, 0, bytes.length);
+    }
+
+    public int read(byte[] bytes, int off, int len) {
 
         if (mProgress.isClosed()) {
             throw new RuntimeException("progress closed");
         }
 
         try {
-            int read = mInputStream.read(bytes);
+            int read = mInputStream.read(bytes, off, len);
             if (read < 0) {
                 done = true;
             } else {